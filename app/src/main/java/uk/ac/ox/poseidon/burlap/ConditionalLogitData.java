@@ -0,0 +1,223 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import com.google.common.base.Preconditions;
+import uk.ac.ox.oxfish.fisher.log.LogisticLogs;
+import uk.ac.ox.poseidon.burlap.logbook.ColumnarLogbookReader;
+import uk.ac.ox.poseidon.burlap.logbook.ColumnarLogisticLogs;
+import uk.ac.ox.poseidon.burlap.logbook.LogbookSink;
+import uk.ac.ox.poseidon.burlap.logbook.SpooledLogisticLogs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Choice situations in long format, ready for {@link ConditionalLogitEstimator}: one row of covariates per option,
+ * options of the same situation next to each other, one chosen option per situation.
+ */
+public class ConditionalLogitData {
+
+    private final String[] covariateNames;
+
+    /**
+     * one row per option
+     */
+    private final double[][] rows;
+
+    /**
+     * situation s spans rows [situationStarts[s], situationStarts[s+1])
+     */
+    private final int[] situationStarts;
+
+    /**
+     * row index of the option chosen in each situation
+     */
+    private final int[] chosenRows;
+
+    public ConditionalLogitData(
+        String[] covariateNames, double[][] rows, int[] situationStarts, int[] chosenRows
+    ) {
+        Preconditions.checkArgument(situationStarts.length == chosenRows.length + 1);
+        this.covariateNames = covariateNames;
+        this.rows = rows;
+        this.situationStarts = situationStarts;
+        this.chosenRows = chosenRows;
+    }
+
+    /**
+     * parse the output of LogisticLogs: a header "id,episode,year,day,option,choice,covariate..." followed by one
+     * line per option where choice is yes or no. Lines with the same id and episode (which are always next
+     * to each other) form a situation; situations without a yes (the simulation ended before the choice) are dropped.
+     *
+     * @param csv the file contents
+     * @return the data
+     */
+    public static ConditionalLogitData fromLogisticLogs(String csv) {
+        final String[] lines = csv.split("\n");
+        final String[] header = lines[0].trim().split(",");
+        final int choiceColumn = Arrays.asList(header).indexOf("choice");
+        Preconditions.checkArgument(choiceColumn > 1, "Not a logistic log: " + lines[0]);
+        final Builder builder = new Builder(Arrays.copyOfRange(header, choiceColumn + 1, header.length));
+        final int covariates = builder.covariateNames.length;
+
+        //the situation being read
+        String situation = null;
+        int situationChoice = -1;
+        final ArrayList<double[]> situationRows = new ArrayList<>();
+        for (int line = 1; line <= lines.length; line++) {
+            final String[] fields = line < lines.length ? lines[line].trim().split(",") : null;
+            if (fields != null && fields.length < header.length)
+                continue;
+            final String key = fields == null ? null : fields[0] + "," + fields[1];
+            if (situation != null && !situation.equals(key)) {
+                //close the previous situation
+                builder.add(situationChoice, situationRows.toArray(new double[situationRows.size()][]));
+                situationRows.clear();
+                situationChoice = -1;
+            }
+            if (fields == null)
+                break;
+            situation = key;
+            final double[] row = new double[covariates];
+            for (int i = 0; i < covariates; i++)
+                row[i] = Double.parseDouble(fields[choiceColumn + 1 + i]);
+            if (fields[choiceColumn].equalsIgnoreCase("yes"))
+                situationChoice = situationRows.size();
+            situationRows.add(row);
+        }
+        return builder.build();
+    }
+
+    /**
+     * read the choices of a logbook straight from the logs. Streamed and binary logbooks are read record by record;
+     * POSEIDON's own LogisticLogs keeps its lines to itself, so that one still goes through its csv
+     *
+     * @param logs the logbook, at the end of the run
+     * @return the data
+     */
+    public static ConditionalLogitData fromLogbook(LogisticLogs logs) {
+        if (logs instanceof SpooledLogisticLogs) {
+            final Builder builder = new Builder(((SpooledLogisticLogs) logs).getInputNames());
+            ((SpooledLogisticLogs) logs).readAll(builder);
+            return builder.build();
+        }
+        if (logs instanceof ColumnarLogisticLogs) {
+            final ColumnarLogisticLogs columnar = (ColumnarLogisticLogs) logs;
+            final Builder builder = new Builder(columnar.getInputNames());
+            //nothing recorded, nothing written
+            if (columnar.getChoices() == 0)
+                return builder.build();
+            columnar.close();
+            try (InputStream input = Files.newInputStream(columnar.getBinaryFile())) {
+                ColumnarLogbookReader.read(input, builder);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read the binary logbook " + columnar.getBinaryFile(), e);
+            }
+            return builder.build();
+        }
+        return fromLogisticLogs(logs.composeFileContents());
+    }
+
+    /**
+     * collects choices one at a time; can be fed directly by a logbook
+     */
+    public static class Builder implements LogbookSink {
+
+        private final String[] covariateNames;
+
+        private final ArrayList<double[]> rows = new ArrayList<>();
+
+        private final ArrayList<Integer> starts = new ArrayList<>();
+
+        private final ArrayList<Integer> chosen = new ArrayList<>();
+
+        public Builder(String[] covariateNames) {
+            this.covariateNames = covariateNames;
+        }
+
+        /**
+         * add a situation
+         *
+         * @param chosen index of the option chosen; situations with no valid choice are dropped
+         * @param x      covariates, one row per option
+         */
+        public void add(int chosen, double[][] x) {
+            if (chosen < 0 || chosen >= x.length)
+                return;
+            starts.add(rows.size());
+            this.chosen.add(rows.size() + chosen);
+            for (double[] row : x) {
+                Preconditions.checkArgument(row.length == covariateNames.length, "Wrong number of covariates");
+                rows.add(row.clone());
+            }
+        }
+
+        @Override
+        public void record(int id, int episode, int year, int day, int chosen, double[][] x) {
+            add(chosen, x);
+        }
+
+        public ConditionalLogitData build() {
+            final int[] startArray = new int[starts.size() + 1];
+            for (int i = 0; i < starts.size(); i++)
+                startArray[i] = starts.get(i);
+            startArray[starts.size()] = rows.size();
+            final int[] chosenArray = new int[chosen.size()];
+            for (int i = 0; i < chosenArray.length; i++)
+                chosenArray[i] = chosen.get(i);
+            return new ConditionalLogitData(
+                covariateNames,
+                rows.toArray(new double[rows.size()][]),
+                startArray,
+                chosenArray
+            );
+        }
+    }
+
+    public int getNumberOfSituations() {
+        return chosenRows.length;
+    }
+
+    public int getNumberOfCovariates() {
+        return covariateNames.length;
+    }
+
+    public String[] getCovariateNames() {
+        return covariateNames;
+    }
+
+    public double[][] getRows() {
+        return rows;
+    }
+
+    public int[] getSituationStarts() {
+        return situationStarts;
+    }
+
+    public int[] getChosenRows() {
+        return chosenRows;
+    }
+}
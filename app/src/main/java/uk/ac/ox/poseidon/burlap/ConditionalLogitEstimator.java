@@ -0,0 +1,310 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import uk.ac.ox.poseidon.burlap.strategies.SoftmaxSampler;
+
+import java.util.Arrays;
+
+/**
+ * Maximum likelihood conditional (McFadden) logit: utility of each option is beta * covariates, the same betas for
+ * all options. Newton-Raphson with the analytic gradient and hessian, halving the step whenever it doesn't improve
+ * the likelihood; standard errors from the inverse of the observed information.
+ * <p>
+ * Covariates that never vary within a situation (an intercept, say) are not identified and are left out: their
+ * beta and standard error come back as NaN.
+ */
+public class ConditionalLogitEstimator {
+
+    private int maxIterations = 100;
+
+    private double tolerance = 1e-8;
+
+    public Fit estimate(ConditionalLogitData data) {
+        final double[][] rows = data.getRows();
+        final int[] starts = data.getSituationStarts();
+        final int[] chosen = data.getChosenRows();
+        final int covariates = data.getNumberOfCovariates();
+
+        //keep only the covariates that vary within at least one situation
+        final int[] identified = identifiedCovariates(data);
+        final int k = identified.length;
+
+        final double[] beta = new double[k];
+        final double[] gradient = new double[k];
+        final double[][] information = new double[k][k];
+        final double[] direction = new double[k];
+        final double[] candidate = new double[k];
+        final double[] utilities = new double[maxSituationSize(starts)];
+        final double[] mean = new double[k];
+
+        double logLikelihood = evaluate(rows, starts, chosen, identified, beta, gradient, information, utilities, mean);
+        int iteration = 0;
+        boolean converged = false;
+        while (iteration < maxIterations) {
+            iteration++;
+            if (!solve(information, gradient, direction))
+                break;
+            //halve the newton step until the likelihood improves
+            double step = 1;
+            double newLikelihood = Double.NEGATIVE_INFINITY;
+            for (int halvings = 0; halvings < 30; halvings++) {
+                for (int i = 0; i < k; i++)
+                    candidate[i] = beta[i] + step * direction[i];
+                newLikelihood = evaluate(rows, starts, chosen, identified, candidate, null, null, utilities, mean);
+                if (newLikelihood >= logLikelihood)
+                    break;
+                step /= 2;
+            }
+            if (!(newLikelihood >= logLikelihood))
+                break;
+            System.arraycopy(candidate, 0, beta, 0, k);
+            final double improvement = newLikelihood - logLikelihood;
+            logLikelihood = evaluate(rows, starts, chosen, identified, beta, gradient, information, utilities, mean);
+            double largestGradient = 0;
+            for (int i = 0; i < k; i++)
+                largestGradient = Math.max(largestGradient, Math.abs(gradient[i]));
+            if (largestGradient < tolerance || improvement < tolerance * tolerance) {
+                converged = true;
+                break;
+            }
+        }
+
+        //standard errors: square root of the diagonal of the inverse information
+        final double[] betas = new double[covariates];
+        final double[] standardErrors = new double[covariates];
+        Arrays.fill(betas, Double.NaN);
+        Arrays.fill(standardErrors, Double.NaN);
+        final double[] unit = new double[k];
+        final double[] column = new double[k];
+        for (int i = 0; i < k; i++) {
+            betas[identified[i]] = beta[i];
+            Arrays.fill(unit, 0);
+            unit[i] = 1;
+            if (solve(information, unit, column))
+                standardErrors[identified[i]] = Math.sqrt(column[i]);
+        }
+        return new Fit(data.getCovariateNames(), betas, standardErrors, logLikelihood, iteration, converged);
+    }
+
+    /**
+     * log-likelihood at beta; when gradient and information are not null they are filled too
+     * (information is minus the hessian)
+     */
+    private static double evaluate(
+        double[][] rows, int[] starts, int[] chosen, int[] identified, double[] beta,
+        double[] gradient, double[][] information, double[] utilities, double[] mean
+    ) {
+        final int k = beta.length;
+        if (gradient != null) {
+            Arrays.fill(gradient, 0);
+            for (double[] row : information)
+                Arrays.fill(row, 0);
+        }
+        double logLikelihood = 0;
+        for (int s = 0; s < chosen.length; s++) {
+            final int from = starts[s];
+            final int options = starts[s + 1] - from;
+            for (int j = 0; j < options; j++) {
+                double utility = 0;
+                for (int i = 0; i < k; i++)
+                    utility += beta[i] * rows[from + j][identified[i]];
+                utilities[j] = utility;
+            }
+            final double logSum = SoftmaxSampler.logSumExp(utilities, options);
+            logLikelihood += utilities[chosen[s] - from] - logSum;
+            if (gradient == null)
+                continue;
+
+            //probabilities overwrite the utilities
+            Arrays.fill(mean, 0);
+            for (int j = 0; j < options; j++) {
+                utilities[j] = Math.exp(utilities[j] - logSum);
+                for (int i = 0; i < k; i++)
+                    mean[i] += utilities[j] * rows[from + j][identified[i]];
+            }
+            for (int i = 0; i < k; i++)
+                gradient[i] += rows[chosen[s]][identified[i]] - mean[i];
+            for (int j = 0; j < options; j++) {
+                final double[] row = rows[from + j];
+                for (int a = 0; a < k; a++) {
+                    final double deviationA = row[identified[a]] - mean[a];
+                    for (int b = 0; b <= a; b++)
+                        information[a][b] += utilities[j] * deviationA * (row[identified[b]] - mean[b]);
+                }
+            }
+        }
+        if (information != null)
+            for (int a = 0; a < k; a++)
+                for (int b = 0; b < a; b++)
+                    information[b][a] = information[a][b];
+        return logLikelihood;
+    }
+
+    /**
+     * solves matrix * x = rhs by cholesky decomposition
+     *
+     * @return false if the matrix isn't positive definite
+     */
+    private static boolean solve(double[][] matrix, double[] rhs, double[] x) {
+        final int n = rhs.length;
+        final double[][] lower = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = matrix[i][j];
+                for (int m = 0; m < j; m++)
+                    sum -= lower[i][m] * lower[j][m];
+                if (i == j) {
+                    if (!(sum > 0))
+                        return false;
+                    lower[i][i] = Math.sqrt(sum);
+                } else
+                    lower[i][j] = sum / lower[j][j];
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            double sum = rhs[i];
+            for (int m = 0; m < i; m++)
+                sum -= lower[i][m] * x[m];
+            x[i] = sum / lower[i][i];
+        }
+        for (int i = n - 1; i >= 0; i--) {
+            double sum = x[i];
+            for (int m = i + 1; m < n; m++)
+                sum -= lower[m][i] * x[m];
+            x[i] = sum / lower[i][i];
+        }
+        return true;
+    }
+
+    private static int[] identifiedCovariates(ConditionalLogitData data) {
+        final double[][] rows = data.getRows();
+        final int[] starts = data.getSituationStarts();
+        int[] identified = new int[data.getNumberOfCovariates()];
+        int size = 0;
+        for (int i = 0; i < identified.length; i++) {
+            boolean varies = false;
+            for (int s = 0; s < data.getNumberOfSituations() && !varies; s++)
+                for (int j = starts[s] + 1; j < starts[s + 1] && !varies; j++)
+                    varies = rows[j][i] != rows[starts[s]][i];
+            if (varies)
+                identified[size++] = i;
+        }
+        return Arrays.copyOf(identified, size);
+    }
+
+    private static int maxSituationSize(int[] starts) {
+        int max = 0;
+        for (int s = 0; s + 1 < starts.length; s++)
+            max = Math.max(max, starts[s + 1] - starts[s]);
+        return max;
+    }
+
+    /**
+     * Getter for property 'maxIterations'.
+     *
+     * @return Value for property 'maxIterations'.
+     */
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Setter for property 'maxIterations'.
+     *
+     * @param maxIterations Value to set for property 'maxIterations'.
+     */
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Getter for property 'tolerance'.
+     *
+     * @return Value for property 'tolerance'.
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Setter for property 'tolerance'.
+     *
+     * @param tolerance Value to set for property 'tolerance'.
+     */
+    public void setTolerance(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * result of an estimation
+     */
+    public static class Fit {
+
+        private final String[] covariateNames;
+
+        private final double[] betas;
+
+        private final double[] standardErrors;
+
+        private final double logLikelihood;
+
+        private final int iterations;
+
+        private final boolean converged;
+
+        public Fit(
+            String[] covariateNames, double[] betas, double[] standardErrors,
+            double logLikelihood, int iterations, boolean converged
+        ) {
+            this.covariateNames = covariateNames;
+            this.betas = betas;
+            this.standardErrors = standardErrors;
+            this.logLikelihood = logLikelihood;
+            this.iterations = iterations;
+            this.converged = converged;
+        }
+
+        public String[] getCovariateNames() {
+            return covariateNames;
+        }
+
+        public double[] getBetas() {
+            return betas;
+        }
+
+        public double[] getStandardErrors() {
+            return standardErrors;
+        }
+
+        public double getLogLikelihood() {
+            return logLikelihood;
+        }
+
+        public int getIterations() {
+            return iterations;
+        }
+
+        public boolean isConverged() {
+            return converged;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+/**
+ * Running log-likelihood of a set of choices under a {@link LogisticMultiClassifier}. Feed it (input, choice) pairs,
+ * either directly or through a {@link ScoringLogisticLog}; each costs one pass over the arms.
+ */
+public class LogLikelihoodAccumulator {
+
+    private final LogisticMultiClassifier classifier;
+
+    private double logLikelihood = 0;
+
+    private long observations = 0;
+
+    public LogLikelihoodAccumulator(LogisticMultiClassifier classifier) {
+        this.classifier = classifier;
+    }
+
+    /**
+     * add one choice
+     *
+     * @param x      the input matrix the choice was made from
+     * @param chosen index of the arm chosen
+     */
+    public void accept(double[][] x, int chosen) {
+        logLikelihood += classifier.getLogProbability(chosen, x);
+        observations++;
+    }
+
+    public void reset() {
+        logLikelihood = 0;
+        observations = 0;
+    }
+
+    /**
+     * Getter for property 'logLikelihood'.
+     *
+     * @return Value for property 'logLikelihood'.
+     */
+    public double getLogLikelihood() {
+        return logLikelihood;
+    }
+
+    /**
+     * Getter for property 'observations'.
+     *
+     * @return Value for property 'observations'.
+     */
+    public long getObservations() {
+        return observations;
+    }
+
+    /**
+     * @return log-likelihood per observation (NaN if nothing was observed)
+     */
+    public double getAverageLogLikelihood() {
+        return observations == 0 ? Double.NaN : logLikelihood / observations;
+    }
+
+    /**
+     * Getter for property 'classifier'.
+     *
+     * @return Value for property 'classifier'.
+     */
+    public LogisticMultiClassifier getClassifier() {
+        return classifier;
+    }
+}
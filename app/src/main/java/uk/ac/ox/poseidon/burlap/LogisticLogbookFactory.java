@@ -28,6 +28,11 @@ import uk.ac.ox.oxfish.geography.discretization.MapDiscretizer;
 import uk.ac.ox.oxfish.model.FishState;
 import uk.ac.ox.oxfish.utility.AlgorithmFactory;
 import uk.ac.ox.oxfish.utility.Locker;
+import uk.ac.ox.poseidon.burlap.strategies.CovariateCache;
+import uk.ac.ox.poseidon.burlap.strategies.DiscretizationCache;
+import uk.ac.ox.poseidon.burlap.strategies.PortDistanceMatrix;
+import uk.ac.ox.poseidon.burlap.strategies.PortDistanceMatrixExtractor;
+import uk.ac.ox.poseidon.burlap.strategies.SimulatedTripCache;
 
 import java.util.ArrayList;
 
@@ -37,6 +42,7 @@ public class LogisticLogbookFactory
 
     //each flag represents a pre-made extractor
     private final Locker<String, MapDiscretization> locker = new Locker<>();
+    private final Locker<String, CovariateCache> covariateLocker = new Locker<>();
     private boolean dayOfTheYear = false;
     private boolean gasPrice = false;
     private boolean gridX = false;
@@ -61,6 +67,68 @@ public class LogisticLogbookFactory
      * if this is positive, that's when the histogrammer starts
      */
     private int histogrammerStartYear = -1;
+    /**
+     * when true the loggers of all fishers read fisher-independent covariates from one daily cache
+     * (off by default: the scopes of POSEIDON's extractors in CovariateScope are assumed, not verified)
+     */
+    private boolean cacheCovariates = false;
+    /**
+     * stream the logbook to disk through a buffer of this many bytes; 0 or less keeps it all in memory
+     */
+    private int streamingBufferBytes = -1;
+    /**
+     * when not empty the logbook is written to this file in the columnar binary format (prefixed by the identifier,
+     * relative to the output folder) and the usual csv output only holds a manifest
+     */
+    private String binaryLogbookFile = "";
+    /**
+     * folder the run writes its outputs to; when not empty a streamed logbook writes its csv there directly (the
+     * usual csv output then only holds a manifest) and a relative binary logbook file is resolved against it
+     */
+    private String outputFolder = "";
+    /**
+     * when positive, streamed or binary logbooks are written by a background thread fed through a ring of this many
+     * choices
+     */
+    private int asyncLogbookSlots = -1;
+    /**
+     * when true the counterfactual (not chosen) covariates are computed once a day for the whole fleet, on one
+     * representative tile per group
+     */
+    private boolean fleetCounterfactuals = false;
+    /**
+     * when not empty, trip histograms are kept sparse (one row per year and group visited) and, besides being written
+     * for each run, merged into the HistogramAggregator with this name
+     */
+    private String histogramAggregator = "";
+    /**
+     * when true the distance covariate is read from a precomputed ports x tiles matrix (see PortDistanceMatrix)
+     */
+    private boolean distanceMatrix = false;
+    /**
+     * when true runs on an identical map reuse the discretization through DiscretizationCache
+     * (off by default, see DiscretizationCache for why)
+     */
+    private boolean cacheDiscretization = false;
+    /**
+     * memory budget of the fleet-wide cache of simulated trips (see SimulatedTripCache); 0 or less (the default)
+     * simulates every time. Off by default: it only pays off when many fishers of a port have equivalent boats,
+     * gear and costs
+     */
+    private int simulatedTripCacheMegabytes = 0;
+    /**
+     * share of fishers keeping a logbook, picked deterministically from their id and the sampling seed; unsampled
+     * fishers skip the logger and the histogrammer altogether
+     */
+    private double fisherSamplingFraction = 1d;
+    /**
+     * when positive only a uniform sample of this many trips (over the whole fleet) makes it into the logbook
+     */
+    private int tripReservoirSize = -1;
+    /**
+     * seeds the fisher sample and the trip reservoir; null (the default) uses the model's seed
+     */
+    private Long samplingSeed = null;
 
     /**
      * Applies this function to the given argument.
@@ -77,12 +145,9 @@ public class LogisticLogbookFactory
         final MapDiscretization discretized =
             locker.presentKey(
                 state.getUniqueID(),
-                () -> {
-                    final MapDiscretization toReturn =
-                        new MapDiscretization(discretization.apply(state));
-                    toReturn.discretize(state.getMap());
-                    return toReturn;
-                }
+                () -> cacheDiscretization ?
+                    DiscretizationCache.discretize(state, discretization) :
+                    DiscretizationCache.compute(state, discretization)
             );
 
         if (dayOfTheYear) {
@@ -123,22 +188,29 @@ public class LogisticLogbookFactory
 
 
         if (portDistance) {
-            extractors.add(new PortDistanceExtractor());
+            extractors.add(distanceMatrix ?
+                new PortDistanceMatrixExtractor(PortDistanceMatrix.of(state)) :
+                new PortDistanceExtractor());
             names.add("port_distance");
         }
 
         //todo put max hours out somehwere else
 
+        final SimulatedTripCache simulations = simulatedTripCacheMegabytes > 0 ?
+            new SimulatedTripCache(simulatedTripCacheMegabytes * (1L << 20)) : null;
         if (simulatedCost) {
-            extractors.add(new SimulatedHourlyCostExtractor(maxHoursOut));
+            extractors.add(
+                shareSimulation(simulations, "simulated_cost", new SimulatedHourlyCostExtractor(maxHoursOut)));
             names.add("simulated_cost");
         }
         if (simulatedRevenue) {
-            extractors.add(new SimulatedHourlyRevenueExtractor(maxHoursOut));
+            extractors.add(
+                shareSimulation(simulations, "simulated_revenue", new SimulatedHourlyRevenueExtractor(maxHoursOut)));
             names.add("simulated_revenue");
         }
         if (simulatedProfits) {
-            extractors.add(new SimulatedHourlyProfitExtractor(maxHoursOut));
+            extractors.add(
+                shareSimulation(simulations, "simulated_profits", new SimulatedHourlyProfitExtractor(maxHoursOut)));
             names.add("simulated_profits");
 
         }
@@ -169,14 +241,29 @@ public class LogisticLogbookFactory
             names.toArray(new String[names.size()]);
         final ObservationExtractor[] observations =
             extractors.toArray(new ObservationExtractor[extractors.size()]);
+        if (cacheCovariates) {
+            final CovariateCache cache = covariateLocker.presentKey(state.getUniqueID(), CovariateCache::new);
+            for (int i = 0; i < observations.length; i++)
+                observations[i] = cache.share(nameArray[i], observations[i]);
+        }
 
 
-        return new LogisticLogbookInitializer(
+        final LogisticLogbookInitializer initializer = new LogisticLogbookInitializer(
             discretized,
             observations,
             nameArray,
             histogrammerStartYear, identifier
         );
+        initializer.setStreamingBufferBytes(streamingBufferBytes);
+        initializer.setBinaryLogbookFile(binaryLogbookFile);
+        initializer.setOutputFolder(outputFolder);
+        initializer.setAsyncLogbookSlots(asyncLogbookSlots);
+        initializer.setFleetCounterfactuals(fleetCounterfactuals);
+        initializer.setHistogramAggregator(histogramAggregator);
+        initializer.setFisherSamplingFraction(fisherSamplingFraction);
+        initializer.setTripReservoirSize(tripReservoirSize);
+        initializer.setSamplingSeed(samplingSeed);
+        return initializer;
 
 
     }
@@ -487,4 +574,244 @@ public class LogisticLogbookFactory
     public void setSimulatedProfits(final boolean simulatedProfits) {
         this.simulatedProfits = simulatedProfits;
     }
+
+    /**
+     * Getter for property 'cacheCovariates'.
+     *
+     * @return Value for property 'cacheCovariates'.
+     */
+    public boolean isCacheCovariates() {
+        return cacheCovariates;
+    }
+
+    /**
+     * Setter for property 'cacheCovariates'.
+     *
+     * @param cacheCovariates Value to set for property 'cacheCovariates'.
+     */
+    public void setCacheCovariates(final boolean cacheCovariates) {
+        this.cacheCovariates = cacheCovariates;
+    }
+
+    /**
+     * Getter for property 'streamingBufferBytes'.
+     *
+     * @return Value for property 'streamingBufferBytes'.
+     */
+    public int getStreamingBufferBytes() {
+        return streamingBufferBytes;
+    }
+
+    /**
+     * Setter for property 'streamingBufferBytes'.
+     *
+     * @param streamingBufferBytes Value to set for property 'streamingBufferBytes'.
+     */
+    public void setStreamingBufferBytes(final int streamingBufferBytes) {
+        this.streamingBufferBytes = streamingBufferBytes;
+    }
+
+    /**
+     * Getter for property 'binaryLogbookFile'.
+     *
+     * @return Value for property 'binaryLogbookFile'.
+     */
+    public String getBinaryLogbookFile() {
+        return binaryLogbookFile;
+    }
+
+    /**
+     * Setter for property 'binaryLogbookFile'.
+     *
+     * @param binaryLogbookFile Value to set for property 'binaryLogbookFile'.
+     */
+    public void setBinaryLogbookFile(final String binaryLogbookFile) {
+        this.binaryLogbookFile = binaryLogbookFile;
+    }
+
+    /**
+     * Getter for property 'outputFolder'.
+     *
+     * @return Value for property 'outputFolder'.
+     */
+    public String getOutputFolder() {
+        return outputFolder;
+    }
+
+    /**
+     * Setter for property 'outputFolder'.
+     *
+     * @param outputFolder Value to set for property 'outputFolder'.
+     */
+    public void setOutputFolder(final String outputFolder) {
+        this.outputFolder = outputFolder;
+    }
+
+    /**
+     * Getter for property 'asyncLogbookSlots'.
+     *
+     * @return Value for property 'asyncLogbookSlots'.
+     */
+    public int getAsyncLogbookSlots() {
+        return asyncLogbookSlots;
+    }
+
+    /**
+     * Setter for property 'asyncLogbookSlots'.
+     *
+     * @param asyncLogbookSlots Value to set for property 'asyncLogbookSlots'.
+     */
+    public void setAsyncLogbookSlots(final int asyncLogbookSlots) {
+        this.asyncLogbookSlots = asyncLogbookSlots;
+    }
+
+    /**
+     * Getter for property 'fleetCounterfactuals'.
+     *
+     * @return Value for property 'fleetCounterfactuals'.
+     */
+    public boolean isFleetCounterfactuals() {
+        return fleetCounterfactuals;
+    }
+
+    /**
+     * Setter for property 'fleetCounterfactuals'.
+     *
+     * @param fleetCounterfactuals Value to set for property 'fleetCounterfactuals'.
+     */
+    public void setFleetCounterfactuals(final boolean fleetCounterfactuals) {
+        this.fleetCounterfactuals = fleetCounterfactuals;
+    }
+
+    /**
+     * Getter for property 'histogramAggregator'.
+     *
+     * @return Value for property 'histogramAggregator'.
+     */
+    public String getHistogramAggregator() {
+        return histogramAggregator;
+    }
+
+    /**
+     * Setter for property 'histogramAggregator'.
+     *
+     * @param histogramAggregator Value to set for property 'histogramAggregator'.
+     */
+    public void setHistogramAggregator(final String histogramAggregator) {
+        this.histogramAggregator = histogramAggregator;
+    }
+
+    /**
+     * Getter for property 'distanceMatrix'.
+     *
+     * @return Value for property 'distanceMatrix'.
+     */
+    public boolean isDistanceMatrix() {
+        return distanceMatrix;
+    }
+
+    /**
+     * Setter for property 'distanceMatrix'.
+     *
+     * @param distanceMatrix Value to set for property 'distanceMatrix'.
+     */
+    public void setDistanceMatrix(final boolean distanceMatrix) {
+        this.distanceMatrix = distanceMatrix;
+    }
+
+    private static ObservationExtractor shareSimulation(
+        final SimulatedTripCache cache, final String name, final ObservationExtractor simulator
+    ) {
+        return cache == null ? simulator : cache.share(name, simulator);
+    }
+
+    /**
+     * Getter for property 'simulatedTripCacheMegabytes'.
+     *
+     * @return Value for property 'simulatedTripCacheMegabytes'.
+     */
+    public int getSimulatedTripCacheMegabytes() {
+        return simulatedTripCacheMegabytes;
+    }
+
+    /**
+     * Setter for property 'simulatedTripCacheMegabytes'.
+     *
+     * @param simulatedTripCacheMegabytes Value to set for property 'simulatedTripCacheMegabytes'.
+     */
+    public void setSimulatedTripCacheMegabytes(final int simulatedTripCacheMegabytes) {
+        this.simulatedTripCacheMegabytes = simulatedTripCacheMegabytes;
+    }
+
+    /**
+     * Getter for property 'fisherSamplingFraction'.
+     *
+     * @return Value for property 'fisherSamplingFraction'.
+     */
+    public double getFisherSamplingFraction() {
+        return fisherSamplingFraction;
+    }
+
+    /**
+     * Setter for property 'fisherSamplingFraction'.
+     *
+     * @param fisherSamplingFraction Value to set for property 'fisherSamplingFraction'.
+     */
+    public void setFisherSamplingFraction(final double fisherSamplingFraction) {
+        this.fisherSamplingFraction = fisherSamplingFraction;
+    }
+
+    /**
+     * Getter for property 'tripReservoirSize'.
+     *
+     * @return Value for property 'tripReservoirSize'.
+     */
+    public int getTripReservoirSize() {
+        return tripReservoirSize;
+    }
+
+    /**
+     * Setter for property 'tripReservoirSize'.
+     *
+     * @param tripReservoirSize Value to set for property 'tripReservoirSize'.
+     */
+    public void setTripReservoirSize(final int tripReservoirSize) {
+        this.tripReservoirSize = tripReservoirSize;
+    }
+
+    /**
+     * Getter for property 'samplingSeed'.
+     *
+     * @return Value for property 'samplingSeed'.
+     */
+    public Long getSamplingSeed() {
+        return samplingSeed;
+    }
+
+    /**
+     * Setter for property 'samplingSeed'.
+     *
+     * @param samplingSeed Value to set for property 'samplingSeed'.
+     */
+    public void setSamplingSeed(final Long samplingSeed) {
+        this.samplingSeed = samplingSeed;
+    }
+
+    /**
+     * Getter for property 'cacheDiscretization'.
+     *
+     * @return Value for property 'cacheDiscretization'.
+     */
+    public boolean isCacheDiscretization() {
+        return cacheDiscretization;
+    }
+
+    /**
+     * Setter for property 'cacheDiscretization'.
+     *
+     * @param cacheDiscretization Value to set for property 'cacheDiscretization'.
+     */
+    public void setCacheDiscretization(final boolean cacheDiscretization) {
+        this.cacheDiscretization = cacheDiscretization;
+    }
 }
@@ -28,19 +28,40 @@ import uk.ac.ox.oxfish.fisher.log.DiscretizedLocationMemory;
 import uk.ac.ox.oxfish.fisher.log.LogisticLog;
 import uk.ac.ox.oxfish.fisher.log.LogisticLogs;
 import uk.ac.ox.oxfish.fisher.log.PseudoLogisticLogger;
+import uk.ac.ox.oxfish.fisher.log.TripListener;
 import uk.ac.ox.oxfish.fisher.log.initializers.LogbookInitializer;
 import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
 import uk.ac.ox.oxfish.model.FishState;
 import uk.ac.ox.oxfish.model.StepOrder;
 import uk.ac.ox.oxfish.model.data.DiscretizationHistogrammer;
+import uk.ac.ox.poseidon.burlap.logbook.AsyncLogbookSink;
+import uk.ac.ox.poseidon.burlap.logbook.ColumnarLogisticLogs;
+import uk.ac.ox.poseidon.burlap.logbook.CounterfactualCovariateService;
+import uk.ac.ox.poseidon.burlap.logbook.FleetLogisticLogger;
+import uk.ac.ox.poseidon.burlap.logbook.GroupHistogram;
+import uk.ac.ox.poseidon.burlap.logbook.GroupHistogrammer;
+import uk.ac.ox.poseidon.burlap.logbook.HistogramAggregator;
+import uk.ac.ox.poseidon.burlap.logbook.LogbookFeeder;
+import uk.ac.ox.poseidon.burlap.logbook.LogbookSink;
+import uk.ac.ox.poseidon.burlap.logbook.ReservoirLogbookSink;
+import uk.ac.ox.poseidon.burlap.logbook.SpooledLogisticLogs;
+import uk.ac.ox.poseidon.burlap.logbook.StreamingLogisticLog;
 import uk.ac.ox.poseidon.burlap.strategies.LogitDestinationStrategy;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * Creates a logistic logbook
  * Created by carrknight on 2/17/17.
  */
 public class LogisticLogbookInitializer implements LogbookInitializer {
 
+    /**
+     * buffer of the streamed logbook when only the trip reservoir asks for it
+     */
+    public static final int DEFAULT_RESERVOIR_BUFFER_BYTES = 1 << 20;
+
 
     private final MapDiscretization discretization;
 
@@ -60,6 +81,58 @@ public class LogisticLogbookInitializer implements LogbookInitializer {
      * an additional output of the simulation, a histogram of trips to each spot
      */
     private DiscretizationHistogrammer histogrammer;
+    /**
+     * when not empty (or null) trips are counted in a sparse GroupHistogram (still written out for the run) rather than
+     * by a DiscretizationHistogrammer, and merged at turnOff into the {@link HistogramAggregator} with this name
+     */
+    private String histogramAggregator = "";
+    private GroupHistogrammer groupHistogrammer;
+    /**
+     * when positive the logbook is streamed through a buffer of this many bytes (and spilled to disk) rather than
+     * kept in memory until the end of the run
+     */
+    private int streamingBufferBytes = -1;
+    /**
+     * when not empty (or null) the logbook is written in the columnar binary format to this file (relative paths
+     * are resolved against the output folder or, when there is none, named after the model so runs don't overwrite
+     * each other); takes precedence over streamingBufferBytes
+     */
+    private String binaryLogbookFile = "";
+    /**
+     * folder this run writes its outputs to; when not empty (or null) a streamed logbook writes its csv straight
+     * into it instead of handing it over as one string, and a relative binary logbook file is resolved against it
+     */
+    private String outputFolder = "";
+    /**
+     * when positive (and the logbook is streamed or binary) choices are handed to a background writer through a
+     * ring of this many slots
+     */
+    private int asyncLogbookSlots = -1;
+    /**
+     * when true the counterfactual covariates are computed once a day for the whole fleet (one representative tile
+     * per group) rather than by each fisher on its own random tiles
+     */
+    private boolean fleetCounterfactuals = false;
+    private CounterfactualCovariateService counterfactuals;
+    /**
+     * share of fishers keeping a logbook (and counted by the histogrammer); which ones is decided by hashing their id
+     * with the sampling seed, so the same seed always picks the same fishers
+     */
+    private double fisherSamplingFraction = 1d;
+    /**
+     * when positive only a uniform sample of this many choices (over all fishers and trips) is written; the
+     * logbook is then streamed, through a default buffer if streamingBufferBytes is not set
+     */
+    private int tripReservoirSize = -1;
+    /**
+     * seeds the fisher sample and the trip reservoir; when null it is the model's own seed, so every run of a sweep
+     * samples different fishers while a rerun with the same seed samples the same ones
+     */
+    private Long samplingSeed = null;
+    /**
+     * where the individual logs send their choices, when they don't keep them
+     */
+    private LogbookSink sink;
 
 
     public LogisticLogbookInitializer(
@@ -94,62 +167,315 @@ public class LogisticLogbookInitializer implements LogbookInitializer {
     public void start(FishState model) {
 
 
-        logger = new LogisticLogs();
+        if (binaryLogbookFile != null && !binaryLogbookFile.isEmpty()) {
+            Path binary = Paths.get(binaryLogbookFile);
+            //relative to the run's output folder; without one at least keep each run's file apart
+            if (!binary.isAbsolute() && outputFolder != null && !outputFolder.isEmpty())
+                binary = Paths.get(outputFolder).resolve(binary);
+            else if (!binary.isAbsolute())
+                binary = binary.resolveSibling(model.getUniqueID() + "_" + binary.getFileName());
+            logger = new ColumnarLogisticLogs(
+                extractorNames, binary.resolveSibling(identifier + binary.getFileName()));
+        } else
+            logger = streamingBufferBytes > 0 || tripReservoirSize > 0 ?
+                new SpooledLogisticLogs(
+                    extractorNames,
+                    streamingBufferBytes > 0 ? streamingBufferBytes : DEFAULT_RESERVOIR_BUFFER_BYTES
+                ) :
+                new LogisticLogs();
+        if (logger instanceof SpooledLogisticLogs && outputFolder != null && !outputFolder.isEmpty()) {
+            ((SpooledLogisticLogs) logger).setCsvFile(
+                Paths.get(outputFolder).resolve(identifier + logger.getFileName()));
+            logger.setFileName("logistic_long_manifest.csv");
+        }
+        if (logger instanceof LogbookSink) {
+            sink = (LogbookSink) logger;
+            //individual logs -> reservoir -> background writer -> logs
+            if (asyncLogbookSlots > 0)
+                sink = new AsyncLogbookSink(sink, asyncLogbookSlots);
+            if (tripReservoirSize > 0)
+                sink = new ReservoirLogbookSink(sink, tripReservoirSize, samplingSeed(model));
+            if (sink instanceof LogbookFeeder) {
+                if (logger instanceof SpooledLogisticLogs)
+                    ((SpooledLogisticLogs) logger).setFeeder((LogbookFeeder) sink);
+                else
+                    ((ColumnarLogisticLogs) logger).setFeeder((LogbookFeeder) sink);
+            }
+        }
         logger.setFileName(identifier + logger.getFileName());
+        if (fleetCounterfactuals)
+            counterfactuals = new CounterfactualCovariateService(discretization, commonExtractor, model.getRandom());
         //let it build, we won't start it until it's time though
-        histogrammer = new DiscretizationHistogrammer(
-            discretization, false);
-        histogrammer.setFileName(identifier + histogrammer.getFileName());
-
         model.getOutputPlugins().add(logger);
-        model.getOutputPlugins().add(histogrammer);
+        if (histogramAggregator != null && !histogramAggregator.isEmpty()) {
+            groupHistogrammer = new GroupHistogrammer(discretization, model, new GroupHistogram());
+            groupHistogrammer.setFileName(identifier + groupHistogrammer.getFileName());
+            model.getOutputPlugins().add(groupHistogrammer);
+        } else {
+            histogrammer = new DiscretizationHistogrammer(
+                discretization, false);
+            histogrammer.setFileName(identifier + histogrammer.getFileName());
+            model.getOutputPlugins().add(histogrammer);
+        }
 
 
     }
 
     /**
-     * tell the startable to turnoff,
+     * tell the startable to turnoff; a background logbook writer (or reservoir) is drained here (the logs would
+     * otherwise do it themselves before their output is written)
      */
     @Override
     public void turnOff() {
-
+        if (sink instanceof LogbookFeeder)
+            ((LogbookFeeder) sink).close();
+        if (groupHistogrammer != null) {
+            HistogramAggregator.named(histogramAggregator).merge(groupHistogrammer.getHistogram());
+            groupHistogrammer = null;
+        }
     }
 
     @Override
     public void add(Fisher fisher, FishState state) {
 
 
-        LogisticLog log = new LogisticLog(extractorNames, fisher.getID());
+        if (isSampled(samplingSeed(state), fisher.getID(), fisherSamplingFraction))
+            addLogbook(fisher, state);
+
+        //todo move this somewhere less unsavory
+        if (!(fisher.getDestinationStrategy() instanceof LogitDestinationStrategy))
+            fisher.setDiscretizedLocationMemory(
+                new DiscretizedLocationMemory(discretization));
+
+    }
+
+    private void addLogbook(Fisher fisher, FishState state) {
+        LogisticLog log = sink != null ?
+            new StreamingLogisticLog(extractorNames, fisher.getID(), sink) :
+            new LogisticLog(extractorNames, fisher.getID());
 
-        PseudoLogisticLogger pseudoLogger = new PseudoLogisticLogger(
-            discretization,
-            commonExtractor,
-            log,
-            fisher,
-            state,
-            state.getRandom()
-        );
+        TripListener pseudoLogger = counterfactuals != null ?
+            new FleetLogisticLogger(counterfactuals, log, state) :
+            new PseudoLogisticLogger(
+                discretization,
+                commonExtractor,
+                log,
+                fisher,
+                state,
+                state.getRandom()
+            );
 
         fisher.addTripListener(pseudoLogger);
         //add histogrammer now or when it is time!
+        final TripListener tripCounter = groupHistogrammer != null ? groupHistogrammer : histogrammer;
         if (histogrammerStartYear >= 0) { //don't do anything if the start year is negative!
             if (state.getYear() >= histogrammerStartYear)
-                fisher.addTripListener(histogrammer);
+                fisher.addTripListener(tripCounter);
             else
                 state.scheduleOnceAtTheBeginningOfYear(new Steppable() {
                     @Override
                     public void step(SimState simState) {
-                        fisher.addTripListener(histogrammer);
+                        fisher.addTripListener(tripCounter);
                     }
                 }, StepOrder.DAWN, histogrammerStartYear);
         }
         logger.add(log);
+    }
 
+    /**
+     * the seed actually used to sample fishers and trips in this model
+     */
+    long samplingSeed(FishState model) {
+        return samplingSeed != null ? samplingSeed : model.seed();
+    }
 
-        //todo move this somewhere less unsavory
-        if (!(fisher.getDestinationStrategy() instanceof LogitDestinationStrategy))
-            fisher.setDiscretizedLocationMemory(
-                new DiscretizedLocationMemory(discretization));
+    /**
+     * whether a fisher is part of the logbook sample: its id is hashed (splitmix64) with the seed into a uniform
+     * number in [0,1) which is compared with the fraction
+     *
+     * @param seed     sampling seed
+     * @param fisherId id of the fisher
+     * @param fraction share of fishers to sample; 1 or more samples everybody
+     * @return true if the fisher keeps a logbook
+     */
+    public static boolean isSampled(long seed, int fisherId, double fraction) {
+        if (fraction >= 1)
+            return true;
+        long z = seed + 0x9E3779B97F4A7C15L * (fisherId + 1L);
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return (z >>> 11) * 0x1.0p-53 < fraction;
+    }
+
+    /**
+     * Getter for property 'streamingBufferBytes'.
+     *
+     * @return Value for property 'streamingBufferBytes'.
+     */
+    public int getStreamingBufferBytes() {
+        return streamingBufferBytes;
+    }
+
+    /**
+     * Setter for property 'streamingBufferBytes'.
+     *
+     * @param streamingBufferBytes Value to set for property 'streamingBufferBytes'.
+     */
+    public void setStreamingBufferBytes(int streamingBufferBytes) {
+        this.streamingBufferBytes = streamingBufferBytes;
+    }
+
+    /**
+     * Getter for property 'outputFolder'.
+     *
+     * @return Value for property 'outputFolder'.
+     */
+    public String getOutputFolder() {
+        return outputFolder;
+    }
 
+    /**
+     * Setter for property 'outputFolder'.
+     *
+     * @param outputFolder Value to set for property 'outputFolder'.
+     */
+    public void setOutputFolder(String outputFolder) {
+        this.outputFolder = outputFolder;
+    }
+
+    /**
+     * Getter for property 'binaryLogbookFile'.
+     *
+     * @return Value for property 'binaryLogbookFile'.
+     */
+    public String getBinaryLogbookFile() {
+        return binaryLogbookFile;
+    }
+
+    /**
+     * Setter for property 'binaryLogbookFile'.
+     *
+     * @param binaryLogbookFile Value to set for property 'binaryLogbookFile'.
+     */
+    public void setBinaryLogbookFile(String binaryLogbookFile) {
+        this.binaryLogbookFile = binaryLogbookFile;
+    }
+
+    /**
+     * Getter for property 'asyncLogbookSlots'.
+     *
+     * @return Value for property 'asyncLogbookSlots'.
+     */
+    public int getAsyncLogbookSlots() {
+        return asyncLogbookSlots;
+    }
+
+    /**
+     * Setter for property 'asyncLogbookSlots'.
+     *
+     * @param asyncLogbookSlots Value to set for property 'asyncLogbookSlots'.
+     */
+    public void setAsyncLogbookSlots(int asyncLogbookSlots) {
+        this.asyncLogbookSlots = asyncLogbookSlots;
+    }
+
+    /**
+     * Getter for property 'fleetCounterfactuals'.
+     *
+     * @return Value for property 'fleetCounterfactuals'.
+     */
+    public boolean isFleetCounterfactuals() {
+        return fleetCounterfactuals;
+    }
+
+    /**
+     * Setter for property 'fleetCounterfactuals'.
+     *
+     * @param fleetCounterfactuals Value to set for property 'fleetCounterfactuals'.
+     */
+    public void setFleetCounterfactuals(boolean fleetCounterfactuals) {
+        this.fleetCounterfactuals = fleetCounterfactuals;
+    }
+
+    /**
+     * Getter for property 'counterfactuals'.
+     *
+     * @return Value for property 'counterfactuals'; null unless fleetCounterfactuals is on and the logbook started.
+     */
+    public CounterfactualCovariateService getCounterfactuals() {
+        return counterfactuals;
+    }
+
+    /**
+     * Getter for property 'histogramAggregator'.
+     *
+     * @return Value for property 'histogramAggregator'.
+     */
+    public String getHistogramAggregator() {
+        return histogramAggregator;
+    }
+
+    /**
+     * Setter for property 'histogramAggregator'.
+     *
+     * @param histogramAggregator Value to set for property 'histogramAggregator'.
+     */
+    public void setHistogramAggregator(String histogramAggregator) {
+        this.histogramAggregator = histogramAggregator;
+    }
+
+    /**
+     * Getter for property 'fisherSamplingFraction'.
+     *
+     * @return Value for property 'fisherSamplingFraction'.
+     */
+    public double getFisherSamplingFraction() {
+        return fisherSamplingFraction;
+    }
+
+    /**
+     * Setter for property 'fisherSamplingFraction'.
+     *
+     * @param fisherSamplingFraction Value to set for property 'fisherSamplingFraction'.
+     */
+    public void setFisherSamplingFraction(double fisherSamplingFraction) {
+        this.fisherSamplingFraction = fisherSamplingFraction;
+    }
+
+    /**
+     * Getter for property 'tripReservoirSize'.
+     *
+     * @return Value for property 'tripReservoirSize'.
+     */
+    public int getTripReservoirSize() {
+        return tripReservoirSize;
+    }
+
+    /**
+     * Setter for property 'tripReservoirSize'.
+     *
+     * @param tripReservoirSize Value to set for property 'tripReservoirSize'.
+     */
+    public void setTripReservoirSize(int tripReservoirSize) {
+        this.tripReservoirSize = tripReservoirSize;
+    }
+
+    /**
+     * Getter for property 'samplingSeed'.
+     *
+     * @return Value for property 'samplingSeed'.
+     */
+    public Long getSamplingSeed() {
+        return samplingSeed;
+    }
+
+    /**
+     * Setter for property 'samplingSeed'.
+     *
+     * @param samplingSeed Value to set for property 'samplingSeed'.
+     */
+    public void setSamplingSeed(Long samplingSeed) {
+        this.samplingSeed = samplingSeed;
     }
 }
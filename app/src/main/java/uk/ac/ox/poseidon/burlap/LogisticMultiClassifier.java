@@ -21,9 +21,7 @@
 package uk.ac.ox.poseidon.burlap;
 
 import ec.util.MersenneTwisterFast;
-import uk.ac.ox.poseidon.burlap.strategies.SoftmaxBanditAlgorithm;
-
-import java.util.function.Function;
+import uk.ac.ox.poseidon.burlap.strategies.SoftmaxSampler;
 
 /**
  * A not very good implementation of multi-logit classifier
@@ -40,9 +38,20 @@ public class LogisticMultiClassifier {
      */
     private final double[][] betas;
 
+    /**
+     * scores the utilities into probabilities and draws from them; keeps its own buffers
+     */
+    private final SoftmaxSampler sampler = new SoftmaxSampler();
+
+    /**
+     * scratch space for the linear utility of each arm, reused every call (so this classifier is not thread-safe)
+     */
+    private final double[] utilities;
+
 
     public LogisticMultiClassifier(double[][] betas) {
         this.betas = betas;
+        this.utilities = new double[betas.length];
     }
 
     /**
@@ -52,31 +61,58 @@ public class LogisticMultiClassifier {
      * @param random the randomizer
      * @return choice in terms of index
      */
-    public Integer choose(final double[][] x, MersenneTwisterFast random) {
-
-
-        return SoftmaxBanditAlgorithm.drawFromSoftmax(
-            random,
-            getNumberOfOptions(),
-            new Function<Integer, Double>() {
-                @Override
-                public Double apply(Integer arm) {
-                    double[] beta = betas[arm];
-                    assert beta.length == x[0].length;
-                    //sum them up
-                    double sum = 0;
-                    for (int i = 0; i < beta.length; i++)
-                        sum += beta[i] * x[arm][i];
-                    //there might be some very invalid ones
-                    if (Double.isFinite(sum))
-                        return sum;
-                    else
-                        return INVALID_PENALTY;
-                }
-            }
+    public int choose(final double[][] x, MersenneTwisterFast random) {
 
-        );
+        computeUtilities(x, utilities);
+        return sample(utilities);
+
+    }
+
+    /**
+     * draw an arm from utilities already computed (see {@link #computeUtilities(double[][], double[])})
+     *
+     * @param utilities the utility of each arm; arms set to negative infinity are never drawn
+     * @return choice in terms of index
+     */
+    public int sample(final double[] utilities) {
+        return sample(utilities, SoftmaxSampler.burlapUniform());
+    }
+
+    /**
+     * draw an arm from utilities already computed, given the uniform number to draw with
+     *
+     * @param utilities the utility of each arm; arms set to negative infinity are never drawn
+     * @param uniform   a uniform number in [0,1)
+     * @return choice in terms of index
+     */
+    public int sample(final double[] utilities, final double uniform) {
+        return sampler.sample(utilities, betas.length, 1d, uniform);
+    }
+
+    /**
+     * fills the array with the linear utility (beta * x) of each arm; non-finite utilities are replaced by
+     * {@link #INVALID_PENALTY}
+     *
+     * @param x         the input matrix
+     * @param utilities array to fill, at least as long as the number of options
+     */
+    public void computeUtilities(final double[][] x, final double[] utilities) {
+        for (int arm = 0; arm < betas.length; arm++) {
+            double sum = linearUtility(arm, x);
+            //there might be some very invalid ones
+            utilities[arm] = Double.isFinite(sum) ? sum : INVALID_PENALTY;
+        }
+    }
 
+    private double linearUtility(int arm, final double[][] x) {
+        final double[] beta = betas[arm];
+        final double[] row = x[arm];
+        assert beta.length == x[0].length;
+        //sum them up
+        double sum = 0;
+        for (int i = 0; i < beta.length; i++)
+            sum += beta[i] * row[i];
+        return sum;
     }
 
 
@@ -89,24 +125,41 @@ public class LogisticMultiClassifier {
      */
     public double getProbability(int arm, final double[][] x) {
 
+        for (int i = 0; i < betas.length; i++)
+            utilities[i] = linearUtility(i, x);
+        return sampler.computeProbabilities(utilities, utilities.length, 1d)[arm];
 
-        return SoftmaxBanditAlgorithm.getProbabilities(
-            getNumberOfOptions(),
-            new Function<Integer, Double>() {
-                @Override
-                public Double apply(Integer arm) {
-                    double[] beta = betas[arm];
-                    assert beta.length == x[0].length;
-                    //sum them up
-                    double sum = 0;
-                    for (int i = 0; i < beta.length; i++)
-                        sum += beta[i] * x[arm][i];
-                    return sum;
-                }
-            },
-            1d
-        )[arm];
+    }
 
+    /**
+     * the probability of every choice, in one pass
+     *
+     * @param x             input matrix
+     * @param probabilities array to fill, at least as long as the number of options
+     * @return the same probabilities array
+     */
+    public double[] getProbabilities(final double[][] x, final double[] probabilities) {
+        for (int i = 0; i < betas.length; i++)
+            utilities[i] = linearUtility(i, x);
+        System.arraycopy(
+            sampler.computeProbabilities(utilities, utilities.length, 1d), 0,
+            probabilities, 0, betas.length
+        );
+        return probabilities;
+    }
+
+    /**
+     * log of the probability of a particular choice; computed directly in log space so it doesn't underflow
+     * for very unlikely choices
+     *
+     * @param arm index of the arm
+     * @param x   input matrix
+     * @return the log-probability
+     */
+    public double getLogProbability(int arm, final double[][] x) {
+        for (int i = 0; i < betas.length; i++)
+            utilities[i] = linearUtility(i, x);
+        return utilities[arm] - SoftmaxSampler.logSumExp(utilities, utilities.length);
     }
 
     /**
@@ -120,12 +173,15 @@ public class LogisticMultiClassifier {
 
 
     /**
-     * Getter for property 'betas'.
+     * Getter for property 'betas'. The betas may be shared with the rest of the fleet, so this is a copy.
      *
-     * @return Value for property 'betas'.
+     * @return a copy of the betas, one row per option.
      */
     public double[][] getBetas() {
-        return betas;
+        final double[][] copy = new double[betas.length][];
+        for (int i = 0; i < betas.length; i++)
+            copy[i] = betas[i].clone();
+        return copy;
     }
 
 
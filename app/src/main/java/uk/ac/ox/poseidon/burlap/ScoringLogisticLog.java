@@ -0,0 +1,65 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import uk.ac.ox.oxfish.fisher.log.LogisticLog;
+
+/**
+ * A logistic log that, besides keeping the logbook, scores every completed choice against a set of coefficients.
+ * Can replace a normal {@link LogisticLog} anywhere one is set.
+ */
+public class ScoringLogisticLog extends LogisticLog {
+
+    private final LogLikelihoodAccumulator accumulator;
+
+    /**
+     * input recorded and still waiting for its choice
+     */
+    private double[][] lastInput;
+
+    public ScoringLogisticLog(String[] columnNames, int id, LogLikelihoodAccumulator accumulator) {
+        super(columnNames, id);
+        this.accumulator = accumulator;
+    }
+
+    @Override
+    public void recordInput(double[][] input) {
+        super.recordInput(input);
+        lastInput = input;
+    }
+
+    @Override
+    public void recordChoice(int choice, int year, int day) {
+        super.recordChoice(choice, year, day);
+        if (lastInput != null)
+            accumulator.accept(lastInput, choice);
+        lastInput = null;
+    }
+
+    /**
+     * Getter for property 'accumulator'.
+     *
+     * @return Value for property 'accumulator'.
+     */
+    public LogLikelihoodAccumulator getAccumulator() {
+        return accumulator;
+    }
+}
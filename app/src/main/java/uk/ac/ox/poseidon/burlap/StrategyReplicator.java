@@ -34,10 +34,15 @@ import uk.ac.ox.oxfish.model.Startable;
 import uk.ac.ox.oxfish.model.StepOrder;
 import uk.ac.ox.oxfish.utility.AlgorithmFactory;
 import uk.ac.ox.oxfish.utility.fxcollections.ObservableList;
+import uk.ac.ox.poseidon.burlap.strategies.DecisionStreams;
+import uk.ac.ox.poseidon.burlap.strategies.ResettableDestinationStrategy;
+import uk.ac.ox.poseidon.burlap.strategies.SoftmaxSampler;
 
+import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.DoubleSummaryStatistics;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * Uses a simple SOFTMAX rule to force each agent to change its destination strategy as if evolving.
@@ -50,6 +55,43 @@ public class StrategyReplicator implements Startable, Steppable {
     private final List<AlgorithmFactory<? extends DestinationStrategy>> options;
 
     private final double lastObservedFitnesses[];
+    /**
+     * how many fishers use each strategy; recounted whenever fitnesses are updated and kept current as fishers
+     * switch, so it can be read every day without going through the fleet
+     */
+    private final int[] members;
+    /**
+     * scratch accumulators for the fitness update
+     */
+    private final double[] fitnessSums;
+    /**
+     * size of the fleet when members was last counted (-1 means never counted)
+     */
+    private int membersCountedOver = -1;
+    /**
+     * when true a fisher drawing the strategy it already uses keeps its strategy (and what it learned) rather than
+     * getting a brand new one. Off by default: the original rule rebuilds the strategy of every fisher replicating,
+     * whatever it draws, and keeping it changes the dynamics
+     */
+    private boolean reuseUnchangedStrategies = false;
+    /**
+     * when true, strategies abandoned by a fisher are reset and kept (one pool per option) for the next fisher
+     * switching to that option; only works for {@link ResettableDestinationStrategy} options
+     */
+    private boolean poolStrategies = false;
+    private final ArrayDeque<ResettableDestinationStrategy>[] pools;
+    /**
+     * what is inside each wrapper this replicator handed out (only tracked when pooling)
+     */
+    private final Map<ReplicatorDrivenDestinationStrategy, DestinationStrategy> delegates = new WeakHashMap<>();
+    /**
+     * when not null, whether and where each fisher moves is drawn from its own decision stream rather than the
+     * model randomizer (strategies built by the options may still use the model randomizer)
+     */
+    private DecisionStreams decisionStreams;
+    private final SoftmaxSampler sampler = new SoftmaxSampler();
+    private long strategiesBuilt = 0;
+    private long strategiesReused = 0;
     private final ObjectiveFunction<Fisher> objectiveFunction;
     /**
      * individual probability of not replicating
@@ -64,6 +106,9 @@ public class StrategyReplicator implements Startable, Steppable {
     ) {
         this.options = options;
         this.lastObservedFitnesses = new double[options.size()];
+        this.members = new int[options.size()];
+        this.fitnessSums = new double[options.size()];
+        this.pools = newPools(options.size());
         this.objectiveFunction = objectiveFunction;
         this.inertia = inertia;
         Preconditions.checkArgument(options.size() >= 2);
@@ -84,36 +129,105 @@ public class StrategyReplicator implements Startable, Steppable {
 
     private void evolve(FishState model) {
         //softmax selector
-        BoltzmannDistribution distribution = new BoltzmannDistribution(lastObservedFitnesses, temperature);
+        BoltzmannDistribution distribution = decisionStreams == null ?
+            new BoltzmannDistribution(lastObservedFitnesses, temperature) : null;
         for (Fisher fisher : (model).getFishers()) {
+            final DecisionStreams.Stream stream = decisionStreams == null ? null :
+                decisionStreams.stream(fisher.getID(), model, DecisionStreams.REPLICATION);
             //inertia can block you as well as regulations
-            if (!model.getRandom().nextBoolean(inertia) && fisher.isAllowedAtSea() && fisher.getHoursAtPort() < 48) {
-                int newStrategy = distribution.sample();
-                fisher.setDestinationStrategy(
-                    new ReplicatorDrivenDestinationStrategy(
-                        newStrategy,
-                        options.get(newStrategy).apply(model)
-                    ));
+            final boolean stuck = stream == null ? model.getRandom().nextBoolean(inertia) : stream.nextBoolean(inertia);
+            if (!stuck && fisher.isAllowedAtSea() && fisher.getHoursAtPort() < 48) {
+                int newStrategy = stream == null ? distribution.sample() :
+                    sampler.sample(lastObservedFitnesses, lastObservedFitnesses.length, temperature, stream.nextDouble());
+                final int oldStrategy = strategyIndex(fisher);
+                if (reuseUnchangedStrategies && newStrategy == oldStrategy)
+                    continue;
+                members[oldStrategy]--;
+                members[newStrategy]++;
+                final DestinationStrategy old = fisher.getDestinationStrategy();
+                fisher.setDestinationStrategy(buildStrategy(newStrategy, model));
+                //the old strategy has been turned off by now
+                if (poolStrategies)
+                    recycle(oldStrategy, delegates.remove(old), model);
             }
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<ResettableDestinationStrategy>[] newPools(int size) {
+        final ArrayDeque<ResettableDestinationStrategy>[] pools = new ArrayDeque[size];
+        Arrays.setAll(pools, i -> new ArrayDeque<>());
+        return pools;
+    }
+
+    /**
+     * a new strategy of the given kind, wrapped so the replicator can tell which option it is; taken from the pool
+     * when possible
+     *
+     * @param strategy index of the option
+     * @param model    the model
+     * @return the strategy for a fisher to use
+     */
+    public ReplicatorDrivenDestinationStrategy buildStrategy(int strategy, FishState model) {
+        final DestinationStrategy delegate;
+        if (poolStrategies && !pools[strategy].isEmpty()) {
+            delegate = pools[strategy].pop();
+            strategiesReused++;
+        } else {
+            delegate = options.get(strategy).apply(model);
+            strategiesBuilt++;
+        }
+        final ReplicatorDrivenDestinationStrategy wrapper = new ReplicatorDrivenDestinationStrategy(strategy, delegate);
+        if (poolStrategies)
+            delegates.put(wrapper, delegate);
+        return wrapper;
+    }
+
+    private void recycle(int strategy, DestinationStrategy abandoned, FishState model) {
+        if (abandoned instanceof ResettableDestinationStrategy &&
+            ((ResettableDestinationStrategy) abandoned).reset(model))
+            pools[strategy].push((ResettableDestinationStrategy) abandoned);
+    }
+
     private void updateFitnesses(FishState simState) {
         ObservableList<Fisher> fishers = simState.getFishers();
-        DoubleSummaryStatistics statistics[] =
-            new DoubleSummaryStatistics[lastObservedFitnesses.length];
-        Arrays.setAll(statistics, value -> new DoubleSummaryStatistics());
-        //get each fishers' utility
+        Arrays.fill(fitnessSums, 0);
+        Arrays.fill(members, 0);
+        //get each fishers' utility (and count them while we are at it)
         for (Fisher fisher : fishers) {
 
-            int index = ((ReplicatorDrivenDestinationStrategy) fisher.getDestinationStrategy()).getStrategyIndex();
-            statistics[index].accept(objectiveFunction.computeCurrentFitness(fisher, fisher));
+            int index = strategyIndex(fisher);
+            fitnessSums[index] += objectiveFunction.computeCurrentFitness(fisher, fisher);
+            members[index]++;
         }
+        membersCountedOver = fishers.size();
         for (int i = 0; i < options.size(); i++) {
-            lastObservedFitnesses[i] = statistics[i].getAverage();
+            lastObservedFitnesses[i] = members[i] == 0 ? 0 : fitnessSums[i] / members[i];
+
+
+        }
+    }
 
+    private static int strategyIndex(Fisher fisher) {
+        return ((ReplicatorDrivenDestinationStrategy) fisher.getDestinationStrategy()).getStrategyIndex();
+    }
 
+    /**
+     * how many fishers use each strategy. Counts are kept current as the replicator switches strategies, so this is
+     * O(1) unless the fleet changed size (or was never counted), in which case the fleet is counted again
+     *
+     * @param model the model
+     * @return number of fishers per strategy; don't modify
+     */
+    public int[] getMembers(FishState model) {
+        final ObservableList<Fisher> fishers = model.getFishers();
+        if (membersCountedOver != fishers.size()) {
+            Arrays.fill(members, 0);
+            for (Fisher fisher : fishers)
+                members[strategyIndex(fisher)]++;
+            membersCountedOver = fishers.size();
         }
+        return members;
     }
 
     /**
@@ -137,6 +251,9 @@ public class StrategyReplicator implements Startable, Steppable {
     public void turnOff() {
         if (stoppable != null)
             stoppable.stop();
+        for (ArrayDeque<ResettableDestinationStrategy> pool : pools)
+            pool.clear();
+        delegates.clear();
 
     }
 
@@ -166,4 +283,76 @@ public class StrategyReplicator implements Startable, Steppable {
     public double getInertia() {
         return inertia;
     }
+
+    /**
+     * Getter for property 'reuseUnchangedStrategies'.
+     *
+     * @return Value for property 'reuseUnchangedStrategies'.
+     */
+    public boolean isReuseUnchangedStrategies() {
+        return reuseUnchangedStrategies;
+    }
+
+    /**
+     * Setter for property 'reuseUnchangedStrategies'.
+     *
+     * @param reuseUnchangedStrategies Value to set for property 'reuseUnchangedStrategies'.
+     */
+    public void setReuseUnchangedStrategies(boolean reuseUnchangedStrategies) {
+        this.reuseUnchangedStrategies = reuseUnchangedStrategies;
+    }
+
+    /**
+     * Getter for property 'poolStrategies'.
+     *
+     * @return Value for property 'poolStrategies'.
+     */
+    public boolean isPoolStrategies() {
+        return poolStrategies;
+    }
+
+    /**
+     * Setter for property 'poolStrategies'.
+     *
+     * @param poolStrategies Value to set for property 'poolStrategies'.
+     */
+    public void setPoolStrategies(boolean poolStrategies) {
+        this.poolStrategies = poolStrategies;
+    }
+
+    /**
+     * Getter for property 'strategiesBuilt'.
+     *
+     * @return Value for property 'strategiesBuilt'.
+     */
+    public long getStrategiesBuilt() {
+        return strategiesBuilt;
+    }
+
+    /**
+     * Getter for property 'strategiesReused'.
+     *
+     * @return Value for property 'strategiesReused'.
+     */
+    public long getStrategiesReused() {
+        return strategiesReused;
+    }
+
+    /**
+     * Getter for property 'decisionStreams'.
+     *
+     * @return Value for property 'decisionStreams'.
+     */
+    public DecisionStreams getDecisionStreams() {
+        return decisionStreams;
+    }
+
+    /**
+     * Setter for property 'decisionStreams'.
+     *
+     * @param decisionStreams Value to set for property 'decisionStreams'.
+     */
+    public void setDecisionStreams(DecisionStreams decisionStreams) {
+        this.decisionStreams = decisionStreams;
+    }
 }
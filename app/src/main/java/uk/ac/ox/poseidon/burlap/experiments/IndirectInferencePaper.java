@@ -27,6 +27,7 @@ import uk.ac.ox.oxfish.biology.initializer.factory.LinearGetterBiologyFactory;
 import uk.ac.ox.oxfish.biology.initializer.factory.OneSpeciesSchoolFactory;
 import uk.ac.ox.oxfish.fisher.heatmap.acquisition.factory.ExhaustiveAcquisitionFunctionFactory;
 import uk.ac.ox.oxfish.fisher.heatmap.regression.factory.NearestNeighborTransductionFactory;
+import uk.ac.ox.oxfish.fisher.log.LogisticLogs;
 import uk.ac.ox.oxfish.fisher.strategies.destination.DestinationStrategy;
 import uk.ac.ox.oxfish.fisher.strategies.destination.factory.*;
 import uk.ac.ox.oxfish.geography.discretization.SquaresMapDiscretizerFactory;
@@ -41,6 +42,8 @@ import uk.ac.ox.oxfish.utility.adaptation.probability.factory.SocialAnnealingPro
 import uk.ac.ox.oxfish.utility.parameters.FixedDoubleParameter;
 import uk.ac.ox.oxfish.utility.parameters.UniformDoubleParameter;
 import uk.ac.ox.oxfish.utility.yaml.FishYAML;
+import uk.ac.ox.poseidon.burlap.ConditionalLogitData;
+import uk.ac.ox.poseidon.burlap.ConditionalLogitEstimator;
 import uk.ac.ox.poseidon.burlap.scenarios.DerisoCaliforniaScenario;
 import uk.ac.ox.poseidon.burlap.strategies.LogitRPUEDestinationFactory;
 import uk.ac.ox.poseidon.burlap.strategies.SoftmaxBanditFactory;
@@ -77,6 +80,12 @@ public class IndirectInferencePaper {
         new LinkedHashMap<>();
     private final static Path MAIN_DIRECTORY = Paths.get("docs", "indirect_inference", "simulation_short_validation");
     private final static Path MLOGIT_SCRIPT = MAIN_DIRECTORY.resolve("mlogit_fit_full.R");
+    private final static String LOGBOOK_FILE = "logistic_long.csv";
+    /**
+     * defaults to R; run with -Dindirect.estimator=JAVA to fit in memory instead
+     */
+    private static LogbookEstimator estimator =
+        LogbookEstimator.valueOf(System.getProperty("indirect.estimator", LogbookEstimator.RSCRIPT.name()));
 
     static {
 
@@ -597,25 +606,34 @@ public class IndirectInferencePaper {
 
         //at the end I'd like a CSV like this:
         // run, scenario, seed, target-strategy,current-strategy,isTargetRun,beta_0,beta_0_sd,beta_1,beta_1_sd,....
-        final String pathToRScript = mlogitScript.toAbsolutePath().toString();
-        final String pathToLogbook = output.resolve("logistic_long.csv").toAbsolutePath().toString();
-
-        final String[] arguments =
-            new String[]{
-                "Rscript",
-                pathToRScript,
-                pathToLogbook,
-                pathToCSV,
-                runArgument,
-                scenario,
-                seedArgument,
-                targetStrategyArgument,
-                currentStrategyArgument,
-                isTargetRun
-            };
-        Logger.getGlobal().info(Arrays.toString(arguments));
-        final Process exec = Runtime.getRuntime().exec(arguments);
-        final int code = exec.waitFor();
+        final Process exec;
+        final int code;
+        if (estimator == LogbookEstimator.JAVA) {
+            exec = null;
+            code = fitLogbook(state, pathToCSV, runArgument, scenario, seedArgument,
+                targetStrategyArgument, currentStrategyArgument, isTargetRun
+            );
+        } else {
+            final String pathToRScript = mlogitScript.toAbsolutePath().toString();
+            final String pathToLogbook = output.resolve(LOGBOOK_FILE).toAbsolutePath().toString();
+
+            final String[] arguments =
+                new String[]{
+                    "Rscript",
+                    pathToRScript,
+                    pathToLogbook,
+                    pathToCSV,
+                    runArgument,
+                    scenario,
+                    seedArgument,
+                    targetStrategyArgument,
+                    currentStrategyArgument,
+                    isTargetRun
+                };
+            Logger.getGlobal().info(Arrays.toString(arguments));
+            exec = Runtime.getRuntime().exec(arguments);
+            code = exec.waitFor();
+        }
         final FileWriter fileWriter = new FileWriter(pathToAggregatesCSV.toFile(), true);
         if (state.getYearlyDataSet().getColumn("Species 0 Landings") != null) {
             fileWriter.append(
@@ -686,7 +704,8 @@ public class IndirectInferencePaper {
                 break;
             case 1:
                 //Read the error stream then
-                final String message = convertStreamToString(exec.getErrorStream());
+                final String message = exec == null ?
+                    "Failed to fit the logbook in java" : convertStreamToString(exec.getErrorStream());
                 Logger.getGlobal().info("Swish!");
                 Logger.getGlobal().info(message);
                 deleteFolder(output.toFile());
@@ -700,6 +719,85 @@ public class IndirectInferencePaper {
     }
 
 
+    /**
+     * the same job as the mlogit script, without leaving the JVM: reads the logbook straight from the output plugin,
+     * fits a conditional logit and appends the betas and their standard errors to the csv
+     *
+     * @return 0 if everything went fine, 1 otherwise (like the R script exit code)
+     */
+    static int fitLogbook(
+        final FishState state,
+        final String pathToCSV,
+        final String runArgument,
+        final String scenario,
+        final String seedArgument,
+        final String targetStrategyArgument,
+        final String currentStrategyArgument,
+        final String isTargetRun
+    ) throws IOException {
+        LogisticLogs logbook = null;
+        for (final Object plugin : state.getOutputPlugins())
+            if (plugin instanceof LogisticLogs &&
+                (logbook == null || LOGBOOK_FILE.equals(((LogisticLogs) plugin).getFileName())))
+                logbook = (LogisticLogs) plugin;
+        if (logbook == null) {
+            Logger.getGlobal().warning("No logbook to fit!");
+            return 1;
+        }
+
+        final ConditionalLogitEstimator.Fit fit;
+        try {
+            fit = new ConditionalLogitEstimator().estimate(ConditionalLogitData.fromLogbook(logbook));
+        } catch (final RuntimeException e) {
+            Logger.getGlobal().log(Level.WARNING, "Failed to fit the logbook", e);
+            return 1;
+        }
+        if (!fit.isConverged())
+            Logger.getGlobal().warning("Logit estimation did not converge");
+
+        final File csv = new File(pathToCSV);
+        final boolean newFile = !csv.exists();
+        try (final FileWriter writer = new FileWriter(csv, true)) {
+            //rows are appended run after run, so every beta is always written (NaN when not identified)
+            if (newFile) {
+                writer.append("run,scenario,seed,target_strategy,current_strategy,isTargetRun");
+                for (int beta = 0; beta < fit.getBetas().length; beta++)
+                    writer.append(",beta_").append(Integer.toString(beta))
+                        .append(",beta_").append(Integer.toString(beta)).append("_sd");
+                writer.append("\n");
+            }
+            writer.append(runArgument).append(",")
+                .append(scenario).append(",")
+                .append(seedArgument).append(",")
+                .append(targetStrategyArgument).append(",")
+                .append(currentStrategyArgument).append(",")
+                .append(isTargetRun);
+            for (int i = 0; i < fit.getBetas().length; i++)
+                writer.append(",").append(Double.toString(fit.getBetas()[i]))
+                    .append(",").append(Double.toString(fit.getStandardErrors()[i]));
+            writer.append("\n");
+        }
+        return 0;
+    }
+
+    /**
+     * Getter for property 'estimator'.
+     *
+     * @return Value for property 'estimator'.
+     */
+    public static LogbookEstimator getEstimator() {
+        return estimator;
+    }
+
+    /**
+     * Setter for property 'estimator'.
+     *
+     * @param estimator Value to set for property 'estimator'.
+     */
+    public static void setEstimator(final LogbookEstimator estimator) {
+        IndirectInferencePaper.estimator = estimator;
+    }
+
     static String convertStreamToString(final java.io.InputStream is) {
         final java.util.Scanner s = new java.util.Scanner(is).useDelimiter("\\A");
         return s.hasNext() ? s.next() : "";
@@ -724,6 +822,22 @@ public class IndirectInferencePaper {
     }
 
 
+    /**
+     * what fits the logbook at the end of each simulation
+     */
+    public enum LogbookEstimator {
+
+        /**
+         * fork Rscript on the mlogit script
+         */
+        RSCRIPT,
+
+        /**
+         * {@link ConditionalLogitEstimator}, in memory
+         */
+        JAVA
+    }
+
     public interface ScenarioInitializer {
 
         void initialize(
@@ -0,0 +1,247 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands logbook choices over to a background thread that feeds them to another sink (serializing, compressing,
+ * writing to disk), so the simulation thread only pays for a copy.
+ * <p>
+ * Choices go through a bounded ring of preallocated slots with exactly one producer (the simulation thread) and
+ * one consumer (the writer thread). The writer drains everything available in one go, so the downstream sink sees
+ * long runs of choices and its buffered output turns into large sequential writes. When the ring is full the
+ * simulation thread parks until the writer frees a slot (backpressure) rather than growing memory; an idle writer
+ * parks until the next choice is published.
+ * <p>
+ * {@link #close()} drains the ring, joins the writer and rethrows anything the writer failed with; only after that
+ * is the downstream sink safe to use from other threads. The logs this feeds close it when the model finishes and
+ * the logbook initializer when it is turned off, whichever comes first.
+ * <p>
+ * Trip histograms don't go through here: during the run a histogrammer only bumps an in-memory counter per trip,
+ * its one table is written at the end.
+ */
+public class AsyncLogbookSink implements LogbookFeeder, Closeable {
+
+    private final LogbookSink downstream;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final int[] ids;
+    private final int[] episodes;
+    private final int[] years;
+    private final int[] days;
+    private final int[] chosen;
+    /**
+     * one input matrix per slot; reallocated only when the number of options or covariates changes
+     */
+    private final double[][][] inputs;
+
+    /**
+     * next slot the producer writes to
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * next slot the consumer reads from
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    private final Thread writer;
+
+    private volatile boolean closing = false;
+
+    private volatile Throwable failure;
+
+    /**
+     * true while the writer is (about to be) parked waiting for choices
+     */
+    private volatile boolean writerIdle = false;
+
+    /**
+     * the simulation thread, while it is (about to be) parked waiting for a free slot
+     */
+    private volatile Thread waitingProducer;
+
+    private long backpressureWaits = 0;
+
+    private long batches = 0;
+
+    /**
+     * @param downstream where choices end up; from now on only the writer thread touches it
+     * @param slots      size of the ring, rounded up to a power of 2
+     */
+    public AsyncLogbookSink(LogbookSink downstream, int slots) {
+        Preconditions.checkArgument(slots > 0 && slots <= 1 << 30, "Invalid ring size %s", slots);
+        this.downstream = downstream;
+        this.capacity = slots == 1 ? 1 : Integer.highestOneBit(slots - 1) << 1;
+        this.mask = capacity - 1;
+        ids = new int[capacity];
+        episodes = new int[capacity];
+        years = new int[capacity];
+        days = new int[capacity];
+        chosen = new int[capacity];
+        inputs = new double[capacity][][];
+
+        writer = new Thread(this::drainLoop, "logbook-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void record(int id, int episode, int year, int day, int chosen, double[][] x) {
+        Preconditions.checkState(!closing, "Logbook writer already closed");
+        checkFailure();
+        final long position = tail.get();
+        //backpressure: wait for the writer to free a slot
+        if (position - head.get() == capacity) {
+            backpressureWaits++;
+            waitingProducer = Thread.currentThread();
+            //re-check after announcing we are waiting, or a freed slot could be missed
+            while (position - head.get() == capacity) {
+                checkFailure();
+                LockSupport.unpark(writer);
+                //bounded, so that a writer dying between the check and the park is noticed
+                LockSupport.parkNanos(this, 1_000_000L);
+            }
+            waitingProducer = null;
+        }
+
+        final int slot = (int) (position & mask);
+        ids[slot] = id;
+        episodes[slot] = episode;
+        years[slot] = year;
+        days[slot] = day;
+        this.chosen[slot] = chosen;
+        double[][] copy = inputs[slot];
+        final int covariates = x.length == 0 ? 0 : x[0].length;
+        if (copy == null || copy.length != x.length || (x.length > 0 && copy[0].length != covariates))
+            inputs[slot] = copy = new double[x.length][covariates];
+        for (int option = 0; option < x.length; option++)
+            System.arraycopy(x[option], 0, copy[option], 0, covariates);
+        //publish (a full volatile write, so that the writer can't announce it is idle without seeing it)
+        tail.set(position + 1);
+        if (writerIdle)
+            LockSupport.unpark(writer);
+    }
+
+    private void drainLoop() {
+        try {
+            while (true) {
+                final long available = tail.get();
+                long position = head.get();
+                if (position == available) {
+                    if (closing && tail.get() == position)
+                        return;
+                    writerIdle = true;
+                    //re-check after announcing we are idle, or a publication could be missed
+                    if (tail.get() == position && !closing)
+                        LockSupport.park(this);
+                    writerIdle = false;
+                    continue;
+                }
+                for (; position < available; position++) {
+                    final int slot = (int) (position & mask);
+                    downstream.record(ids[slot], episodes[slot], years[slot], days[slot], chosen[slot], inputs[slot]);
+                    //free the slot as soon as it's consumed so a full ring recovers quickly
+                    head.set(position + 1);
+                    final Thread producer = waitingProducer;
+                    if (producer != null)
+                        LockSupport.unpark(producer);
+                }
+                batches++;
+            }
+        } catch (Throwable e) {
+            failure = e;
+            final Thread producer = waitingProducer;
+            if (producer != null)
+                LockSupport.unpark(producer);
+        }
+    }
+
+    private void checkFailure() {
+        final Throwable e = failure;
+        if (e != null)
+            throw new IllegalStateException("The logbook writer failed", e);
+    }
+
+    /**
+     * write everything still in the ring and stop the writer thread. Idempotent.
+     */
+    @Override
+    public void close() {
+        closing = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        checkFailure();
+    }
+
+    /**
+     * Getter for property 'downstream'.
+     *
+     * @return Value for property 'downstream'.
+     */
+    public LogbookSink getDownstream() {
+        return downstream;
+    }
+
+    /**
+     * Getter for property 'capacity'.
+     *
+     * @return Value for property 'capacity'.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * how many times the simulation had to wait for the writer
+     *
+     * @return Value for property 'backpressureWaits'.
+     */
+    public long getBackpressureWaits() {
+        return backpressureWaits;
+    }
+
+    /**
+     * how many runs of choices the writer drained; only meaningful after {@link #close()}
+     *
+     * @return Value for property 'batches'.
+     */
+    public long getBatches() {
+        return batches;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Constants and integer codings shared by {@link ColumnarLogbookWriter} and {@link ColumnarLogbookReader}.
+ * <p>
+ * A columnar logbook is a header (magic, version, covariate names) followed by blocks. Each block is
+ * {@code int rawLength, int compressedLength, deflated bytes}; once inflated a block of n choices reads:
+ * <ol>
+ *     <li>n, then the fisher ids first seen in this block (they extend the file-wide dictionary)</li>
+ *     <li>n dictionary codes, n episodes, n year deltas, n day deltas, n option counts, n chosen arms (all varints)</li>
+ *     <li>one column of doubles per covariate, each holding every option of every choice in the block</li>
+ * </ol>
+ * Years and days are delta-coded against the previous choice in the block, zig-zagged since days go back to 0
+ * when the year changes.
+ */
+final class ColumnarLogbookFormat {
+
+    /**
+     * "PLGB"
+     */
+    static final int MAGIC = 0x504C4742;
+
+    static final int VERSION = 1;
+
+    private ColumnarLogbookFormat() {
+    }
+
+    static void writeVarInt(DataOutput output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    static int readVarInt(DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = input.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IOException("Malformed varint in logbook");
+    }
+
+    static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static uk.ac.ox.poseidon.burlap.logbook.ColumnarLogbookFormat.*;
+
+/**
+ * Reads back what {@link ColumnarLogbookWriter} wrote, and converts it to the csv {@code LogisticLogs} would
+ * have written (so existing R scripts keep working). Run as main to convert a file: {@code binary csv}
+ */
+public class ColumnarLogbookReader {
+
+    private ColumnarLogbookReader() {
+    }
+
+    /**
+     * go through every choice in the logbook, in the order they were written
+     *
+     * @param input the binary logbook
+     * @param sink  called once per choice
+     * @return the covariate names
+     */
+    public static String[] read(InputStream input, LogbookSink sink) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(input, 1 << 16));
+        final String[] names = readHeader(data);
+        final int covariates = names.length;
+
+        int[] dictionary = new int[16];
+        int dictionarySize = 0;
+        byte[] compressed = new byte[1 << 16];
+        byte[] raw = new byte[1 << 16];
+        final Inflater inflater = new Inflater();
+        try {
+            while (true) {
+                final int rawLength;
+                try {
+                    rawLength = data.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                final int compressedLength = data.readInt();
+                if (compressed.length < compressedLength)
+                    compressed = new byte[compressedLength];
+                if (raw.length < rawLength)
+                    raw = new byte[rawLength];
+                data.readFully(compressed, 0, compressedLength);
+                inflater.reset();
+                inflater.setInput(compressed, 0, compressedLength);
+                try {
+                    if (inflater.inflate(raw, 0, rawLength) != rawLength)
+                        throw new IOException("Truncated logbook block");
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupted logbook block", e);
+                }
+
+                final DataInputStream block = new DataInputStream(new ByteArrayInputStream(raw, 0, rawLength));
+                final int n = readVarInt(block);
+                final int newIds = readVarInt(block);
+                if (dictionary.length < dictionarySize + newIds)
+                    dictionary = Arrays.copyOf(dictionary, Math.max(dictionary.length * 2, dictionarySize + newIds));
+                for (int i = 0; i < newIds; i++)
+                    dictionary[dictionarySize++] = block.readInt();
+                final int[] ids = new int[n];
+                for (int i = 0; i < n; i++)
+                    ids[i] = dictionary[readVarInt(block)];
+                final int[] episodes = new int[n];
+                for (int i = 0; i < n; i++)
+                    episodes[i] = readVarInt(block);
+                final int[] years = new int[n];
+                for (int i = 0, previous = 0; i < n; i++)
+                    previous = years[i] = previous + unZigZag(readVarInt(block));
+                final int[] days = new int[n];
+                for (int i = 0, previous = 0; i < n; i++)
+                    previous = days[i] = previous + unZigZag(readVarInt(block));
+                final int[] options = new int[n];
+                int totalOptions = 0;
+                for (int i = 0; i < n; i++) {
+                    options[i] = readVarInt(block);
+                    totalOptions += options[i];
+                }
+                final int[] chosen = new int[n];
+                for (int i = 0; i < n; i++)
+                    chosen[i] = readVarInt(block);
+                final double[][] columns = new double[covariates][totalOptions];
+                for (int column = 0; column < covariates; column++)
+                    for (int i = 0; i < totalOptions; i++)
+                        columns[column][i] = block.readDouble();
+
+                for (int i = 0, offset = 0; i < n; offset += options[i], i++) {
+                    final double[][] x = new double[options[i]][covariates];
+                    for (int option = 0; option < options[i]; option++)
+                        for (int column = 0; column < covariates; column++)
+                            x[option][column] = columns[column][offset + option];
+                    sink.record(ids[i], episodes[i], years[i], days[i], chosen[i], x);
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return names;
+    }
+
+    private static String[] readHeader(DataInputStream data) throws IOException {
+        if (data.readInt() != MAGIC)
+            throw new IOException("Not a columnar logbook");
+        final int version = data.readInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported columnar logbook version " + version);
+        final String[] names = new String[data.readInt()];
+        for (int i = 0; i < names.length; i++)
+            names[i] = data.readUTF();
+        return names;
+    }
+
+    /**
+     * convert a binary logbook to the csv format of LogisticLogs
+     *
+     * @param binary the columnar logbook
+     * @param writer where to write the csv
+     */
+    public static void toCsv(InputStream binary, Writer writer) throws IOException {
+        //we need the names before the first choice, so peek at the header
+        final BufferedInputStream input = new BufferedInputStream(binary, 1 << 16);
+        input.mark(1 << 16);
+        writer.write(SpooledLogisticLogs.csvHeader(readHeader(new DataInputStream(input))));
+        writer.write("\n");
+        input.reset();
+
+        final StringBuilder line = new StringBuilder();
+        try {
+            read(input, (id, episode, year, day, chosen, x) -> {
+                line.setLength(0);
+                SpooledLogisticLogs.appendCsvLines(line, id, episode, year, day, chosen, x);
+                try {
+                    writer.append(line);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    public static void toCsv(Path binary, Path csv) throws IOException {
+        try (InputStream input = Files.newInputStream(binary);
+             Writer writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            toCsv(input, writer);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: ColumnarLogbookReader <binary logbook> <csv>");
+            System.exit(1);
+        }
+        toCsv(Paths.get(args[0]), Paths.get(args[1]));
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import com.google.common.base.Preconditions;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.Deflater;
+
+import static uk.ac.ox.poseidon.burlap.logbook.ColumnarLogbookFormat.*;
+
+/**
+ * Writes logbook choices in the columnar binary format (see {@link ColumnarLogbookFormat}). Choices are
+ * buffered in primitive columns until a block is full, then the block is encoded, deflated and appended to the
+ * stream; memory is bounded by the block size regardless of the length of the run.
+ * Read it back with {@link ColumnarLogbookReader}.
+ */
+public class ColumnarLogbookWriter implements LogbookSink, Closeable {
+
+    public static final int DEFAULT_BLOCK_CHOICES = 4096;
+
+    private final DataOutputStream output;
+
+    private final int covariates;
+
+    private final int blockChoices;
+
+    /**
+     * fisher id to dictionary code, for the whole file
+     */
+    private final HashMap<Integer, Integer> dictionary = new HashMap<>();
+
+    private final int[] codes;
+    private final int[] episodes;
+    private final int[] years;
+    private final int[] days;
+    private final int[] options;
+    private final int[] chosen;
+    /**
+     * one column per covariate, each with one entry per option of every buffered choice
+     */
+    private final double[][] values;
+    private int valuesCapacity;
+    private int valuesInBlock = 0;
+    private int choicesInBlock = 0;
+    /**
+     * ids that got their dictionary code in the current block
+     */
+    private int[] newIds = new int[16];
+    private int newIdsInBlock = 0;
+
+    private final ByteArrayOutputStream raw = new ByteArrayOutputStream(1 << 16);
+
+    private final DataOutputStream rawOutput = new DataOutputStream(raw);
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+
+    private byte[] compressed = new byte[1 << 16];
+
+    private long choices = 0;
+
+    private long bytesWritten = 0;
+
+    public ColumnarLogbookWriter(OutputStream output, String[] inputNames) throws IOException {
+        this(output, inputNames, DEFAULT_BLOCK_CHOICES);
+    }
+
+    public ColumnarLogbookWriter(OutputStream output, String[] inputNames, int blockChoices) throws IOException {
+        Preconditions.checkArgument(blockChoices > 0);
+        this.output = new DataOutputStream(new BufferedOutputStream(output, 1 << 16));
+        this.covariates = inputNames.length;
+        this.blockChoices = blockChoices;
+        codes = new int[blockChoices];
+        episodes = new int[blockChoices];
+        years = new int[blockChoices];
+        days = new int[blockChoices];
+        options = new int[blockChoices];
+        chosen = new int[blockChoices];
+        valuesCapacity = blockChoices;
+        values = new double[covariates][valuesCapacity];
+
+        this.output.writeInt(MAGIC);
+        this.output.writeInt(VERSION);
+        this.output.writeInt(covariates);
+        for (String name : inputNames)
+            this.output.writeUTF(name);
+        bytesWritten += this.output.size();
+    }
+
+    @Override
+    public void record(int id, int episode, int year, int day, int chosen, double[][] x) {
+        for (double[] row : x)
+            Preconditions.checkArgument(row.length == covariates,
+                "Expected %s covariates, got %s", covariates, row.length);
+
+        Integer code = dictionary.get(id);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.put(id, code);
+            if (newIdsInBlock == newIds.length)
+                newIds = Arrays.copyOf(newIds, newIds.length * 2);
+            newIds[newIdsInBlock++] = id;
+        }
+        if (valuesInBlock + x.length > valuesCapacity) {
+            valuesCapacity = Math.max(valuesCapacity * 2, valuesInBlock + x.length);
+            for (int i = 0; i < covariates; i++)
+                values[i] = Arrays.copyOf(values[i], valuesCapacity);
+        }
+
+        codes[choicesInBlock] = code;
+        episodes[choicesInBlock] = episode;
+        years[choicesInBlock] = year;
+        days[choicesInBlock] = day;
+        options[choicesInBlock] = x.length;
+        this.chosen[choicesInBlock] = chosen;
+        for (int i = 0; i < covariates; i++)
+            for (int option = 0; option < x.length; option++)
+                values[i][valuesInBlock + option] = x[option][i];
+        valuesInBlock += x.length;
+        choicesInBlock++;
+        choices++;
+
+        if (choicesInBlock == blockChoices)
+            flushBlock();
+    }
+
+    /**
+     * encode, compress and write whatever choices are buffered
+     */
+    public void flushBlock() {
+        if (choicesInBlock == 0)
+            return;
+        try {
+            raw.reset();
+            writeVarInt(rawOutput, choicesInBlock);
+            writeVarInt(rawOutput, newIdsInBlock);
+            for (int i = 0; i < newIdsInBlock; i++)
+                rawOutput.writeInt(newIds[i]);
+            for (int i = 0; i < choicesInBlock; i++)
+                writeVarInt(rawOutput, codes[i]);
+            for (int i = 0; i < choicesInBlock; i++)
+                writeVarInt(rawOutput, episodes[i]);
+            int previous = 0;
+            for (int i = 0; i < choicesInBlock; i++) {
+                writeVarInt(rawOutput, zigZag(years[i] - previous));
+                previous = years[i];
+            }
+            previous = 0;
+            for (int i = 0; i < choicesInBlock; i++) {
+                writeVarInt(rawOutput, zigZag(days[i] - previous));
+                previous = days[i];
+            }
+            for (int i = 0; i < choicesInBlock; i++)
+                writeVarInt(rawOutput, options[i]);
+            for (int i = 0; i < choicesInBlock; i++)
+                writeVarInt(rawOutput, chosen[i]);
+            for (int column = 0; column < covariates; column++)
+                for (int i = 0; i < valuesInBlock; i++)
+                    rawOutput.writeDouble(values[column][i]);
+            rawOutput.flush();
+
+            final int rawLength = raw.size();
+            deflater.reset();
+            deflater.setInput(raw.toByteArray());
+            deflater.finish();
+            int compressedLength = 0;
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length)
+                    compressed = Arrays.copyOf(compressed, compressed.length * 2);
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+            output.writeInt(rawLength);
+            output.writeInt(compressedLength);
+            output.write(compressed, 0, compressedLength);
+            bytesWritten += 2 * Integer.BYTES + compressedLength;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the logbook", e);
+        }
+        choicesInBlock = 0;
+        valuesInBlock = 0;
+        newIdsInBlock = 0;
+    }
+
+    /**
+     * write the last block and close the stream
+     */
+    @Override
+    public void close() throws IOException {
+        flushBlock();
+        deflater.end();
+        output.close();
+    }
+
+    /**
+     * Getter for property 'choices'.
+     *
+     * @return Value for property 'choices'.
+     */
+    public long getChoices() {
+        return choices;
+    }
+
+    /**
+     * Getter for property 'bytesWritten'.
+     *
+     * @return Value for property 'bytesWritten'.
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import com.google.common.base.Preconditions;
+import uk.ac.ox.oxfish.fisher.log.LogisticLogs;
+import uk.ac.ox.oxfish.model.FishState;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Logistic logs written straight to a columnar binary file (see {@link ColumnarLogbookWriter}) as the run goes.
+ * The output file of this plugin is only a small manifest pointing to the binary; use
+ * {@link ColumnarLogbookReader} to get the usual csv back.
+ * <p>
+ * Use {@link #newLog(int)} to create the individual logs.
+ */
+public class ColumnarLogisticLogs extends LogisticLogs implements LogbookSink {
+
+    private final String[] inputNames;
+
+    private final Path binaryFile;
+
+    private final int blockChoices;
+
+    private transient ColumnarLogbookWriter writer;
+
+    /**
+     * background writer (or sampler) feeding this, if any; drained before the file is closed
+     */
+    private transient LogbookFeeder feeder;
+
+    /**
+     * once closed the file is complete: reopening it would truncate it
+     */
+    private boolean closed = false;
+
+    private long choices = 0;
+
+    private long bytesWritten = 0;
+
+    public ColumnarLogisticLogs(String[] inputNames, Path binaryFile) {
+        this(inputNames, binaryFile, ColumnarLogbookWriter.DEFAULT_BLOCK_CHOICES);
+    }
+
+    public ColumnarLogisticLogs(String[] inputNames, Path binaryFile, int blockChoices) {
+        this.inputNames = inputNames;
+        this.binaryFile = binaryFile;
+        this.blockChoices = blockChoices;
+        setFileName("logistic_long_manifest.csv");
+    }
+
+    /**
+     * create a log whose choices end up here
+     *
+     * @param id id of the fisher
+     * @return the log (already added)
+     */
+    public StreamingLogisticLog newLog(int id) {
+        final StreamingLogisticLog log = new StreamingLogisticLog(inputNames, id, this);
+        add(log);
+        return log;
+    }
+
+    @Override
+    public void record(int id, int episode, int year, int day, int chosen, double[][] x) {
+        Preconditions.checkState(!closed, "The binary logbook %s is already closed", binaryFile);
+        try {
+            if (writer == null) {
+                final Path parent = binaryFile.toAbsolutePath().getParent();
+                if (parent != null)
+                    Files.createDirectories(parent);
+                writer = new ColumnarLogbookWriter(Files.newOutputStream(binaryFile), inputNames, blockChoices);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open the binary logbook " + binaryFile, e);
+        }
+        writer.record(id, episode, year, day, chosen, x);
+        choices++;
+    }
+
+    /**
+     * write the last block and close the file; choices recorded afterwards are refused
+     */
+    public void close() {
+        if (feeder != null)
+            feeder.close();
+        closed = true;
+        if (writer == null)
+            return;
+        try {
+            writer.close();
+            bytesWritten = writer.getBytesWritten();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close the binary logbook " + binaryFile, e);
+        } finally {
+            writer = null;
+        }
+    }
+
+    @Override
+    public void reactToEndOfSimulation(FishState state) {
+        super.reactToEndOfSimulation(state);
+        close();
+    }
+
+    @Override
+    public String composeFileContents() {
+        close();
+        final StringBuilder manifest = new StringBuilder("key,value\n");
+        manifest.append("format,columnar-logbook-v").append(ColumnarLogbookFormat.VERSION).append("\n");
+        manifest.append("file,").append(binaryFile.toAbsolutePath()).append("\n");
+        manifest.append("choices,").append(choices).append("\n");
+        manifest.append("bytes,").append(bytesWritten).append("\n");
+        manifest.append("covariates,").append(String.join(";", inputNames)).append("\n");
+        return manifest.toString();
+    }
+
+    /**
+     * Setter for property 'feeder'.
+     *
+     * @param feeder Value to set for property 'feeder'.
+     */
+    public void setFeeder(LogbookFeeder feeder) {
+        this.feeder = feeder;
+    }
+
+    public String[] getInputNames() {
+        return inputNames;
+    }
+
+    /**
+     * Getter for property 'binaryFile'.
+     *
+     * @return Value for property 'binaryFile'.
+     */
+    public Path getBinaryFile() {
+        return binaryFile;
+    }
+
+    /**
+     * Getter for property 'choices'.
+     *
+     * @return Value for property 'choices'.
+     */
+    public long getChoices() {
+        return choices;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import ec.util.MersenneTwisterFast;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
+import uk.ac.ox.oxfish.geography.ports.Port;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.oxfish.utility.bandit.BanditSwitch;
+import uk.ac.ox.poseidon.burlap.strategies.CovariateScope;
+import uk.ac.ox.poseidon.burlap.strategies.ValidTileIndex;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Fleet-level counterfactual covariates for logistic logbooks. Once a day one representative tile is drawn for
+ * every group, and the covariates that don't depend on the fisher are computed once for it:
+ * <ul>
+ *     <li>covariates that depend only on tile and day (wind, habitat, intercept...) once for the whole fleet</li>
+ *     <li>covariates that also depend on the home port (distance, gas price...) once per port</li>
+ *     <li>anything else (habits...) for each fisher, on the representative tile</li>
+ * </ul>
+ * Scopes come from {@link CovariateScope}. Unlike {@code PseudoLogisticLogger}, which draws its own tile per
+ * group for every fisher, every fisher logging on the same day sees the same counterfactual tiles.
+ * Tiles are drawn through a {@link ValidTileIndex}: never land or wastelands, and regardless of who happens to ask
+ * first (nobody's regulations are looked at); a fisher whose regulations ban a representative tile gets its own
+ * tile for that arm instead.
+ * Not thread-safe: extraction stays on the model thread.
+ */
+public class CounterfactualCovariateService {
+
+    private final MapDiscretization discretization;
+
+    private final ValidTileIndex validTiles;
+
+    private final ObservationExtractor[] extractors;
+
+    private final MersenneTwisterFast random;
+
+    /**
+     * arm index is position among valid groups, as in PseudoLogisticLogger
+     */
+    private final BanditSwitch switcher;
+
+    private final boolean[] portDependent;
+
+    private final boolean[] fisherDependent;
+
+    /**
+     * representative tile of each arm today
+     */
+    private final SeaTile[] tiles;
+
+    /**
+     * [arm][covariate] for covariates shared by the whole fleet
+     */
+    private final double[][] fleetValues;
+
+    /**
+     * [arm][covariate] for port dependent covariates, computed the first time a fisher from that port asks each day
+     */
+    private final IdentityHashMap<Port, double[][]> portValues = new IdentityHashMap<>();
+
+    private final IdentityHashMap<Port, Integer> portStamps = new IdentityHashMap<>();
+
+    private int day = Integer.MIN_VALUE;
+
+    private long sharedEvaluations = 0;
+
+    private long fisherEvaluations = 0;
+
+    public CounterfactualCovariateService(
+        MapDiscretization discretization,
+        ObservationExtractor[] extractors,
+        MersenneTwisterFast random
+    ) {
+        this.discretization = discretization;
+        this.validTiles = new ValidTileIndex(discretization, true);
+        this.extractors = extractors;
+        this.random = random;
+        this.switcher = new BanditSwitch(discretization.getNumberOfGroups(), discretization::isValid);
+        portDependent = new boolean[extractors.length];
+        fisherDependent = new boolean[extractors.length];
+        for (int i = 0; i < extractors.length; i++) {
+            final CovariateScope scope = CovariateScope.of(extractors[i]);
+            fisherDependent[i] = !scope.isCacheable();
+            portDependent[i] = scope.isCacheable() && scope.isPortDependent();
+        }
+        tiles = new SeaTile[switcher.getNumberOfArms()];
+        fleetValues = new double[tiles.length][extractors.length];
+    }
+
+    /**
+     * the counterfactual input matrix for this fisher today: one row per arm, one column per extractor
+     *
+     * @param fisher the fisher logging
+     * @param model  the model
+     * @return a new matrix (logs keep it)
+     */
+    public double[][] getInput(Fisher fisher, FishState model) {
+        final double time = model.getHoursSinceStart();
+        if (model.getDay() != day)
+            refresh(fisher, model, time);
+
+        final double[][] portRow = portValues(fisher, model, time);
+        final double[][] input = new double[tiles.length][extractors.length];
+        for (int arm = 0; arm < tiles.length; arm++) {
+            if (!fisher.isAllowedToFishHere(tiles[arm], model)) {
+                //this fisher can't go there: everything on a tile of its own
+                final SeaTile own = validTiles.sample(switcher.getGroup(arm), random, true, fisher, model);
+                final SeaTile tile = own == null ? tiles[arm] : own;
+                for (int i = 0; i < extractors.length; i++) {
+                    input[arm][i] = extractors[i].extract(tile, time, fisher, model);
+                    fisherEvaluations++;
+                }
+                continue;
+            }
+            for (int i = 0; i < extractors.length; i++) {
+                if (fisherDependent[i]) {
+                    input[arm][i] = extractors[i].extract(tiles[arm], time, fisher, model);
+                    fisherEvaluations++;
+                } else
+                    input[arm][i] = portDependent[i] ? portRow[arm][i] : fleetValues[arm][i];
+            }
+        }
+        return input;
+    }
+
+    private void refresh(Fisher fisher, FishState model, double time) {
+        day = model.getDay();
+        for (int arm = 0; arm < tiles.length; arm++) {
+            final int group = switcher.getGroup(arm);
+            //the fleet's tile: whoever asks first, its regulations don't matter
+            tiles[arm] = validTiles.sample(group, random, false, null, model);
+            //no sea tile at all: the row still needs one
+            if (tiles[arm] == null) {
+                final List<SeaTile> all = discretization.getGroup(group);
+                tiles[arm] = all.get(random.nextInt(all.size()));
+            }
+            for (int i = 0; i < extractors.length; i++)
+                if (!fisherDependent[i] && !portDependent[i]) {
+                    //the fisher is ignored by these extractors
+                    fleetValues[arm][i] = extractors[i].extract(tiles[arm], time, fisher, model);
+                    sharedEvaluations++;
+                }
+        }
+    }
+
+    private double[][] portValues(Fisher fisher, FishState model, double time) {
+        final Port port = fisher.getHomePort();
+        double[][] values = portValues.get(port);
+        if (values == null) {
+            values = new double[tiles.length][extractors.length];
+            portValues.put(port, values);
+        }
+        final Integer stamp = portStamps.get(port);
+        if (stamp == null || stamp != day) {
+            for (int arm = 0; arm < tiles.length; arm++)
+                for (int i = 0; i < extractors.length; i++)
+                    if (portDependent[i]) {
+                        values[arm][i] = extractors[i].extract(tiles[arm], time, fisher, model);
+                        sharedEvaluations++;
+                    }
+            portStamps.put(port, day);
+        }
+        return values;
+    }
+
+    /**
+     * the arm a group maps to, null if the group isn't valid
+     */
+    public Integer getArm(int group) {
+        return switcher.getArm(group);
+    }
+
+    public MapDiscretization getDiscretization() {
+        return discretization;
+    }
+
+    public int getNumberOfArms() {
+        return tiles.length;
+    }
+
+    /**
+     * Getter for property 'sharedEvaluations'.
+     *
+     * @return Value for property 'sharedEvaluations'.
+     */
+    public long getSharedEvaluations() {
+        return sharedEvaluations;
+    }
+
+    /**
+     * Getter for property 'fisherEvaluations'.
+     *
+     * @return Value for property 'fisherEvaluations'.
+     */
+    public long getFisherEvaluations() {
+        return fisherEvaluations;
+    }
+}
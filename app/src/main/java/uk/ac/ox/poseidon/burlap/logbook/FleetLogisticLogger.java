@@ -0,0 +1,65 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.log.LogisticLog;
+import uk.ac.ox.oxfish.fisher.log.TripListener;
+import uk.ac.ox.oxfish.fisher.log.TripRecord;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.model.FishState;
+
+/**
+ * Same job as {@code PseudoLogisticLogger} (at the end of each trip: record where the fisher went as the choice for
+ * the previous input, then log the counterfactual input for the next trip) but the input comes from a fleet-wide
+ * {@link CounterfactualCovariateService} rather than being rebuilt from scratch by every fisher.
+ */
+public class FleetLogisticLogger implements TripListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final CounterfactualCovariateService service;
+
+    private final LogisticLog log;
+
+    private final FishState state;
+
+    public FleetLogisticLogger(CounterfactualCovariateService service, LogisticLog log, FishState state) {
+        this.service = service;
+        this.log = log;
+        this.state = state;
+    }
+
+    @Override
+    public void reactToFinishedTrip(TripRecord record, Fisher fisher) {
+        //close the previous input with the choice actually made
+        if (log.waitingForChoice()) {
+            final SeaTile tile = record.getMostFishedTileInTrip();
+            final Integer group = tile == null ? null : service.getDiscretization().getGroup(tile);
+            final Integer arm = group == null ? null : service.getArm(group);
+            if (arm != null)
+                log.recordChoice(arm, state.getYear(), state.getDayOfTheYear());
+            else
+                log.reset();
+        }
+        log.recordInput(service.getInput(fisher, state));
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Sparse count of trips per (year, group): only the cells that were visited take memory. Counts are primitive ints in
+ * an open-addressing table keyed by year and group, so adding is O(1) and merging another histogram is linear in the
+ * cells it actually has. Not thread-safe; merge histograms from different threads through a
+ * {@link HistogramAggregator}.
+ */
+public class GroupHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private long[] keys;
+
+    private int[] counts;
+
+    private int cells = 0;
+
+    private long total = 0;
+
+    public GroupHistogram() {
+        this(64);
+    }
+
+    public GroupHistogram(int expectedCells) {
+        final int capacity = Integer.highestOneBit(Math.max(expectedCells, 4) * 2 - 1) << 1;
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        counts = new int[capacity];
+    }
+
+    private static long key(int year, int group) {
+        return ((long) year << 32) | (group & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public void add(int year, int group) {
+        add(year, group, 1);
+    }
+
+    public void add(int year, int group, int count) {
+        addByKey(key(year, group), count);
+    }
+
+    private void addByKey(long key, int count) {
+        final int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != EMPTY && keys[slot] != key)
+            slot = (slot + 1) & mask;
+        if (keys[slot] == EMPTY) {
+            keys[slot] = key;
+            cells++;
+        }
+        counts[slot] += count;
+        total += count;
+        //keep the load factor under 1/2
+        if (cells * 2 > keys.length)
+            grow();
+    }
+
+    private void grow() {
+        final long[] oldKeys = keys;
+        final int[] oldCounts = counts;
+        keys = new long[oldKeys.length * 2];
+        Arrays.fill(keys, EMPTY);
+        counts = new int[keys.length];
+        final int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i], mask);
+                while (keys[slot] != EMPTY)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                counts[slot] = oldCounts[i];
+            }
+    }
+
+    public int get(int year, int group) {
+        final long key = key(year, group);
+        final int mask = keys.length - 1;
+        for (int slot = slot(key, mask); keys[slot] != EMPTY; slot = (slot + 1) & mask)
+            if (keys[slot] == key)
+                return counts[slot];
+        return 0;
+    }
+
+    /**
+     * add all the counts of another histogram to this one
+     *
+     * @param other the histogram to add (untouched)
+     */
+    public void merge(GroupHistogram other) {
+        for (int i = 0; i < other.keys.length; i++)
+            if (other.keys[i] != EMPTY)
+                addByKey(other.keys[i], other.counts[i]);
+    }
+
+    /**
+     * visit every cell with at least one trip, sorted by year then group
+     *
+     * @param visitor called once per cell
+     */
+    public void forEach(CellVisitor visitor) {
+        final long[] sorted = new long[cells];
+        int n = 0;
+        for (long key : keys)
+            if (key != EMPTY)
+                sorted[n++] = key;
+        Arrays.sort(sorted);
+        for (long key : sorted) {
+            final int year = (int) (key >> 32);
+            final int group = (int) key;
+            visitor.visit(year, group, get(year, group));
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        Arrays.fill(counts, 0);
+        cells = 0;
+        total = 0;
+    }
+
+    /**
+     * Getter for property 'cells'.
+     *
+     * @return Value for property 'cells'.
+     */
+    public int getCells() {
+        return cells;
+    }
+
+    /**
+     * Getter for property 'total'.
+     *
+     * @return Value for property 'total'.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    public interface CellVisitor {
+
+        void visit(int year, int group, int count);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.log.TripListener;
+import uk.ac.ox.oxfish.fisher.log.TripRecord;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.oxfish.model.data.OutputPlugin;
+
+/**
+ * Counts trips into a {@link GroupHistogram}: each finished trip adds one to the group of its most fished tile in the
+ * current year. Like {@code DiscretizationHistogrammer} it writes its run's table (one row per year and group
+ * visited), but the histogram can also be merged in memory with other runs'.
+ */
+public class GroupHistogrammer implements TripListener, OutputPlugin {
+
+    private static final long serialVersionUID = 1L;
+
+    private final MapDiscretization discretization;
+
+    private final FishState state;
+
+    private final GroupHistogram histogram;
+
+    private String fileName = "group_histogram.csv";
+
+    public GroupHistogrammer(MapDiscretization discretization, FishState state, GroupHistogram histogram) {
+        this.discretization = discretization;
+        this.state = state;
+        this.histogram = histogram;
+    }
+
+    @Override
+    public void reactToFinishedTrip(TripRecord record, Fisher fisher) {
+        final SeaTile tile = record.getMostFishedTileInTrip();
+        if (tile == null)
+            return;
+        final Integer group = discretization.getGroup(tile);
+        if (group != null)
+            histogram.add(state.getYear(), group);
+    }
+
+    @Override
+    public void reactToEndOfSimulation(FishState state) {
+        //nothing to do
+    }
+
+    /**
+     * the table of this run: year, group and trips, one row per cell visited
+     */
+    @Override
+    public String composeFileContents() {
+        final StringBuilder table = new StringBuilder("year,group,trips\n");
+        histogram.forEach((year, group, count) ->
+            table.append(year).append(",").append(group).append(",").append(count).append("\n"));
+        return table.toString();
+    }
+
+    @Override
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Setter for property 'fileName'.
+     *
+     * @param fileName Value to set for property 'fileName'.
+     */
+    public void setFileName(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public GroupHistogram getHistogram() {
+        return histogram;
+    }
+}
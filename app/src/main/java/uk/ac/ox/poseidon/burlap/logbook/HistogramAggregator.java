@@ -0,0 +1,112 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sums the trip histograms of many runs (replicates, sweeps, runs on other threads of the same JVM) as they finish,
+ * so a batch can write one consolidated table on top of each run's own. Aggregators are looked up by name so that
+ * runs configured from YAML can find the one their batch writes out; the batch is then expected to
+ * {@link #remove(String)} it, or it stays around as long as the JVM (its size depends on the cells visited, not on the
+ * number of runs).
+ */
+public class HistogramAggregator {
+
+    private static final ConcurrentHashMap<String, HistogramAggregator> NAMED = new ConcurrentHashMap<>();
+
+    private final GroupHistogram total = new GroupHistogram(1024);
+
+    private int runs = 0;
+
+    /**
+     * the aggregator with this name, created if needed
+     */
+    public static HistogramAggregator named(String name) {
+        return NAMED.computeIfAbsent(name, key -> new HistogramAggregator());
+    }
+
+    /**
+     * forget the aggregator with this name (usually once its table is written)
+     *
+     * @return the aggregator removed, or null
+     */
+    public static HistogramAggregator remove(String name) {
+        return NAMED.remove(name);
+    }
+
+    /**
+     * add a run's histogram to the total
+     *
+     * @param histogram the run's histogram (untouched)
+     */
+    public synchronized void merge(GroupHistogram histogram) {
+        total.merge(histogram);
+        runs++;
+    }
+
+    /**
+     * the consolidated table: one row per (year, group) visited in any run, with the trips summed over runs
+     *
+     * @param writer where to write
+     */
+    public synchronized void writeTable(Writer writer) throws IOException {
+        writer.write("year,group,trips,runs\n");
+        final StringBuilder line = new StringBuilder();
+        total.forEach((year, group, count) -> line.append(year).append(",").append(group).append(",")
+            .append(count).append(",").append(runs).append("\n"));
+        writer.write(line.toString());
+    }
+
+    public void writeTable(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeTable(writer);
+        }
+    }
+
+    /**
+     * a copy of the total so far
+     */
+    public synchronized GroupHistogram snapshot() {
+        final GroupHistogram copy = new GroupHistogram(total.getCells());
+        copy.merge(total);
+        return copy;
+    }
+
+    public synchronized void clear() {
+        total.clear();
+        runs = 0;
+    }
+
+    /**
+     * Getter for property 'runs'.
+     *
+     * @return Value for property 'runs'.
+     */
+    public synchronized int getRuns() {
+        return runs;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+/**
+ * Anything that consumes completed logbook choices: spools, binary writers, csv converters...
+ */
+public interface LogbookSink {
+
+    /**
+     * one completed choice
+     *
+     * @param id      id of the fisher
+     * @param episode how many choices this fisher had logged before this one
+     * @param year    year of the choice
+     * @param day     day of the year of the choice
+     * @param chosen  index of the option chosen
+     * @param x       covariates, one row per option
+     */
+    void record(int id, int episode, int year, int day, int chosen, double[][] x);
+}
@@ -0,0 +1,167 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import com.google.common.base.Preconditions;
+import ec.util.MersenneTwisterFast;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Keeps a uniform random sample of fixed size out of all the choices logged in a run (reservoir sampling:
+ * the n-th choice replaces a random one already kept with probability capacity/n) and passes the sample on to the
+ * downstream sink, in the order the choices were made, when closed.
+ * <p>
+ * The sampler has its own randomizer, so sampling doesn't change the course of the simulation and the same seed
+ * always keeps the same choices. Memory is bounded by the capacity, whatever the length of the run.
+ */
+public class ReservoirLogbookSink implements LogbookFeeder {
+
+    private final LogbookSink downstream;
+
+    private final MersenneTwisterFast random;
+
+    private final int capacity;
+
+    private final int[] ids;
+    private final int[] episodes;
+    private final int[] years;
+    private final int[] days;
+    private final int[] chosen;
+    private final double[][][] inputs;
+    /**
+     * position of each kept choice in the stream, to give them back in order
+     */
+    private final long[] arrivals;
+
+    /**
+     * choices offered to the reservoir so far
+     */
+    private long seen = 0;
+
+    private boolean closed = false;
+
+    public ReservoirLogbookSink(LogbookSink downstream, int capacity, long seed) {
+        Preconditions.checkArgument(capacity > 0, "The reservoir needs at least one slot");
+        this.downstream = downstream;
+        this.capacity = capacity;
+        this.random = new MersenneTwisterFast(seed);
+        ids = new int[capacity];
+        episodes = new int[capacity];
+        years = new int[capacity];
+        days = new int[capacity];
+        chosen = new int[capacity];
+        inputs = new double[capacity][][];
+        arrivals = new long[capacity];
+    }
+
+    @Override
+    public void record(int id, int episode, int year, int day, int chosen, double[][] x) {
+        Preconditions.checkState(!closed, "The reservoir has already been emptied");
+        final long arrival = seen++;
+        final int slot;
+        if (arrival < capacity)
+            slot = (int) arrival;
+        else {
+            final long draw = random.nextLong(seen);
+            if (draw >= capacity)
+                return;
+            slot = (int) draw;
+        }
+        ids[slot] = id;
+        episodes[slot] = episode;
+        years[slot] = year;
+        days[slot] = day;
+        this.chosen[slot] = chosen;
+        arrivals[slot] = arrival;
+        inputs[slot] = copy(x, inputs[slot]);
+    }
+
+    /**
+     * deep copy, reusing the old matrix when it has the right shape
+     */
+    private static double[][] copy(double[][] x, double[][] into) {
+        if (into == null || into.length != x.length ||
+            (x.length > 0 && into[0].length != x[0].length))
+            into = new double[x.length][x.length == 0 ? 0 : x[0].length];
+        for (int i = 0; i < x.length; i++)
+            System.arraycopy(x[i], 0, into[i], 0, x[i].length);
+        return into;
+    }
+
+    /**
+     * pass the sample on, in the order it was logged, and close the downstream sink if it is a feeder as well.
+     * Idempotent; nothing can be recorded afterwards.
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            final int kept = getSampled();
+            final int[] order = IntStream.range(0, kept).boxed()
+                .sorted(Comparator.comparingLong(slot -> arrivals[slot]))
+                .mapToInt(Integer::intValue).toArray();
+            for (int slot : order)
+                downstream.record(ids[slot], episodes[slot], years[slot], days[slot], chosen[slot], inputs[slot]);
+            Arrays.fill(inputs, null);
+        }
+        if (downstream instanceof LogbookFeeder)
+            ((LogbookFeeder) downstream).close();
+    }
+
+    /**
+     * Getter for property 'capacity'.
+     *
+     * @return Value for property 'capacity'.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Getter for property 'seen'.
+     *
+     * @return Value for property 'seen'.
+     */
+    public long getSeen() {
+        return seen;
+    }
+
+    /**
+     * how many choices the reservoir holds (or held, once closed)
+     *
+     * @return the sample size
+     */
+    public int getSampled() {
+        return (int) Math.min(seen, capacity);
+    }
+
+    /**
+     * Getter for property 'downstream'.
+     *
+     * @return Value for property 'downstream'.
+     */
+    public LogbookSink getDownstream() {
+        return downstream;
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import com.google.common.base.Preconditions;
+import uk.ac.ox.oxfish.fisher.log.LogisticLogs;
+import uk.ac.ox.oxfish.model.FishState;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Logistic logs with bounded memory. Choices are serialized into a fixed size primitive buffer which is spilled to a
+ * temporary file whenever it fills up, so the heap used doesn't grow with the length of the run.
+ * The csv is rebuilt from the spill file at the end and is the same as the one LogisticLogs would write, except that
+ * choices are in the order they were made rather than grouped by fisher. Give it a csv file and the csv is streamed
+ * there, the output of the plugin becoming only a manifest; otherwise it has to be built as one string.
+ * <p>
+ * Use {@link #newLog(int)} to create the individual logs.
+ */
+public class SpooledLogisticLogs extends LogisticLogs implements LogbookSink {
+
+    /**
+     * id, episode, year, day, chosen option, number of options, number of covariates
+     */
+    static final int RECORD_HEADER_BYTES = 7 * Integer.BYTES;
+
+    private final String[] inputNames;
+
+    private final ByteBuffer buffer;
+
+    private File spillFile;
+
+    private OutputStream spill;
+
+    /**
+     * background writer (or sampler) feeding this, if any; drained before the logbook is read
+     */
+    private transient LogbookFeeder feeder;
+
+    /**
+     * when set, the csv is streamed here rather than returned by {@link #composeFileContents()}
+     */
+    private Path csvFile;
+
+    private long records = 0;
+
+    private long spilledBytes = 0;
+
+    public SpooledLogisticLogs(String[] inputNames, int bufferBytes) {
+        Preconditions.checkArgument(bufferBytes >= RECORD_HEADER_BYTES, "Buffer too small");
+        this.inputNames = inputNames;
+        this.buffer = ByteBuffer.allocate(bufferBytes);
+    }
+
+    /**
+     * create a log whose choices end up here
+     *
+     * @param id id of the fisher
+     * @return the log (already added)
+     */
+    public StreamingLogisticLog newLog(int id) {
+        final StreamingLogisticLog log = new StreamingLogisticLog(inputNames, id, this);
+        add(log);
+        return log;
+    }
+
+    /**
+     * serialize a choice
+     */
+    @Override
+    public void record(int id, int episode, int year, int day, int chosen, double[][] input) {
+        final int covariates = input.length == 0 ? 0 : input[0].length;
+        final int size = RECORD_HEADER_BYTES + input.length * covariates * Double.BYTES;
+        if (buffer.remaining() < size)
+            spill();
+        //records larger than the whole buffer go straight to disk
+        final ByteBuffer target = buffer.remaining() < size ? ByteBuffer.allocate(size) : buffer;
+        target.putInt(id).putInt(episode).putInt(year).putInt(day).putInt(chosen)
+            .putInt(input.length).putInt(covariates);
+        for (double[] row : input)
+            for (int i = 0; i < covariates; i++)
+                target.putDouble(row[i]);
+        if (target != buffer) {
+            writeToSpill(target.array(), size);
+        }
+        records++;
+    }
+
+    /**
+     * move whatever is in the buffer to the spill file
+     */
+    public void spill() {
+        if (buffer.position() == 0)
+            return;
+        writeToSpill(buffer.array(), buffer.position());
+        buffer.clear();
+    }
+
+    private void writeToSpill(byte[] bytes, int length) {
+        try {
+            if (spill == null) {
+                spillFile = Files.createTempFile("logistic_logbook", ".spool").toFile();
+                spillFile.deleteOnExit();
+                spill = new BufferedOutputStream(new FileOutputStream(spillFile), 1 << 16);
+            }
+            spill.write(bytes, 0, length);
+            spilledBytes += length;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to spill the logbook", e);
+        }
+    }
+
+    /**
+     * go through every choice recorded so far, spilled or not, in the order they were made
+     *
+     * @param reader called once per choice
+     */
+    public void readAll(LogbookSink reader) {
+        if (feeder != null)
+            feeder.close();
+        try {
+            if (spill != null) {
+                spill.flush();
+                try (DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(spillFile), 1 << 16))) {
+                    for (long read = 0; read < spilledBytes; )
+                        read += readRecord(input, reader);
+                }
+            }
+            try (DataInputStream input = new DataInputStream(
+                new ByteArrayInputStream(buffer.array(), 0, buffer.position()))) {
+                for (long read = 0; read < buffer.position(); )
+                    read += readRecord(input, reader);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the logbook back", e);
+        }
+    }
+
+    private static int readRecord(DataInputStream input, LogbookSink reader) throws IOException {
+        final int id = input.readInt();
+        final int episode = input.readInt();
+        final int year = input.readInt();
+        final int day = input.readInt();
+        final int chosen = input.readInt();
+        final int options = input.readInt();
+        final int covariates = input.readInt();
+        final double[][] x = new double[options][covariates];
+        for (int option = 0; option < options; option++)
+            for (int i = 0; i < covariates; i++)
+                x[option][i] = input.readDouble();
+        reader.record(id, episode, year, day, chosen, x);
+        return RECORD_HEADER_BYTES + options * covariates * Double.BYTES;
+    }
+
+    /**
+     * write the logbook as csv. Rows come in the order the choices were made (the options of each choice next to
+     * each other) rather than grouped by fisher like LogisticLogs does; readers that put situations together by
+     * id and episode don't notice.
+     *
+     * @param writer where to write
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write(csvHeader(inputNames));
+        writer.write("\n");
+        final StringBuilder line = new StringBuilder();
+        try {
+            readAll((id, episode, year, day, chosen, x) -> {
+                line.setLength(0);
+                appendCsvLines(line, id, episode, year, day, chosen, x);
+                try {
+                    writer.append(line);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * the header of a logistic logbook
+     */
+    public static String csvHeader(String[] inputNames) {
+        final StringBuilder header = new StringBuilder("id,episode,year,day,option,choice");
+        for (String name : inputNames)
+            header.append(",").append(name);
+        return header.toString();
+    }
+
+    /**
+     * one line per option, the chosen one marked yes
+     */
+    public static void appendCsvLines(
+        StringBuilder builder, int id, int episode, int year, int day, int chosen, double[][] x
+    ) {
+        for (int option = 0; option < x.length; option++) {
+            builder.append(id).append(",").append(episode).append(",")
+                .append(year).append(",").append(day).append(",")
+                .append(option).append(",").append(option == chosen ? "yes" : "no");
+            for (double value : x[option])
+                builder.append(",").append(value);
+            builder.append("\n");
+        }
+    }
+
+    /**
+     * the whole csv as a string or, when a csv file is set, a manifest of the csv streamed into it
+     */
+    /**
+     * the model is done: drain the feeder now, so that a background writer doesn't outlive the run even if
+     * nobody turns the logbook off
+     */
+    @Override
+    public void reactToEndOfSimulation(FishState state) {
+        super.reactToEndOfSimulation(state);
+        if (feeder != null)
+            feeder.close();
+    }
+
+    @Override
+    public String composeFileContents() {
+        if (csvFile != null) {
+            try (Writer writer = Files.newBufferedWriter(csvFile)) {
+                writeCsv(writer);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to write the logbook to " + csvFile, e);
+            }
+            return "key,value\n" +
+                "format,csv\n" +
+                "file," + csvFile.toAbsolutePath() + "\n" +
+                "choices," + records + "\n" +
+                "covariates," + String.join(";", inputNames) + "\n";
+        }
+        final StringWriter writer = new StringWriter();
+        try {
+            writeCsv(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * stop spilling and delete the spill file
+     */
+    public void close() {
+        if (feeder != null)
+            feeder.close();
+        try {
+            if (spill != null)
+                spill.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (spillFile != null)
+                spillFile.delete();
+            spill = null;
+            spillFile = null;
+            spilledBytes = 0;
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Setter for property 'feeder'.
+     *
+     * @param feeder Value to set for property 'feeder'.
+     */
+    public void setFeeder(LogbookFeeder feeder) {
+        this.feeder = feeder;
+    }
+
+    /**
+     * Getter for property 'csvFile'.
+     *
+     * @return Value for property 'csvFile'.
+     */
+    public Path getCsvFile() {
+        return csvFile;
+    }
+
+    /**
+     * Setter for property 'csvFile'.
+     *
+     * @param csvFile Value to set for property 'csvFile'.
+     */
+    public void setCsvFile(Path csvFile) {
+        this.csvFile = csvFile;
+    }
+
+    public String[] getInputNames() {
+        return inputNames;
+    }
+
+    /**
+     * Getter for property 'records'.
+     *
+     * @return Value for property 'records'.
+     */
+    public long getRecords() {
+        return records;
+    }
+
+    /**
+     * Getter for property 'spilledBytes'.
+     *
+     * @return Value for property 'spilledBytes'.
+     */
+    public long getSpilledBytes() {
+        return spilledBytes;
+    }
+}
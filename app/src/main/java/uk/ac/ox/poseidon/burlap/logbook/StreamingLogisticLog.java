@@ -0,0 +1,77 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.logbook;
+
+import uk.ac.ox.oxfish.fisher.log.LogisticLog;
+
+/**
+ * A logistic log that keeps nothing but the input waiting for its choice: every completed choice is handed over to
+ * a {@link LogbookSink} (a {@link SpooledLogisticLogs}, say, which serializes it and spills it to disk).
+ */
+public class StreamingLogisticLog extends LogisticLog {
+
+    private final LogbookSink sink;
+
+    private final int id;
+
+    private double[][] currentInput;
+
+    private int episode = 0;
+
+    public StreamingLogisticLog(String[] inputNames, int id, LogbookSink sink) {
+        super(inputNames, id);
+        this.id = id;
+        this.sink = sink;
+    }
+
+    @Override
+    public void recordInput(double[][] input) {
+        currentInput = input;
+    }
+
+    @Override
+    public void recordChoice(int option, int year, int dayOfTheYear) {
+        if (currentInput == null)
+            return;
+        sink.record(id, episode, year, dayOfTheYear, option, currentInput);
+        episode++;
+        currentInput = null;
+    }
+
+    @Override
+    public boolean waitingForChoice() {
+        return currentInput != null;
+    }
+
+    @Override
+    public void reset() {
+        currentInput = null;
+    }
+
+    /**
+     * Getter for property 'episode'.
+     *
+     * @return Value for property 'episode'.
+     */
+    public int getEpisode() {
+        return episode;
+    }
+}
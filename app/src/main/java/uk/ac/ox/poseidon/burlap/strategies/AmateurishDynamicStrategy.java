@@ -23,6 +23,9 @@ package uk.ac.ox.poseidon.burlap.strategies;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import ec.util.MersenneTwisterFast;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.engine.Stoppable;
 import uk.ac.ox.oxfish.fisher.Fisher;
 import uk.ac.ox.oxfish.fisher.actions.Action;
 import uk.ac.ox.oxfish.fisher.log.TripRecord;
@@ -33,6 +36,7 @@ import uk.ac.ox.oxfish.fisher.strategies.destination.FavoriteDestinationStrategy
 import uk.ac.ox.oxfish.geography.NauticalMap;
 import uk.ac.ox.oxfish.geography.SeaTile;
 import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.oxfish.model.StepOrder;
 import uk.ac.ox.oxfish.model.data.collectors.Counter;
 import uk.ac.ox.oxfish.model.data.collectors.IntervalPolicy;
 import uk.ac.ox.oxfish.utility.Pair;
@@ -40,8 +44,7 @@ import uk.ac.ox.oxfish.utility.adaptation.Sensor;
 import uk.ac.ox.oxfish.utility.adaptation.maximization.DefaultBeamHillClimbing;
 import uk.ac.ox.oxfish.utility.dynapro.AmateurishApproximateDynamicProgram;
 
-import java.util.HashMap;
-import java.util.function.Function;
+import java.util.Arrays;
 
 /**
  * This is my first attempt at a workable approximate dynamic programming agent.
@@ -57,13 +60,27 @@ public class AmateurishDynamicStrategy implements DestinationStrategy, Departing
      */
     public final static ActionType[] actions = ActionType.values();
     /**
-     * what were the states like last decision taken?
+     * per-fisher memory, as flat arrays (the strategy is shared by the whole fleet, so this is looked up at every
+     * departure decision): which slot each fisher id has while started (-1 for none), and which slots have been
+     * given back
      */
-    private final HashMap<Fisher, double[]> previousFeatures = new HashMap<>();
+    private int[] slotOfId = new int[0];
+    private int[] freeSlots = new int[0];
+    private int numberOfFreeSlots = 0;
+    private int slotsUsed = 0;
     /**
-     * what was the last decision taken? as action index and utility prediction
+     * what were the states like last decision taken? one row of numberOfFeatures per fisher id. Kept by id rather
+     * than slot so that, as before, a fisher turned off and started again still learns from its last decision
      */
-    private final HashMap<Fisher, Pair<Integer, Double>> previousDecisions = new HashMap<>();
+    private double[] previousFeatures = new double[0];
+    /**
+     * what was the last decision taken? as action index by fisher id, -1 if none yet
+     */
+    private int[] previousActions = new int[0];
+    /**
+     * the strategy doing all the navigation, by slot
+     */
+    private FavoriteDestinationStrategy[] delegates = new FavoriteDestinationStrategy[0];
     /**
      * the crap dynamic program that takes decisions
      */
@@ -72,10 +89,6 @@ public class AmateurishDynamicStrategy implements DestinationStrategy, Departing
      * array with all the sensor that turns the current state into a number
      */
     private final Sensor<Fisher, Double> featuresExtractor[];
-    /**
-     * the strategy doing all the navigation
-     */
-    private final HashMap<Fisher, FavoriteDestinationStrategy> delegates = new HashMap<>();
     /**
      * the algorithm we use to actually explore/exploit/imitate
      */
@@ -92,6 +105,28 @@ public class AmateurishDynamicStrategy implements DestinationStrategy, Departing
      * probability of taking a random decision instead of the best decision
      */
     private double noiseRate;
+    /**
+     * when not null, departure decisions draw from each fisher's own decision stream rather than the randomizer
+     * they are given (the shared program still learns in the order fishers decide)
+     */
+    private DecisionStreams decisionStreams;
+    /**
+     * when positive, what fishers learn is buffered and applied to the program as one averaged step every
+     * minibatchSize samples and at the end of each day; decisions in between are all judged by the same parameters.
+     * Learning only stops depending on the order fishers decide in when a day's samples fit in one batch (a batch
+     * filling up mid-day splits the day where that order puts it). 0 updates the program at every decision.
+     * Set it before the strategy starts.
+     */
+    private int minibatchSize = 0;
+    /**
+     * the learning buffered so far: which action, what the observed value was and the features it was taken with
+     * (one row of numberOfFeatures per sample)
+     */
+    private int bufferedSamples = 0;
+    private int[] bufferedActions = new int[0];
+    private double[] bufferedTargets = new double[0];
+    private double[] bufferedFeatures = new double[0];
+    private Stoppable minibatchStoppable;
 
     public AmateurishDynamicStrategy(
         double learningRate, double noiseRate,
@@ -124,13 +159,52 @@ public class AmateurishDynamicStrategy implements DestinationStrategy, Departing
         this.discountRate = discountRate;
     }
 
-    private double[] featurize(Fisher fisher) {
-        double[] features = new double[featuresExtractor.length];
-        for (int i = 0; i < features.length; i++) {
+    private void featurize(Fisher fisher, double[] features) {
+        for (int i = 0; i < featuresExtractor.length; i++) {
             features[i] = featuresExtractor[i].scan(fisher);
             assert Double.isFinite(features[i]);
         }
-        return features;
+    }
+
+    /**
+     * @return the slot of this fisher, or -1 if it hasn't started with this strategy
+     */
+    private int slotOf(Fisher fisher) {
+        final int id = fisher.getID();
+        return id >= 0 && id < slotOfId.length ? slotOfId[id] : -1;
+    }
+
+    private int assignSlot(Fisher fisher) {
+        final int id = fisher.getID();
+        Preconditions.checkArgument(id >= 0, "Fisher ids are expected to be non-negative");
+        if (id >= slotOfId.length) {
+            final int oldLength = slotOfId.length;
+            slotOfId = Arrays.copyOf(slotOfId, Math.max(id + 1, 2 * oldLength));
+            Arrays.fill(slotOfId, oldLength, slotOfId.length, -1);
+            previousActions = Arrays.copyOf(previousActions, slotOfId.length);
+            Arrays.fill(previousActions, oldLength, previousActions.length, -1);
+            previousFeatures = Arrays.copyOf(previousFeatures, slotOfId.length * featuresExtractor.length);
+        }
+        Preconditions.checkState(slotOfId[id] < 0, "Fisher already started with this strategy");
+        final int slot;
+        if (numberOfFreeSlots > 0)
+            slot = freeSlots[--numberOfFreeSlots];
+        else {
+            slot = slotsUsed++;
+            if (slot >= delegates.length) {
+                final int capacity = Math.max(16, 2 * delegates.length);
+                delegates = Arrays.copyOf(delegates, capacity);
+                freeSlots = Arrays.copyOf(freeSlots, capacity);
+            }
+        }
+        slotOfId[id] = slot;
+        return slot;
+    }
+
+    private void releaseSlot(Fisher fisher, int slot) {
+        slotOfId[fisher.getID()] = -1;
+        delegates[slot] = null;
+        freeSlots[numberOfFreeSlots++] = slot;
     }
 
     /**
@@ -146,34 +220,41 @@ public class AmateurishDynamicStrategy implements DestinationStrategy, Departing
         Fisher fisher, FishState model, MersenneTwisterFast random
     ) {
 
-        //always start by turning the new state into features
-        double[] currentFeatures = featurize(fisher);
+        final int slot = slotOf(fisher);
+        Preconditions.checkState(slot >= 0, "Fisher never started with this strategy");
+        final int id = fisher.getID();
+        //always start by turning the new state into features (arrays are per call, the strategy is fleet-wide)
+        final double[] currentFeatures = new double[featuresExtractor.length];
+        featurize(fisher, currentFeatures);
 
         //what is the optimal decision?
-        Integer softmaxDecision = SoftmaxBanditAlgorithm.drawFromSoftmax(random, 4, new Function<Integer, Double>() {
-            @Override
-            public Double apply(Integer arm) {
-                return program.judgeAction(arm, currentFeatures);
-            }
-        });
-        Pair<Integer, Double> currentDecision = new Pair<>(softmaxDecision,
-            program.judgeAction(softmaxDecision, currentFeatures));
-        //with a small chance try something completely bonkers
-        if (random.nextBoolean(noiseRate)) {
-            int randomAction = random.nextInt(actions.length);
-            currentDecision = new Pair<>(randomAction, program.judgeAction(randomAction, currentFeatures));
+        final double[] preferences = new double[actions.length];
+        for (int action = 0; action < preferences.length; action++)
+            preferences[action] = program.judgeAction(action, currentFeatures);
+        int currentAction;
+        if (decisionStreams == null)
+            currentAction = SoftmaxBanditAlgorithm.drawFromSoftmax(random, preferences, preferences.length, 1d);
+        else {
+            final DecisionStreams.Stream stream =
+                decisionStreams.stream(fisher.getID(), model, DecisionStreams.DEPARTURE);
+            currentAction = SoftmaxBanditAlgorithm.drawFromSoftmax(
+                stream.nextDouble(), preferences, preferences.length, 1d);
+            //noise and exploration moves want a MersenneTwisterFast
+            random = stream.asMersenneTwister();
         }
+        //with a small chance try something completely bonkers
+        if (random.nextBoolean(noiseRate))
+            currentAction = random.nextInt(actions.length);
+        final double currentValue = program.judgeAction(currentAction, currentFeatures);
 
 
         //learn from old step
-        double[] oldFeatures = previousFeatures.get(fisher);
+        final int previousAction = previousActions[id];
         //if you have taken a decision before then learn from it!
-        if (oldFeatures != null) {
-            //pick up old action
-            Pair<Integer, Double> previousDecision = previousDecisions.get(fisher);
+        if (previousAction >= 0) {
             double reward;
             //if you stayed home, the reward is 0
-            if (previousDecision.getFirst() == ActionType.STAY_HOME.ordinal())
+            if (previousAction == ActionType.STAY_HOME.ordinal())
                 reward = 0;
             else
                 //otherwise the reward is profits per hour that trip
@@ -184,16 +265,19 @@ public class AmateurishDynamicStrategy implements DestinationStrategy, Departing
             //strictly speaking it should be the max of both the reward and expected value but the way
             //we structure this problem reward is not a function of the action taken (as it is just the end of the trip)
             //so the reward drops out of the maximization.
-            double observation = reward + discountRate * currentDecision.getSecond();
+            double observation = reward + discountRate * currentValue;
 
-            program.updateAction(previousDecision.getFirst(), observation, oldFeatures);
+            if (minibatchSize > 0)
+                buffer(previousAction, observation, id);
+            else
+                program.updateAction(previousAction, observation, previousFeatures(id));
         }
 
 
         //now it's time to act.
-        actionsTaken.count(actions[currentDecision.getFirst()].name(), 1);
-        FavoriteDestinationStrategy delegate = delegates.get(fisher);
-        switch (actions[currentDecision.getFirst()]) {
+        actionsTaken.count(actions[currentAction].name(), 1);
+        FavoriteDestinationStrategy delegate = delegates[slot];
+        switch (actions[currentAction]) {
             case STAY_HOME:
                 break;
             case EXPLOIT:
@@ -230,16 +314,98 @@ public class AmateurishDynamicStrategy implements DestinationStrategy, Departing
 
 
         //store for future use!
-        previousFeatures.put(fisher, currentFeatures);
-        previousDecisions.put(fisher, currentDecision);
+        System.arraycopy(currentFeatures, 0, previousFeatures, id * currentFeatures.length, currentFeatures.length);
+        previousActions[id] = currentAction;
 
         //finally return yes or no to the original question
-        if (currentDecision.getFirst() == ActionType.STAY_HOME.ordinal())
+        if (currentAction == ActionType.STAY_HOME.ordinal())
             return false;
         else
             return true;
     }
 
+    /**
+     * a copy of the features of the last decision taken by this fisher id, for the program to learn from
+     */
+    private double[] previousFeatures(int id) {
+        final int features = featuresExtractor.length;
+        return Arrays.copyOfRange(previousFeatures, id * features, (id + 1) * features);
+    }
+
+    /**
+     * store what was learned from the last decision of this fisher id, applying the minibatch once it is full
+     */
+    private void buffer(int action, double target, int id) {
+        final int features = featuresExtractor.length;
+        if (bufferedSamples == bufferedActions.length) {
+            final int capacity = Math.max(16, 2 * bufferedActions.length);
+            bufferedActions = Arrays.copyOf(bufferedActions, capacity);
+            bufferedTargets = Arrays.copyOf(bufferedTargets, capacity);
+            bufferedFeatures = Arrays.copyOf(bufferedFeatures, capacity * features);
+        }
+        bufferedActions[bufferedSamples] = action;
+        bufferedTargets[bufferedSamples] = target;
+        System.arraycopy(previousFeatures, id * features, bufferedFeatures, bufferedSamples * features, features);
+        bufferedSamples++;
+        if (bufferedSamples >= minibatchSize)
+            applyMinibatch();
+    }
+
+    /**
+     * apply everything buffered so far as a single gradient step: errors are all measured against the parameters as
+     * they were before the batch, and each action moves by the average of its samples' gradients (so a batch of one
+     * is the same as the program's own update)
+     */
+    public void applyMinibatch() {
+        if (bufferedSamples == 0)
+            return;
+        final double[][] parameters = program.getLinearParameters();
+        final double learningRate = program.getLearningRate();
+        final int features = featuresExtractor.length;
+        //the summed steps (one row per action) and the samples per action
+        final double[] minibatchGradients = new double[actions.length * features];
+        final int[] minibatchSamples = new int[actions.length];
+        for (int sample = 0; sample < bufferedSamples; sample++) {
+            final int action = bufferedActions[sample];
+            final int row = sample * features;
+            double prediction = 0;
+            for (int i = 0; i < features; i++)
+                prediction += parameters[action][i] * bufferedFeatures[row + i];
+            //must track AmateurishApproximateDynamicProgram.updateAction: same linear prediction, same LMS step
+            final double error = bufferedTargets[sample] - prediction;
+            for (int i = 0; i < features; i++)
+                minibatchGradients[action * features + i] += learningRate * error * bufferedFeatures[row + i];
+            minibatchSamples[action]++;
+        }
+        for (int action = 0; action < actions.length; action++) {
+            if (minibatchSamples[action] == 0)
+                continue;
+            for (int i = 0; i < features; i++)
+                parameters[action][i] += minibatchGradients[action * features + i] / minibatchSamples[action];
+        }
+        bufferedSamples = 0;
+    }
+
+    /**
+     * Getter for property 'minibatchSize'.
+     *
+     * @return Value for property 'minibatchSize'.
+     */
+    public int getMinibatchSize() {
+        return minibatchSize;
+    }
+
+    /**
+     * Setter for property 'minibatchSize'.
+     *
+     * @param minibatchSize Value to set for property 'minibatchSize'.
+     */
+    public void setMinibatchSize(int minibatchSize) {
+        Preconditions.checkArgument(minibatchSize >= 0);
+        Preconditions.checkState(!started, "Minibatch size must be set before the strategy starts");
+        this.minibatchSize = minibatchSize;
+    }
+
     /**
      * Getter for property 'noiseRate'.
      *
@@ -291,11 +457,19 @@ public class AmateurishDynamicStrategy implements DestinationStrategy, Departing
     @Override
     public void start(FishState model, Fisher fisher) {
         FavoriteDestinationStrategy delegate = delegateGenerator.get();
-        delegates.put(fisher, delegate);
+        final int slot = assignSlot(fisher);
+        delegates[slot] = delegate;
         delegate.start(model, fisher);
         if (!started) {
             explorer.start(model, fisher, delegate.getFavoriteSpot());
             actionsTaken.start(model);
+            if (minibatchSize > 0)
+                minibatchStoppable = model.scheduleEveryDay(new Steppable() {
+                    @Override
+                    public void step(SimState simState) {
+                        applyMinibatch();
+                    }
+                }, StepOrder.AFTER_DATA);
         }
         started = true;
     }
@@ -304,9 +478,18 @@ public class AmateurishDynamicStrategy implements DestinationStrategy, Departing
     public void turnOff(Fisher fisher) {
 
         if (started) {
-            FavoriteDestinationStrategy delegate = delegates.remove(fisher);
-            if (delegate != null)
+            final int slot = slotOf(fisher);
+            if (slot >= 0) {
+                final FavoriteDestinationStrategy delegate = delegates[slot];
+                releaseSlot(fisher, slot);
                 delegate.turnOff(fisher);
+                //the last fisher out applies what is left of the minibatch
+                if (numberOfFreeSlots == slotsUsed && minibatchStoppable != null) {
+                    minibatchStoppable.stop();
+                    minibatchStoppable = null;
+                    applyMinibatch();
+                }
+            }
             if (!turnedOff) {
                 actionsTaken.turnOff();
             }
@@ -326,7 +509,25 @@ public class AmateurishDynamicStrategy implements DestinationStrategy, Departing
     public SeaTile chooseDestination(
         Fisher fisher, MersenneTwisterFast random, FishState model, Action currentAction
     ) {
-        return delegates.get(fisher).chooseDestination(fisher, random, model, currentAction);
+        return delegates[slotOf(fisher)].chooseDestination(fisher, random, model, currentAction);
+    }
+
+    /**
+     * Getter for property 'decisionStreams'.
+     *
+     * @return Value for property 'decisionStreams'.
+     */
+    public DecisionStreams getDecisionStreams() {
+        return decisionStreams;
+    }
+
+    /**
+     * Setter for property 'decisionStreams'.
+     *
+     * @param decisionStreams Value to set for property 'decisionStreams'.
+     */
+    public void setDecisionStreams(DecisionStreams decisionStreams) {
+        this.decisionStreams = decisionStreams;
     }
 
     /**
@@ -22,7 +22,6 @@ package uk.ac.ox.poseidon.burlap.strategies;
 
 import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.GroupDummyExtractor;
 import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
-import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.PortDistanceExtractor;
 import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
 import uk.ac.ox.oxfish.model.FishState;
 
@@ -58,10 +57,10 @@ public class BarebonesContinuousInterceptedDestinationFactory extends BarebonesC
                 (int) getHabitPeriodInDays().applyAsDouble(state.getRandom())
             );
         commonExtractor[1] =
-            new PortDistanceExtractor();
+            shareCovariate(state, "distance", buildDistanceExtractor(state));
 
         for (int j = 0; j < areas; j++)
-            commonExtractor[j + 2] = new GroupDummyExtractor(j, discretization);
+            commonExtractor[j + 2] = shareCovariate(state, "dummy_" + j, new GroupDummyExtractor(j, discretization));
 
         for (int i = 0; i < areas; i++)
             extractors[i] = commonExtractor;
@@ -20,6 +20,7 @@
 
 package uk.ac.ox.poseidon.burlap.strategies;
 
+import com.google.common.base.Preconditions;
 import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
 import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.PortDistanceExtractor;
 import uk.ac.ox.oxfish.fisher.strategies.destination.FavoriteDestinationStrategy;
@@ -44,6 +45,16 @@ public abstract class BarebonesLogitDestinationFactory implements
      * everybody shares the parent same destination logit strategy
      */
     private final Locker<String, MapDiscretization> discretizationLocker = new Locker<>();
+    /**
+     * one adaptation scheduler per model, shared by all the strategies built here
+     */
+    private final Locker<String, LogitAdaptationScheduler> schedulerLocker = new Locker<>();
+    /**
+     * fleet-wide cache of the covariates that don't depend on the fisher
+     */
+    private final Locker<String, CovariateCache> covariateLocker = new Locker<>();
+    private final Locker<String, ValidTileIndex> tileIndexLocker = new Locker<>();
+    private final Locker<String, PortAliasTables> aliasTablesLocker = new Locker<>();
     protected AlgorithmFactory<? extends MapDiscretizer> discretizer =
         new CentroidMapFileFactory();
     /**
@@ -56,6 +67,43 @@ public abstract class BarebonesLogitDestinationFactory implements
     private DoubleParameter habitPeriodInDays = new FixedDoubleParameter(90);
     private boolean automaticallyAvoidMPA = true;
     private boolean automaticallyAvoidWastelands = true;
+    /**
+     * when true fishers don't re-choose on their own but queue up and choose together once per step.
+     * Only the utility product is batched: covariates are still extracted fisher by fisher, so without
+     * cacheCovariates this saves next to nothing (and with parallelBatchScoring off, nothing at all)
+     */
+    private boolean batchAdaptation = false;
+    /**
+     * when batching, compute the utilities of the batch over multiple cores
+     */
+    private boolean parallelBatchScoring = false;
+    /**
+     * when true covariates that don't depend on the fisher (distance, dummies...) are computed once per day
+     * for the whole fleet
+     * (off by default: the scopes of POSEIDON's extractors in CovariateScope are assumed, not verified)
+     */
+    private boolean cacheCovariates = false;
+    /**
+     * when true the distance covariate is read from a precomputed ports x tiles matrix (see PortDistanceMatrix)
+     */
+    private boolean distanceMatrix = false;
+    /**
+     * when true the discretization comes from (and goes to) the JVM-wide DiscretizationCache. Off by default: a hit
+     * skips the discretizer, so its random parameters keep the first run's draw and the model randomizer is consumed
+     * differently
+     */
+    private boolean cacheDiscretization = false;
+    /**
+     * when true tiles and arms are drawn from per-fisher counter-based streams (see DecisionStreams), so that
+     * results don't depend on the order fishers decide in
+     */
+    private boolean decisionStreams = false;
+    /**
+     * when true arms are drawn from a per-port alias table over the distance from port (averaged over each group)
+     * plus habit, rather than from the full logit with the distance of a tile drawn at random (see PortAliasTables).
+     * Only for the habit + distance model
+     */
+    private boolean aliasSampling = false;
 
     /**
      * Applies this function to the given argument.
@@ -66,13 +114,9 @@ public abstract class BarebonesLogitDestinationFactory implements
     public LogitDestinationStrategy apply(final FishState state) {
         //create the discretization
         final MapDiscretization discretization = discretizationLocker.presentKey(
-            state.getUniqueID(), () -> {
-                final MapDiscretizer mapDiscretizer = discretizer.apply(state);
-                final MapDiscretization toReturn = new MapDiscretization(mapDiscretizer);
-                toReturn.discretize(state.getMap());
-                return toReturn;
-
-            }
+            state.getUniqueID(), () -> cacheDiscretization ?
+                DiscretizationCache.discretize(state, discretizer) :
+                DiscretizationCache.compute(state, discretizer)
         );
 
         //every area is valid
@@ -89,15 +133,46 @@ public abstract class BarebonesLogitDestinationFactory implements
 
         automaticallyAvoidMPA = true;
         automaticallyAvoidWastelands = true;
-        return new LogitDestinationStrategy(
+        final LogitDestinationStrategy strategy = new LogitDestinationStrategy(
             betas,
             extractors,
             validAreas,
             discretization,
             new FavoriteDestinationStrategy(state.getMap(), state.getRandom()),
             state.getRandom(),
-            automaticallyAvoidMPA, automaticallyAvoidWastelands
+            automaticallyAvoidMPA, automaticallyAvoidWastelands,
+            tileIndexLocker.presentKey(
+                state.getUniqueID(), () -> {
+                    LogitDestinationStrategy.registerFailedDecisionsGatherer(state);
+                    return new ValidTileIndex(discretization, automaticallyAvoidWastelands);
+                }
+            )
         );
+        if (decisionStreams)
+            strategy.setDecisionStreams(DecisionStreams.of(state));
+        if (aliasSampling) {
+            Preconditions.checkState(extractors[0].length == 2, "Alias sampling needs the habit + distance model");
+            strategy.setAliasTables(
+                aliasTablesLocker.presentKey(
+                    state.getUniqueID(),
+                    () -> new PortAliasTables(strategy.getTileIndex(), strategy.getSwitcher(), extractors[0][1])
+                ),
+                extractors[0][0],
+                betas[0][0],
+                betas[0][1]
+            );
+        }
+        if (batchAdaptation)
+            strategy.setScheduler(
+                schedulerLocker.presentKey(
+                    state.getUniqueID(), () -> {
+                        final LogitAdaptationScheduler scheduler =
+                            new LogitAdaptationScheduler(parallelBatchScoring);
+                        state.registerStartable(scheduler);
+                        return scheduler;
+                    }
+                ));
+        return strategy;
 
 
     }
@@ -124,13 +199,41 @@ public abstract class BarebonesLogitDestinationFactory implements
                 discretization,
                 (int) getHabitPeriodInDays().applyAsDouble(state.getRandom())
             ),
-            new PortDistanceExtractor()
+            shareCovariate(state, "distance", buildDistanceExtractor(state))
         };
         for (int i = 0; i < areas; i++)
             extractors[i] = commonExtractor;
         return extractors;
     }
 
+    /**
+     * when caching covariates, swap the extractor for the one shared by the fleet
+     *
+     * @param state     the model
+     * @param name      name of the covariate
+     * @param extractor a new extractor for it
+     * @return the extractor to use
+     */
+    protected ObservationExtractor shareCovariate(
+        final FishState state, final String name, final ObservationExtractor extractor
+    ) {
+        if (!cacheCovariates)
+            return extractor;
+        return covariateLocker.presentKey(state.getUniqueID(), CovariateCache::new).share(name, extractor);
+    }
+
+    /**
+     * distance from home port, from the precomputed matrix if distanceMatrix is on
+     *
+     * @param state the model
+     * @return a new extractor
+     */
+    protected ObservationExtractor buildDistanceExtractor(final FishState state) {
+        return distanceMatrix ?
+            new PortDistanceMatrixExtractor(PortDistanceMatrix.of(state)) :
+            new PortDistanceExtractor();
+    }
+
     public abstract ObservationExtractor buildHabitExtractor(MapDiscretization discretization, int period);
 
     /**
@@ -242,4 +345,130 @@ public abstract class BarebonesLogitDestinationFactory implements
     public void setAutomaticallyAvoidWastelands(final boolean automaticallyAvoidWastelands) {
         this.automaticallyAvoidWastelands = automaticallyAvoidWastelands;
     }
+
+    /**
+     * Getter for property 'batchAdaptation'.
+     *
+     * @return Value for property 'batchAdaptation'.
+     */
+    public boolean isBatchAdaptation() {
+        return batchAdaptation;
+    }
+
+    /**
+     * Setter for property 'batchAdaptation'.
+     *
+     * @param batchAdaptation Value to set for property 'batchAdaptation'.
+     */
+    public void setBatchAdaptation(final boolean batchAdaptation) {
+        this.batchAdaptation = batchAdaptation;
+    }
+
+    /**
+     * Getter for property 'parallelBatchScoring'.
+     *
+     * @return Value for property 'parallelBatchScoring'.
+     */
+    public boolean isParallelBatchScoring() {
+        return parallelBatchScoring;
+    }
+
+    /**
+     * Setter for property 'parallelBatchScoring'.
+     *
+     * @param parallelBatchScoring Value to set for property 'parallelBatchScoring'.
+     */
+    public void setParallelBatchScoring(final boolean parallelBatchScoring) {
+        this.parallelBatchScoring = parallelBatchScoring;
+    }
+
+    /**
+     * Getter for property 'cacheCovariates'.
+     *
+     * @return Value for property 'cacheCovariates'.
+     */
+    public boolean isCacheCovariates() {
+        return cacheCovariates;
+    }
+
+    /**
+     * Setter for property 'cacheCovariates'.
+     *
+     * @param cacheCovariates Value to set for property 'cacheCovariates'.
+     */
+    public void setCacheCovariates(final boolean cacheCovariates) {
+        this.cacheCovariates = cacheCovariates;
+    }
+
+    /**
+     * Getter for property 'distanceMatrix'.
+     *
+     * @return Value for property 'distanceMatrix'.
+     */
+    public boolean isDistanceMatrix() {
+        return distanceMatrix;
+    }
+
+    /**
+     * Setter for property 'distanceMatrix'.
+     *
+     * @param distanceMatrix Value to set for property 'distanceMatrix'.
+     */
+    public void setDistanceMatrix(final boolean distanceMatrix) {
+        this.distanceMatrix = distanceMatrix;
+    }
+
+    /**
+     * Getter for property 'decisionStreams'.
+     *
+     * @return Value for property 'decisionStreams'.
+     */
+    public boolean isDecisionStreams() {
+        return decisionStreams;
+    }
+
+    /**
+     * Setter for property 'decisionStreams'.
+     *
+     * @param decisionStreams Value to set for property 'decisionStreams'.
+     */
+    public void setDecisionStreams(final boolean decisionStreams) {
+        this.decisionStreams = decisionStreams;
+    }
+
+    /**
+     * Getter for property 'aliasSampling'.
+     *
+     * @return Value for property 'aliasSampling'.
+     */
+    public boolean isAliasSampling() {
+        return aliasSampling;
+    }
+
+    /**
+     * Setter for property 'aliasSampling'.
+     *
+     * @param aliasSampling Value to set for property 'aliasSampling'.
+     */
+    public void setAliasSampling(final boolean aliasSampling) {
+        this.aliasSampling = aliasSampling;
+    }
+
+    /**
+     * Getter for property 'cacheDiscretization'.
+     *
+     * @return Value for property 'cacheDiscretization'.
+     */
+    public boolean isCacheDiscretization() {
+        return cacheDiscretization;
+    }
+
+    /**
+     * Setter for property 'cacheDiscretization'.
+     *
+     * @param cacheDiscretization Value to set for property 'cacheDiscretization'.
+     */
+    public void setCacheDiscretization(final boolean cacheDiscretization) {
+        this.cacheDiscretization = cacheDiscretization;
+    }
 }
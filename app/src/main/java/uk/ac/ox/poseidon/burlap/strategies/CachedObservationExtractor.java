@@ -0,0 +1,165 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import com.google.common.base.Preconditions;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+import uk.ac.ox.oxfish.geography.NauticalMap;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.ports.Port;
+import uk.ac.ox.oxfish.model.FishState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Memoizes an extractor whose value depends only on tile, home port and/or day (see {@link CovariateScope}).
+ * Values are stored in primitive arrays (one row per home port, one column per tile) stamped with the day they were
+ * computed; a stamp from another day counts as a miss, so nothing needs clearing at the day boundary.
+ * <p>
+ * Meant to be shared by the whole fleet. Not thread-safe: extraction must stay on the model thread.
+ */
+public class CachedObservationExtractor implements ScopedObservationExtractor {
+
+    private final ObservationExtractor delegate;
+
+    private final CovariateScope scope;
+
+    /**
+     * home ports seen so far; their position is the row of the cache
+     */
+    private final ArrayList<Port> ports = new ArrayList<>();
+
+    private double[][] values = new double[0][];
+
+    /**
+     * day+1 the value was computed in (0 means never computed)
+     */
+    private int[][] stamps = new int[0][];
+
+    private int mapWidth = -1;
+
+    private int columns;
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    public CachedObservationExtractor(final ObservationExtractor delegate) {
+        this(delegate, CovariateScope.of(delegate));
+    }
+
+    public CachedObservationExtractor(final ObservationExtractor delegate, final CovariateScope scope) {
+        Preconditions.checkArgument(scope.isCacheable(), "Can't cache extractors that depend on the fisher");
+        this.delegate = delegate;
+        this.scope = scope;
+    }
+
+    @Override
+    public double extract(
+        final SeaTile tile, final double timeOfObservation, final Fisher agent, final FishState model
+    ) {
+        final int row = row(agent);
+        if (row < 0) {
+            misses++;
+            return delegate.extract(tile, timeOfObservation, agent, model);
+        }
+        if (mapWidth < 0) {
+            final NauticalMap map = model.getMap();
+            mapWidth = map.getWidth();
+            columns = scope.isTileDependent() ? mapWidth * map.getHeight() : 1;
+        }
+        if (row >= values.length)
+            grow(row + 1);
+
+        final int column = scope.isTileDependent() ? tile.getGridX() + tile.getGridY() * mapWidth : 0;
+        final int stamp = scope.isDayDependent() ? model.getDay() + 1 : 1;
+        if (stamps[row][column] == stamp) {
+            hits++;
+            return values[row][column];
+        }
+        misses++;
+        final double value = delegate.extract(tile, timeOfObservation, agent, model);
+        values[row][column] = value;
+        stamps[row][column] = stamp;
+        return value;
+    }
+
+    /**
+     * @return the cache row for this fisher's home port, or -1 if the port can't be known
+     */
+    private int row(final Fisher agent) {
+        if (!scope.isPortDependent())
+            return 0;
+        if (agent == null || agent.getHomePort() == null)
+            return -1;
+        final Port port = agent.getHomePort();
+        //there are only a handful of ports; a scan beats hashing
+        for (int i = 0; i < ports.size(); i++)
+            if (ports.get(i) == port)
+                return i;
+        ports.add(port);
+        return ports.size() - 1;
+    }
+
+    private void grow(final int rows) {
+        final int oldRows = values.length;
+        values = Arrays.copyOf(values, rows);
+        stamps = Arrays.copyOf(stamps, rows);
+        for (int i = oldRows; i < rows; i++) {
+            values[i] = new double[columns];
+            stamps[i] = new int[columns];
+        }
+    }
+
+    @Override
+    public CovariateScope getScope() {
+        return scope;
+    }
+
+    /**
+     * Getter for property 'delegate'.
+     *
+     * @return Value for property 'delegate'.
+     */
+    public ObservationExtractor getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Getter for property 'hits'.
+     *
+     * @return Value for property 'hits'.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Getter for property 'misses'.
+     *
+     * @return Value for property 'misses'.
+     */
+    public long getMisses() {
+        return misses;
+    }
+}
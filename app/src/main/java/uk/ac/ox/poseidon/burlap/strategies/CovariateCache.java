@@ -0,0 +1,84 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+
+import java.util.LinkedHashMap;
+
+/**
+ * One per model: hands out a single {@link CachedObservationExtractor} per covariate so that the whole fleet
+ * reads (and fills) the same cache. Extractors that depend on the fisher are returned untouched.
+ * Extractors are never inspected to tell whether they compute the same thing: that's up to the name and parameters
+ * the caller registers them with.
+ */
+public class CovariateCache {
+
+    /**
+     * keyed by covariate name and the parameters the caller gave (see {@link #share(String, String, ObservationExtractor)})
+     */
+    private final LinkedHashMap<String, CachedObservationExtractor> shared = new LinkedHashMap<>();
+
+    /**
+     * the fleet-wide cached version of a covariate that has no parameters beyond its name
+     *
+     * @param name      the covariate name (usually the column name in the logbook)
+     * @param extractor a fresh extractor for this covariate
+     * @return the shared cached extractor, or the extractor itself if it depends on the fisher or is already a lookup
+     */
+    public ObservationExtractor share(final String name, final ObservationExtractor extractor) {
+        return share(name, "", extractor);
+    }
+
+    /**
+     * the fleet-wide cached version of this covariate. Extractors share a cache only if they are registered under
+     * the same name and the same parameters: an intercept of 1 and an intercept of 2 called "intercept" get a cache
+     * each as long as the caller passes "1" and "2". The first extractor registered is the one that gets evaluated.
+     *
+     * @param name       the covariate name (usually the column name in the logbook)
+     * @param parameters whatever else changes what the extractor computes
+     * @param extractor  a fresh extractor for this covariate
+     * @return the shared cached extractor, or the extractor itself if it depends on the fisher or is already a lookup
+     */
+    public ObservationExtractor share(final String name, final String parameters, final ObservationExtractor extractor) {
+        if (!CovariateScope.of(extractor).isCacheable() || extractor instanceof PortDistanceMatrixExtractor)
+            return extractor;
+        return shared.computeIfAbsent(name + "(" + parameters + ")", k -> new CachedObservationExtractor(extractor));
+    }
+
+    public long getHits() {
+        long hits = 0;
+        for (final CachedObservationExtractor extractor : shared.values())
+            hits += extractor.getHits();
+        return hits;
+    }
+
+    public long getMisses() {
+        long misses = 0;
+        for (final CachedObservationExtractor extractor : shared.values())
+            misses += extractor.getMisses();
+        return misses;
+    }
+
+    public int getNumberOfSharedCovariates() {
+        return shared.size();
+    }
+}
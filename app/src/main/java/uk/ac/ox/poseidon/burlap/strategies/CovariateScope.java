@@ -0,0 +1,127 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.*;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * What an observation extractor's value depends on, other than the extractor itself.
+ * {@link CachedObservationExtractor} uses this to decide what to key its cache on: anything that depends on the fisher
+ * in any other way (habits, memory, boat, gear...) is {@link #FISHER} and is never cached.
+ */
+public enum CovariateScope {
+
+    /**
+     * always the same number
+     */
+    CONSTANT(false, false, false),
+
+    /**
+     * changes only with the day (day of the year...)
+     */
+    DAY(false, false, true),
+
+    /**
+     * fixed property of the tile (grid coordinates, habitat, area dummies...)
+     */
+    TILE(true, false, false),
+
+    /**
+     * property of the tile that changes over time (wind...)
+     */
+    TILE_AND_DAY(true, false, true),
+
+    /**
+     * property of the fisher's home port that changes over time (gas price...)
+     */
+    PORT_AND_DAY(false, true, true),
+
+    /**
+     * fixed relationship between the fisher's home port and the tile (distance...)
+     */
+    PORT_AND_TILE(true, true, false),
+
+    /**
+     * depends on the fisher itself; never cached
+     */
+    FISHER(true, true, true);
+
+    /**
+     * scopes of the extractors that can't declare their own
+     */
+    private static final Map<Class<?>, CovariateScope> KNOWN_SCOPES = new IdentityHashMap<>();
+
+    static {
+        KNOWN_SCOPES.put(InterceptExtractor.class, CONSTANT);
+        KNOWN_SCOPES.put(DayOfTheYearExtractor.class, DAY);
+        KNOWN_SCOPES.put(GridXExtractor.class, TILE);
+        KNOWN_SCOPES.put(GridYExtractor.class, TILE);
+        KNOWN_SCOPES.put(HabitatExtractor.class, TILE);
+        KNOWN_SCOPES.put(GroupDummyExtractor.class, TILE);
+        KNOWN_SCOPES.put(WindSpeedExtractor.class, TILE_AND_DAY);
+        KNOWN_SCOPES.put(GasPriceExtractor.class, PORT_AND_DAY);
+        KNOWN_SCOPES.put(PortDistanceExtractor.class, PORT_AND_TILE);
+    }
+
+    private final boolean tileDependent;
+
+    private final boolean portDependent;
+
+    private final boolean dayDependent;
+
+    CovariateScope(final boolean tileDependent, final boolean portDependent, final boolean dayDependent) {
+        this.tileDependent = tileDependent;
+        this.portDependent = portDependent;
+        this.dayDependent = dayDependent;
+    }
+
+    /**
+     * the scope of an extractor: its own declaration if it has one, the known scope of its class otherwise;
+     * extractors we know nothing about are assumed to depend on the fisher
+     *
+     * @param extractor the extractor
+     * @return its scope, never null
+     */
+    public static CovariateScope of(final ObservationExtractor extractor) {
+        if (extractor instanceof ScopedObservationExtractor)
+            return ((ScopedObservationExtractor) extractor).getScope();
+        return KNOWN_SCOPES.getOrDefault(extractor.getClass(), FISHER);
+    }
+
+    public boolean isCacheable() {
+        return this != FISHER;
+    }
+
+    public boolean isTileDependent() {
+        return tileDependent;
+    }
+
+    public boolean isPortDependent() {
+        return portDependent;
+    }
+
+    public boolean isDayDependent() {
+        return dayDependent;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import com.google.common.base.Preconditions;
+import ec.util.MersenneTwisterFast;
+import uk.ac.ox.oxfish.model.FishState;
+
+/**
+ * Counter-based random numbers for agent decisions. Rather than pulling from one shared randomizer, whose
+ * results depend on the order in which fishers happen to decide, every decision opens its own stream keyed by
+ * (run seed, fisher, step, purpose); the i-th number of a stream is a pure function of the key and i
+ * (SplitMix64 finalizer over a Weyl sequence). Fishers can then decide in any order, or in parallel, and a given
+ * seed still gives bit-identical results.
+ * <p>
+ * The service itself is immutable (it only holds the seed) and safe to share between threads; the streams it opens
+ * are cheap, single-threaded and meant to live for one decision. A fisher taking two decisions with the same purpose
+ * in the same step would see the same numbers twice: use different purposes (or keys) for those.
+ */
+public final class DecisionStreams {
+
+    /*
+     * purposes used by the strategies in this package; anything else can use its own numbers
+     */
+    public static final int LOGIT_TILE = 1;
+    public static final int LOGIT_ARM = 2;
+    public static final int REPLICATION = 3;
+    public static final int DEPARTURE = 4;
+    public static final int BANDIT = 5;
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /**
+     * for the APIs that insist on a MersenneTwisterFast: one per thread, reseeded from a stream when asked for
+     */
+    private static final ThreadLocal<MersenneTwisterFast> RESEEDED =
+        ThreadLocal.withInitial(() -> new MersenneTwisterFast(0));
+
+    private final long seed;
+
+    public DecisionStreams(long seed) {
+        this.seed = mix(seed);
+    }
+
+    /**
+     * streams keyed on the seed this model was started with
+     *
+     * @param model the model
+     * @return a new service (they are stateless, so there's no point sharing them)
+     */
+    public static DecisionStreams of(FishState model) {
+        return new DecisionStreams(model.seed());
+    }
+
+    /**
+     * SplitMix64 finalizer: a bijective mix of all 64 bits
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * the starting point of the stream for this key
+     */
+    long key(long id, long step, int purpose) {
+        long key = mix(seed + GOLDEN_GAMMA * (id + 1));
+        key = mix(key ^ (step * 0xC2B2AE3D27D4EB4FL + purpose));
+        return mix(key + GOLDEN_GAMMA * purpose);
+    }
+
+    /**
+     * open the stream of a decision
+     *
+     * @param id      usually the fisher id (anything stable and unique among whoever decides with this purpose)
+     * @param step    usually the model step
+     * @param purpose what the numbers are for (see the constants)
+     * @return a new stream, positioned at its first number
+     */
+    public Stream stream(long id, long step, int purpose) {
+        return new Stream(key(id, step, purpose));
+    }
+
+    /**
+     * the stream of a fisher's decision at the current step
+     */
+    public Stream stream(long id, FishState model, int purpose) {
+        return stream(id, model.getStep(), purpose);
+    }
+
+    /**
+     * the n-th uniform number of a stream, without opening it
+     *
+     * @return a number in [0,1)
+     */
+    public double uniform(long id, long step, int purpose, long n) {
+        return toUnit(mix(key(id, step, purpose) + GOLDEN_GAMMA * (n + 1)));
+    }
+
+    private static double toUnit(long bits) {
+        return (bits >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * the numbers of one decision
+     */
+    public static final class Stream {
+
+        private final long key;
+
+        private long counter = 0;
+
+        private Stream(long key) {
+            this.key = key;
+        }
+
+        public long nextLong() {
+            return mix(key + GOLDEN_GAMMA * ++counter);
+        }
+
+        /**
+         * @return a uniform number in [0,1)
+         */
+        public double nextDouble() {
+            return toUnit(nextLong());
+        }
+
+        /**
+         * @param bound exclusive upper bound, positive
+         * @return a uniform integer in [0,bound), unbiased (rejection sampling)
+         */
+        public int nextInt(int bound) {
+            Preconditions.checkArgument(bound > 0, "bound must be positive");
+            final long limit = (1L << 31) - ((1L << 31) % bound);
+            long bits;
+            do {
+                bits = nextLong() >>> 33;
+            } while (bits >= limit);
+            return (int) (bits % bound);
+        }
+
+        /**
+         * @param probability the probability of true
+         * @return true with the given probability
+         */
+        public boolean nextBoolean(double probability) {
+            return nextDouble() < probability;
+        }
+
+        /**
+         * a MersenneTwisterFast seeded from this stream, for code that only takes those. The randomizer belongs
+         * to the calling thread and is reseeded at the next call: use it right away and don't keep it.
+         *
+         * @return the calling thread's randomizer, freshly reseeded
+         */
+        public MersenneTwisterFast asMersenneTwister() {
+            final MersenneTwisterFast random = RESEEDED.get();
+            random.setSeed(nextLong());
+            return random;
+        }
+
+        /**
+         * Getter for property 'counter'.
+         *
+         * @return how many numbers this stream has produced
+         */
+        public long getCounter() {
+            return counter;
+        }
+    }
+
+    /**
+     * Getter for property 'seed'.
+     *
+     * @return Value for property 'seed' (mixed).
+     */
+    public long getSeed() {
+        return seed;
+    }
+}
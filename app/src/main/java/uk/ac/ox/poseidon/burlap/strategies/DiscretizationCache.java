@@ -0,0 +1,164 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.vividsolutions.jts.geom.Envelope;
+import uk.ac.ox.oxfish.geography.NauticalMap;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretizer;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.oxfish.utility.AlgorithmFactory;
+import uk.ac.ox.oxfish.utility.yaml.FishYAML;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * JVM-wide cache of map discretizations, so that a batch of runs on the same map (calibrations, rejection sampling...)
+ * discretizes it once rather than once per run.
+ * <p>
+ * Tiles belong to the map of one model, so what is cached is the content of each group as grid coordinates; every
+ * model gets its own {@link MapDiscretization} rebuilt through a {@link PrecomputedDiscretizer}, which is linear in the
+ * number of tiles. The key is a hash of the map (size, envelope, land and altitude of every tile) plus a description of the
+ * discretizer (its YAML).
+ * <p>
+ * A hit never calls the discretizer factory: discretizers with random parameters keep the first draw, and the model
+ * randomizer isn't consumed the way it would be without the cache. So factories only use it when asked to
+ * (cacheDiscretization), and otherwise go through {@link #compute(FishState, AlgorithmFactory)}.
+ * <p>
+ * The cache holds the most recently used maps only; its size is set by the system property
+ * {@value #SIZE_PROPERTY} (0 turns caching off).
+ */
+public final class DiscretizationCache {
+
+    public static final String SIZE_PROPERTY = "discretization.cache.size";
+
+    private static final Cache<String, PrecomputedDiscretizer> CACHE = CacheBuilder.newBuilder()
+        .maximumSize(Long.getLong(SIZE_PROPERTY, 16))
+        .recordStats()
+        .build();
+
+    private DiscretizationCache() {
+    }
+
+    /**
+     * discretize the model's map with this discretizer, unless an identical map was already discretized by an
+     * identical discretizer
+     *
+     * @param state       the model
+     * @param discretizer the discretizer factory
+     * @return a discretization of this model's map
+     */
+    public static MapDiscretization discretize(
+        final FishState state, final AlgorithmFactory<? extends MapDiscretizer> discretizer
+    ) {
+        String parameters;
+        try {
+            parameters = discretizer.getClass().getName() + "\n" + new FishYAML().dump(discretizer);
+        } catch (final RuntimeException e) {
+            //can't describe it, can't cache it
+            parameters = null;
+        }
+        return parameters == null ?
+            compute(state, discretizer) :
+            discretize(state, parameters, () -> compute(state, discretizer));
+    }
+
+    /**
+     * discretize the model's map with this discretizer, without looking at the cache
+     *
+     * @param state       the model
+     * @param discretizer the discretizer factory
+     * @return a discretization of this model's map
+     */
+    public static MapDiscretization compute(
+        final FishState state, final AlgorithmFactory<? extends MapDiscretizer> discretizer
+    ) {
+        final MapDiscretization toReturn = new MapDiscretization(discretizer.apply(state));
+        toReturn.discretize(state.getMap());
+        return toReturn;
+    }
+
+    /**
+     * @param state      the model
+     * @param parameters anything that identifies the discretization given the map (file names, parameters...)
+     * @param compute    builds (and discretizes) the discretization if it isn't cached
+     * @return a discretization of this model's map
+     */
+    public static MapDiscretization discretize(
+        final FishState state, final String parameters, final Supplier<MapDiscretization> compute
+    ) {
+        final NauticalMap map = state.getMap();
+        final String key = hash(map) + "\n" + parameters;
+        final PrecomputedDiscretizer cached = CACHE.getIfPresent(key);
+        if (cached != null) {
+            final MapDiscretization toReturn = new MapDiscretization(cached);
+            toReturn.discretize(map);
+            return toReturn;
+        }
+        final MapDiscretization computed = compute.get();
+        CACHE.put(key, precompute(computed, map));
+        return computed;
+    }
+
+    private static PrecomputedDiscretizer precompute(final MapDiscretization discretization, final NauticalMap map) {
+        final int height = map.getHeight();
+        final int[][] groups = new int[discretization.getNumberOfGroups()][];
+        for (int group = 0; group < groups.length; group++) {
+            final List<SeaTile> tiles = discretization.getGroup(group);
+            groups[group] = new int[tiles == null ? 0 : tiles.size()];
+            for (int i = 0; i < groups[group].length; i++)
+                groups[group][i] = tiles.get(i).getGridX() * height + tiles.get(i).getGridY();
+        }
+        return new PrecomputedDiscretizer(groups, map.getWidth(), height);
+    }
+
+    /**
+     * content hash of what discretizers look at; centroid discretizers go by coordinates, hence the envelope
+     */
+    static String hash(final NauticalMap map) {
+        final Hasher hasher = Hashing.murmur3_128().newHasher();
+        hasher.putInt(map.getWidth()).putInt(map.getHeight());
+        final Envelope envelope = map.getRasterBathymetry().getMBR();
+        hasher.putDouble(envelope.getMinX()).putDouble(envelope.getMaxX())
+            .putDouble(envelope.getMinY()).putDouble(envelope.getMaxY());
+        for (int x = 0; x < map.getWidth(); x++)
+            for (int y = 0; y < map.getHeight(); y++) {
+                final SeaTile tile = map.getSeaTile(x, y);
+                hasher.putBoolean(tile.isLand()).putDouble(tile.getAltitude());
+            }
+        return hasher.hash().toString();
+    }
+
+    public static CacheStats getStats() {
+        return CACHE.stats();
+    }
+
+    public static void clear() {
+        CACHE.invalidateAll();
+    }
+}
@@ -40,11 +40,18 @@ import static uk.ac.ox.oxfish.geography.discretization.MapDiscretization.createD
 public class FloridaLogitDestinationFactory implements
     AlgorithmFactory<LogitDestinationStrategy> {
 
+    /**
+     * columns of the coefficients files; all but the first match the common extractors
+     */
+    private static final String[] COLUMNS =
+        new String[]{"area", "intercept", "distance", "habit", "fuel_price", "wind_speed"};
 
     /**
      * everybody shares the parent same destination logit strategy
      */
     private final Locker<String, MapDiscretization> discretizationLocker = new Locker<>();
+    private final Locker<String, CovariateCache> covariateLocker = new Locker<>();
+    private final Locker<String, ValidTileIndex> tileIndexLocker = new Locker<>();
     /**
      * file containing all the betas
      */
@@ -65,6 +72,21 @@ public class FloridaLogitDestinationFactory implements
 
     private boolean automaticallyAvoidWastelands = true;
 
+    /**
+     * share intercept, distance, fuel price and wind speed across the fleet, computing them once a day
+     * (off by default: the scopes of POSEIDON's extractors in CovariateScope are assumed, not verified)
+     */
+    private boolean cacheCovariates = false;
+    /**
+     * when true the distance covariate is read from a precomputed ports x tiles matrix (see PortDistanceMatrix)
+     */
+    private boolean distanceMatrix = false;
+    /**
+     * when true runs on an identical map reuse the discretization through DiscretizationCache
+     * (off by default, see DiscretizationCache for why)
+     */
+    private boolean cacheDiscretization = false;
+
     public static ObservationExtractor[] longlineFloridaCommonExtractor(
         final MapDiscretization discretization
     ) {
@@ -92,18 +114,21 @@ public class FloridaLogitDestinationFactory implements
     public LogitDestinationStrategy apply(final FishState state) {
 
         final MapDiscretization discretization = discretizationLocker.
-            presentKey(state.getUniqueID(), () -> createDiscretization(state, centroidFile));
+            presentKey(state.getUniqueID(), () -> cacheDiscretization ?
+                DiscretizationCache.discretize(
+                    state, "centroids:" + centroidFile, () -> createDiscretization(state, centroidFile)) :
+                createDiscretization(state, centroidFile));
 
         CsvColumnsToLists reader = new CsvColumnsToLists(
             coefficientsFile,
             ',',
-            new String[]{"area", "intercept", "distance", "habit", "fuel_price", "wind_speed"}
+            COLUMNS
         );
         final LinkedList<Double>[] lists = reader.readColumns();
         reader = new CsvColumnsToLists(
             coefficientsStandardDeviationFile,
             ',',
-            new String[]{"area", "intercept", "distance", "habit", "fuel_price", "wind_speed"}
+            COLUMNS
         );
         final LinkedList<Double>[] std = reader.readColumns();
         final LinkedList<Integer> rowNames = new LinkedList<Integer>();
@@ -120,12 +145,25 @@ public class FloridaLogitDestinationFactory implements
         final ObservationExtractor[][] extractors = new ObservationExtractor[betas.length][];
         final ObservationExtractor[] commonExtractor =
             longlineFloridaCommonExtractor(discretization);
+        if (distanceMatrix)
+            commonExtractor[1] = new PortDistanceMatrixExtractor(PortDistanceMatrix.of(state));
+        if (cacheCovariates) {
+            final CovariateCache cache = covariateLocker.presentKey(state.getUniqueID(), CovariateCache::new);
+            for (int i = 0; i < commonExtractor.length; i++)
+                commonExtractor[i] = cache.share(COLUMNS[i + 1], commonExtractor[i]);
+        }
         for (int i = 0; i < extractors.length; i++)
             extractors[i] = commonExtractor;
 
         return new LogitDestinationStrategy(betas, extractors, rowNames, discretization,
             new FavoriteDestinationStrategy(state.getMap(), state.getRandom()),
-            state.getRandom(), automaticallyAvoidMPA, automaticallyAvoidWastelands
+            state.getRandom(), automaticallyAvoidMPA, automaticallyAvoidWastelands,
+            tileIndexLocker.presentKey(
+                state.getUniqueID(), () -> {
+                    LogitDestinationStrategy.registerFailedDecisionsGatherer(state);
+                    return new ValidTileIndex(discretization, automaticallyAvoidWastelands);
+                }
+            )
         );
 
     }
@@ -189,4 +227,58 @@ public class FloridaLogitDestinationFactory implements
     public void setAutomaticallyAvoidWastelands(final boolean automaticallyAvoidWastelands) {
         this.automaticallyAvoidWastelands = automaticallyAvoidWastelands;
     }
+
+    /**
+     * Getter for property 'cacheCovariates'.
+     *
+     * @return Value for property 'cacheCovariates'.
+     */
+    public boolean isCacheCovariates() {
+        return cacheCovariates;
+    }
+
+    /**
+     * Setter for property 'cacheCovariates'.
+     *
+     * @param cacheCovariates Value to set for property 'cacheCovariates'.
+     */
+    public void setCacheCovariates(final boolean cacheCovariates) {
+        this.cacheCovariates = cacheCovariates;
+    }
+
+    /**
+     * Getter for property 'distanceMatrix'.
+     *
+     * @return Value for property 'distanceMatrix'.
+     */
+    public boolean isDistanceMatrix() {
+        return distanceMatrix;
+    }
+
+    /**
+     * Setter for property 'distanceMatrix'.
+     *
+     * @param distanceMatrix Value to set for property 'distanceMatrix'.
+     */
+    public void setDistanceMatrix(final boolean distanceMatrix) {
+        this.distanceMatrix = distanceMatrix;
+    }
+
+    /**
+     * Getter for property 'cacheDiscretization'.
+     *
+     * @return Value for property 'cacheDiscretization'.
+     */
+    public boolean isCacheDiscretization() {
+        return cacheDiscretization;
+    }
+
+    /**
+     * Setter for property 'cacheDiscretization'.
+     *
+     * @param cacheDiscretization Value to set for property 'cacheDiscretization'.
+     */
+    public void setCacheDiscretization(final boolean cacheDiscretization) {
+        this.cacheDiscretization = cacheDiscretization;
+    }
 }
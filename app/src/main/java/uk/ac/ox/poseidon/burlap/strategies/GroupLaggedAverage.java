@@ -0,0 +1,155 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.engine.Stoppable;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+import uk.ac.ox.oxfish.fisher.log.TripListener;
+import uk.ac.ox.oxfish.fisher.log.TripRecord;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.oxfish.model.StepOrder;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Lagged covariate per group: the average, over last year's trips whose most fished tile was in the group, of some
+ * number computed from the trip record (revenue per hour, CPUE...). Works like TripLaggedExtractor but is kept up to
+ * date incrementally: each finished trip is added to its group's running sum as it happens and the averages are
+ * rolled over at the start of every year, so neither trips nor decisions ever look at trip histories.
+ * <p>
+ * Groups with no trips last year keep their previous average (0 until the first trip). The running sums are striped
+ * adders, so many fishers (even on different threads) can feed the same instance without locking.
+ */
+public class GroupLaggedAverage implements ObservationExtractor, TripListener, Steppable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ToDoubleFunction<TripRecord> observation;
+
+    private final MapDiscretization discretization;
+
+    private final DoubleAdder[] sums;
+
+    private final LongAdder[] trips;
+
+    /**
+     * last year's averages; read by extract
+     */
+    private final double[] lagged;
+
+    private Stoppable stoppable;
+
+    /**
+     * fishers whose trips are listened to; the roll-over stops when the last one is untracked
+     */
+    private int tracked = 0;
+
+    public GroupLaggedAverage(ToDoubleFunction<TripRecord> observation, MapDiscretization discretization) {
+        this.observation = observation;
+        this.discretization = discretization;
+        final int groups = discretization.getNumberOfGroups();
+        sums = new DoubleAdder[groups];
+        trips = new LongAdder[groups];
+        for (int group = 0; group < groups; group++) {
+            sums[group] = new DoubleAdder();
+            trips[group] = new LongAdder();
+        }
+        lagged = new double[groups];
+    }
+
+    /**
+     * start listening to this fisher's trips (and start the yearly roll-over if it's the first fisher)
+     *
+     * @param fisher the fisher whose trips count
+     * @param model  the model
+     */
+    public void track(Fisher fisher, FishState model) {
+        if (stoppable == null)
+            stoppable = model.scheduleEveryYear(this, StepOrder.DATA_RESET);
+        fisher.addTripListener(this);
+        tracked++;
+    }
+
+    /**
+     * stop listening to this fisher's trips (and stop the yearly roll-over if it was the last fisher)
+     *
+     * @param fisher a fisher tracked before
+     */
+    public void untrack(Fisher fisher) {
+        fisher.removeTripListener(this);
+        if (tracked > 0 && --tracked == 0)
+            turnOff();
+    }
+
+    public void turnOff() {
+        if (stoppable != null)
+            stoppable.stop();
+        stoppable = null;
+    }
+
+    @Override
+    public void reactToFinishedTrip(TripRecord record, Fisher fisher) {
+        final SeaTile tile = record.getMostFishedTileInTrip();
+        if (tile == null)
+            return;
+        final Integer group = discretization.getGroup(tile);
+        if (group == null)
+            return;
+        final double value = observation.applyAsDouble(record);
+        if (!Double.isFinite(value))
+            return;
+        sums[group].add(value);
+        trips[group].increment();
+    }
+
+    /**
+     * new year: what was observed becomes the lagged value
+     */
+    @Override
+    public void step(SimState simState) {
+        for (int group = 0; group < lagged.length; group++) {
+            final long observed = trips[group].sumThenReset();
+            final double sum = sums[group].sumThenReset();
+            if (observed > 0)
+                lagged[group] = sum / observed;
+        }
+    }
+
+    @Override
+    public double extract(SeaTile tile, double timeOfObservation, Fisher agent, FishState model) {
+        final Integer group = discretization.getGroup(tile);
+        return group == null ? Double.NaN : lagged[group];
+    }
+
+    /**
+     * last year's average of a group
+     */
+    public double getLagged(int group) {
+        return lagged[group];
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import com.google.common.base.Preconditions;
+import sim.engine.SimState;
+import sim.engine.Steppable;
+import sim.engine.Stoppable;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.oxfish.model.StepOrder;
+import uk.ac.ox.oxfish.model.Startable;
+
+import java.util.ArrayList;
+import java.util.stream.IntStream;
+
+/**
+ * Fleet-level adaptation stage for {@link LogitDestinationStrategy}. Rather than each strategy re-choosing as soon
+ * as its trip ends, strategies queue here and the whole queue decides together:
+ * <ol>
+ *     <li>inputs are built fisher by fisher (extractors and tile sampling share the model randomizer, so this stays sequential).
+ *     Fleet-invariant covariates are only computed once per (port, tile) if the factory shares them through
+ *     {@link CovariateCache}; otherwise every fisher extracts them again and batching buys little</li>
+ *     <li>utilities are computed for the whole batch (fishers x arms x covariates), optionally across cores</li>
+ *     <li>arms are drawn in queue order, so results don't depend on how the scoring was split between threads</li>
+ * </ol>
+ * The queue is flushed at dawn, or earlier if a queued fisher needs its destination before then.
+ */
+public class LogitAdaptationScheduler implements Startable, Steppable {
+
+    /**
+     * strategies waiting for a decision, in the order they asked for it
+     */
+    private final ArrayList<LogitDestinationStrategy> pendingStrategies = new ArrayList<>();
+
+    private final ArrayList<Fisher> pendingFishers = new ArrayList<>();
+
+    /**
+     * when true the utilities of the batch are computed in parallel
+     */
+    private final boolean parallelScoring;
+
+    /**
+     * reused between flushes
+     */
+    private double[][][] inputs = new double[0][][];
+
+    private Stoppable stoppable;
+
+    private long decisionsTaken = 0;
+
+    private long batches = 0;
+
+    public LogitAdaptationScheduler(boolean parallelScoring) {
+        this.parallelScoring = parallelScoring;
+    }
+
+    /**
+     * queue a strategy for the next batch
+     *
+     * @param strategy the strategy whose fisher needs to choose again
+     * @param fisher   the fisher
+     */
+    public void enqueue(LogitDestinationStrategy strategy, Fisher fisher) {
+        pendingStrategies.add(strategy);
+        pendingFishers.add(fisher);
+    }
+
+    @Override
+    public void step(SimState simState) {
+        flush((FishState) simState);
+    }
+
+    /**
+     * take all the pending decisions now
+     *
+     * @param model the model
+     */
+    public void flush(FishState model) {
+        final int batchSize = pendingStrategies.size();
+        if (batchSize == 0)
+            return;
+        final LogitDestinationStrategy[] strategies =
+            pendingStrategies.toArray(new LogitDestinationStrategy[batchSize]);
+        final Fisher[] fishers = pendingFishers.toArray(new Fisher[batchSize]);
+        //empty the queue first: a flush can be triggered again from within a decision
+        pendingStrategies.clear();
+        pendingFishers.clear();
+        if (inputs.length < batchSize)
+            inputs = new double[batchSize][][];
+
+        //1: covariates
+        for (int i = 0; i < batchSize; i++)
+            inputs[i] = strategies[i].prepareDecision(model, fishers[i]);
+
+        //2: utilities
+        IntStream scoring = IntStream.range(0, batchSize);
+        if (parallelScoring)
+            scoring = scoring.parallel();
+        scoring.forEach(i -> {
+            if (inputs[i] != null)
+                strategies[i].getClassifier().computeUtilities(inputs[i], strategies[i].getUtilities());
+        });
+
+        //3: draws
+        for (int i = 0; i < batchSize; i++) {
+            if (inputs[i] != null) {
+                strategies[i].completeDecision(model, inputs[i], strategies[i].getUtilities());
+                decisionsTaken++;
+            }
+            inputs[i] = null;
+        }
+        batches++;
+    }
+
+    @Override
+    public void start(FishState model) {
+        Preconditions.checkState(stoppable == null, "Already started!");
+        stoppable = model.scheduleEveryStep(this, StepOrder.DAWN);
+    }
+
+    @Override
+    public void turnOff() {
+        if (stoppable != null)
+            stoppable.stop();
+        pendingStrategies.clear();
+        pendingFishers.clear();
+    }
+
+    /**
+     * Getter for property 'parallelScoring'.
+     *
+     * @return Value for property 'parallelScoring'.
+     */
+    public boolean isParallelScoring() {
+        return parallelScoring;
+    }
+
+    /**
+     * Getter for property 'decisionsTaken'.
+     *
+     * @return Value for property 'decisionsTaken'.
+     */
+    public long getDecisionsTaken() {
+        return decisionsTaken;
+    }
+
+    /**
+     * Getter for property 'batches'.
+     *
+     * @return Value for property 'batches'.
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * how many decisions are waiting for the next batch
+     *
+     * @return the queue size
+     */
+    public int getPendingDecisions() {
+        return pendingStrategies.size();
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The betas of a logit, one row per arm, stored so that they can be shared rather than copied: identical rows
+ * point to the same array and identical blocks are interned, so a fleet built with the same coefficients holds them
+ * once. Rows are copied on the way in and only handed out as copies, so nobody can change them for the whole fleet.
+ */
+public final class LogitCoefficients {
+
+    /**
+     * weak: a block goes away once no strategy holds it anymore
+     */
+    private static final Interner<LogitCoefficients> SHARED = Interners.newWeakInterner();
+
+    private final double[][] rows;
+
+    private final int distinctRows;
+
+    private final int hash;
+
+    private LogitCoefficients(final double[][] rows, final int distinctRows) {
+        this.rows = rows;
+        this.distinctRows = distinctRows;
+        this.hash = Arrays.deepHashCode(rows);
+    }
+
+    /**
+     * the shared block with these coefficients
+     *
+     * @param betas one row of betas per arm (not modified, not kept)
+     * @return a block with the same values, possibly already in use elsewhere
+     */
+    public static LogitCoefficients of(final double[][] betas) {
+        final double[][] rows = new double[betas.length][];
+        final HashMap<Row, double[]> distinct = new HashMap<>();
+        for (int i = 0; i < betas.length; i++)
+            rows[i] = distinct.computeIfAbsent(new Row(betas[i]), row -> row.values.clone());
+        return SHARED.intern(new LogitCoefficients(rows, distinct.size()));
+    }
+
+    /**
+     * @return a copy of the rows; changing it changes nothing else
+     */
+    public double[][] getRows() {
+        final double[][] copy = new double[rows.length][];
+        for (int i = 0; i < rows.length; i++)
+            copy[i] = rows[i].clone();
+        return copy;
+    }
+
+    /**
+     * @return the rows themselves, shared with every holder of this block; only for classifiers that read them
+     */
+    double[][] sharedRows() {
+        return rows;
+    }
+
+    public int getNumberOfRows() {
+        return rows.length;
+    }
+
+    public int getNumberOfDistinctRows() {
+        return distinctRows;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final LogitCoefficients that = (LogitCoefficients) o;
+        return hash == that.hash && Arrays.deepEquals(rows, that.rows);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * content-based key for a row of betas
+     */
+    private static final class Row {
+
+        private final double[] values;
+
+        private final int hash;
+
+        private Row(final double[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof Row && hash == ((Row) o).hash && Arrays.equals(values, ((Row) o).values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -22,7 +22,6 @@ package uk.ac.ox.poseidon.burlap.strategies;
 
 import com.google.common.base.Preconditions;
 import ec.util.MersenneTwisterFast;
-import org.jfree.util.Log;
 import uk.ac.ox.oxfish.fisher.Fisher;
 import uk.ac.ox.oxfish.fisher.actions.Action;
 import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
@@ -34,20 +33,22 @@ import uk.ac.ox.oxfish.fisher.strategies.destination.FavoriteDestinationStrategy
 import uk.ac.ox.oxfish.geography.SeaTile;
 import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
 import uk.ac.ox.oxfish.model.FishState;
-import uk.ac.ox.oxfish.utility.FishStateUtilities;
+import uk.ac.ox.oxfish.model.data.Gatherer;
 import uk.ac.ox.oxfish.utility.adaptation.Adaptation;
 import uk.ac.ox.oxfish.utility.bandit.BanditSwitch;
 import uk.ac.ox.poseidon.burlap.LogisticMultiClassifier;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * makes choices as if a big SOFTMAX where rewards are a linear combination of features
  * Created by carrknight on 12/5/16.
  */
-public class LogitDestinationStrategy implements DestinationStrategy {
+public class LogitDestinationStrategy implements ResettableDestinationStrategy {
 
+    public static final String FAILED_DECISIONS_COLUMN = "Failed Logit Decisions";
 
     /**
      * this object links the index choices of the logit with the map group of the discretizers
@@ -59,23 +60,77 @@ public class LogitDestinationStrategy implements DestinationStrategy {
      */
     private final MapDiscretization discretization;
 
+    /**
+     * the betas of the arms modelled, shared with every other strategy built with the same numbers
+     */
+    private final LogitCoefficients coefficients;
+
     /**
      * object actually making a choice
      */
     private final LogisticMultiClassifier classifier;
 
+    /**
+     * utility of each arm at the last decision; reused between decisions
+     */
+    private final double[] utilities;
+
 
     /**
      * the object containing the extractors and building logistic inputs
      */
     private final LogisticInputMaker input;
 
+    /**
+     * where each arm picks its tile from
+     */
+    private final ValidTileIndex tileIndex;
+
+    /**
+     * decisions abandoned because no arm led to a valid tile
+     */
+    private long failedDecisions = 0;
+
+    /**
+     * arms excluded from a decision because they led to no valid tile (summed over all decisions)
+     */
+    private long maskedArms = 0;
+
     private final FavoriteDestinationStrategy delegate;
 
-    private final DiscretizedLocationMemory memory;
+    private DiscretizedLocationMemory memory;
     private final boolean automaticallyAvoidMPA;
     private final boolean automaticallyAvoidWastelands;
     private LogisticLog log;
+    /**
+     * when not null, decisions are not taken on the spot but queued and taken together with the rest of the fleet
+     */
+    private LogitAdaptationScheduler scheduler;
+    /**
+     * true while this strategy sits in the scheduler queue waiting for a decision
+     */
+    private boolean decisionPending = false;
+    /**
+     * when not null, tiles and arms are drawn from this fisher's own decision streams rather than the shared
+     * randomizers, so the outcome doesn't depend on the order fishers decide in
+     */
+    private DecisionStreams decisionStreams;
+    /**
+     * stream of the decision being prepared (only while sampling tiles)
+     */
+    private DecisionStreams.Stream tileStream;
+    /**
+     * when not null, arms are drawn from the port's alias table plus habit rather than from the full logit
+     */
+    private PortAliasTables aliasTables;
+    private ObservationExtractor habitCovariate;
+    private double habitBeta;
+    private double distanceBeta;
+    /**
+     * scratch space for alias decisions: arms with a habit and their habit utility
+     */
+    private int[] habitArms = new int[0];
+    private double[] habitUtilities = new double[0];
     /**
      * delegate object that re-routes adaptation back to this function
      */
@@ -83,7 +138,13 @@ public class LogitDestinationStrategy implements DestinationStrategy {
         @Override
         public void adapt(Fisher toAdapt, FishState state, MersenneTwisterFast random) {
 
-            LogitDestinationStrategy.this.adapt(state, random, toAdapt);
+            //alias decisions are cheap enough not to be worth queueing
+            if (scheduler == null || aliasTables != null)
+                LogitDestinationStrategy.this.adapt(state, random, toAdapt);
+            else if (!decisionPending) {
+                decisionPending = true;
+                scheduler.enqueue(LogitDestinationStrategy.this, toAdapt);
+            }
         }
 
         @Override
@@ -116,6 +177,35 @@ public class LogitDestinationStrategy implements DestinationStrategy {
         MersenneTwisterFast random,
         boolean automaticallyAvoidMPA, boolean automaticallyAvoidWastelands
     ) {
+        this(betas, covariates, rowNames, discretization, delegate, random,
+            automaticallyAvoidMPA, automaticallyAvoidWastelands,
+            new ValidTileIndex(discretization, automaticallyAvoidWastelands)
+        );
+    }
+
+    /**
+     * @param betas                        table of all the betas (some might be ignored if the map doesn't cover them)
+     * @param covariates                   table of all hte observation extractors (generate x on the spot)
+     * @param rowNames                     column that assign to each row of betas the group it belongs to
+     * @param discretization               the discretization map
+     * @param automaticallyAvoidMPA        automatically avoid not allowed areas
+     * @param automaticallyAvoidWastelands automatically avoid areas where fish can't grow
+     * @param tileIndex                    valid tiles of each group (can be shared by strategies with the same discretization)
+     */
+    public LogitDestinationStrategy(
+        double[][] betas, ObservationExtractor[][] covariates,
+        List<Integer> rowNames,
+        MapDiscretization discretization,
+        FavoriteDestinationStrategy delegate,
+        MersenneTwisterFast random,
+        boolean automaticallyAvoidMPA, boolean automaticallyAvoidWastelands,
+        ValidTileIndex tileIndex
+    ) {
+        Preconditions.checkArgument(tileIndex.getDiscretization() == discretization,
+            "Tile index built for another discretization");
+        Preconditions.checkArgument(tileIndex.isAvoidWastelands() == automaticallyAvoidWastelands,
+            "Tile index disagrees on wastelands");
+        this.tileIndex = tileIndex;
         this.automaticallyAvoidMPA = automaticallyAvoidMPA;
         this.automaticallyAvoidWastelands = automaticallyAvoidWastelands;
 
@@ -126,24 +216,33 @@ public class LogitDestinationStrategy implements DestinationStrategy {
         this.delegate = delegate;
         this.discretization = discretization;
 
+        //where each group's betas are in the table (first match wins); -1 when it isn't listed
+        final int[] rowOfGroup = new int[discretization.getNumberOfGroups()];
+        Arrays.fill(rowOfGroup, -1);
+        int rowNumber = 0;
+        for (Integer group : rowNames) {
+            if (group != null && group >= 0 && group < rowOfGroup.length && rowOfGroup[group] < 0)
+                rowOfGroup[group] = rowNumber;
+            rowNumber++;
+        }
+
         //only model arms for which we have both at least a tile in the map AND is listed in the input file
         switcher = new BanditSwitch(
             discretization.getNumberOfGroups(),
-            integer -> discretization.isValid(integer) && rowNames.contains(integer)
+            integer -> discretization.isValid(integer) && rowOfGroup[integer] >= 0
         );
 
         //here we store only the betas which have a model arm associated to it
         ArrayList<double[]> effectiveBetas = new ArrayList<>();
         ArrayList<ObservationExtractor[]> effectiveCovariates = new ArrayList<>();
         for (int i = 0; i < discretization.getNumberOfGroups(); i++) {
-            int rowNumber = rowNames.indexOf(i);
-            if (rowNumber < 0)
+            if (rowOfGroup[i] < 0)
                 continue;
             Integer arm = switcher.getArm(i);
             if (arm == null) //there might not be anything in the map associated with this arm, ignore it then!
                 continue;
-            effectiveBetas.add(betas[rowNumber]);
-            effectiveCovariates.add(covariates[rowNumber]);
+            effectiveBetas.add(betas[rowOfGroup[i]]);
+            effectiveCovariates.add(covariates[rowOfGroup[i]]);
         }
         //the numbers should all match
         assert effectiveBetas.size() == effectiveCovariates.size();
@@ -152,21 +251,25 @@ public class LogitDestinationStrategy implements DestinationStrategy {
 
         this.input = new LogisticInputMaker(
             effectiveCovariates.toArray(new ObservationExtractor[effectiveCovariates.size()][]),
-            arm -> {
-                List<SeaTile> group = discretization.getGroup(switcher.getGroup(arm));
-                return FishStateUtilities.getValidSeatileFromGroup(
+            arm -> tileStream == null ?
+                tileIndex.sample(
+                    switcher.getGroup(arm),
                     random,
-                    group,
                     this.automaticallyAvoidMPA,
                     fisher,
-                    model,
-                    this.automaticallyAvoidWastelands,
-                    50
-                );
-            }
+                    model
+                ) :
+                tileIndex.sample(
+                    switcher.getGroup(arm),
+                    tileStream,
+                    this.automaticallyAvoidMPA,
+                    fisher,
+                    model
+                )
         );
-        this.classifier = new LogisticMultiClassifier(
-            effectiveBetas.toArray(new double[effectiveBetas.size()][]));
+        this.coefficients = LogitCoefficients.of(effectiveBetas.toArray(new double[effectiveBetas.size()][]));
+        this.classifier = new LogisticMultiClassifier(coefficients.sharedRows());
+        this.utilities = new double[classifier.getNumberOfOptions()];
 
 
         this.memory = new DiscretizedLocationMemory(discretization);
@@ -174,6 +277,28 @@ public class LogitDestinationStrategy implements DestinationStrategy {
 
     }
 
+    /**
+     * adds a daily column with the total number of decisions logit strategies had to abandon
+     * (once per model, however many factories ask for it)
+     *
+     * @param state the model
+     */
+    public static void registerFailedDecisionsGatherer(FishState state) {
+        if (state.getDailyDataSet().getColumn(FAILED_DECISIONS_COLUMN) != null)
+            return;
+        state.getDailyDataSet().registerGatherer(
+            FAILED_DECISIONS_COLUMN,
+            (Gatherer<FishState>) model -> {
+                double failed = 0;
+                for (Fisher fisher : model.getFishers())
+                    if (fisher.getDestinationStrategy() instanceof LogitDestinationStrategy)
+                        failed += ((LogitDestinationStrategy) fisher.getDestinationStrategy()).getFailedDecisions();
+                return failed;
+            },
+            Double.NaN
+        );
+    }
+
     @Override
     public void start(FishState model, Fisher fisher) {
 
@@ -196,29 +321,121 @@ public class LogitDestinationStrategy implements DestinationStrategy {
      * @param fisher the agent making the choie
      */
     public void adapt(FishState state, MersenneTwisterFast random, Fisher fisher) {
-        if (!fisher.isAllowedAtSea())
+        if (aliasTables != null && adaptFromAliasTable(state, random, fisher))
             return;
+        double[][] input = prepareDecision(state, fisher);
+        if (input == null)
+            return;
+        classifier.computeUtilities(input, utilities);
+        completeDecision(state, input, utilities);
 
-        SeaTile destination = null;
-        int numberOfTrials = 0;
-        double[][] input = this.input.getRegressionInput(fisher, state);
+    }
+
+    /**
+     * draw the arm from the home port's alias table plus habit, then a tile from its group
+     *
+     * @return false if this decision needs the full logit (habit lowering utility, no tile, a log to fill...)
+     */
+    private boolean adaptFromAliasTable(FishState state, MersenneTwisterFast random, Fisher fisher) {
+        decisionPending = false;
+        if (!fisher.isAllowedAtSea())
+            return true;
         if (log != null)
-            log.recordInput(input);
-        int armChosen = -1;
-        while (destination == null) {
+            return false;
+        final PortAliasTables.Table table = aliasTables.table(fisher, state, distanceBeta);
+        if (table == null)
+            return false;
+
+        final int arms = switcher.getNumberOfArms();
+        if (habitArms.length < arms) {
+            habitArms = new int[arms];
+            habitUtilities = new double[arms];
+        }
+        int withHabit = 0;
+        for (int arm = 0; arm < arms; arm++) {
+            final SeaTile[] tiles = tileIndex.getCandidates(switcher.getGroup(arm));
+            if (tiles.length == 0)
+                continue;
+            final double utility = habitBeta * habitCovariate.extract(tiles[0], state.getHoursSinceStart(), fisher, state);
+            if (utility < 0)
+                return false;
+            if (utility > 0) {
+                habitArms[withHabit] = arm;
+                habitUtilities[withHabit] = utility;
+                withHabit++;
+            }
+        }
 
-            armChosen = classifier.choose(input, random);
+        final double uniform = decisionStreams == null ?
+            SoftmaxSampler.burlapUniform() :
+            decisionStreams.stream(fisher.getID(), state, DecisionStreams.LOGIT_ARM).nextDouble();
+        final int group = switcher.getGroup(PortAliasTables.draw(table, habitArms, habitUtilities, withHabit, uniform));
+        final SeaTile tile = decisionStreams == null ?
+            tileIndex.sample(group, random, automaticallyAvoidMPA, fisher, state) :
+            tileIndex.sample(
+                group,
+                decisionStreams.stream(fisher.getID(), state, DecisionStreams.LOGIT_TILE),
+                automaticallyAvoidMPA,
+                fisher,
+                state
+            );
+        if (tile == null)
+            return false;
+        delegate.setFavoriteSpot(tile);
+        return true;
+    }
 
+    /**
+     * first half of a decision: builds the regression input (and logs it)
+     *
+     * @param state  the model
+     * @param fisher the agent making the choice
+     * @return the input matrix, or null if the fisher isn't making a choice at all
+     */
+    double[][] prepareDecision(FishState state, Fisher fisher) {
+        decisionPending = false;
+        if (!fisher.isAllowedAtSea())
+            return null;
 
-            destination = this.input.getLastExtraction().get(armChosen);
-            if (destination != null && destination.isLand())
-                destination = null;
-            if (numberOfTrials++ > 100) {
-                Log.warn("Failed to compute any valid logit here, failed to adapt");
-                return;
-            }
+        if (decisionStreams != null)
+            tileStream = decisionStreams.stream(fisher.getID(), state, DecisionStreams.LOGIT_TILE);
+        double[][] input = this.input.getRegressionInput(fisher, state);
+        tileStream = null;
+        if (log != null)
+            log.recordInput(input);
+        return input;
+    }
 
+    /**
+     * second half of a decision: given the utilities computed by the classifier from the input, draw an arm
+     * and set it as the new favorite spot. Arms without a valid tile are masked out so that a single draw is needed.
+     *
+     * @param state     the model
+     * @param input     the input matrix returned by {@link #prepareDecision(FishState, Fisher)}
+     * @param utilities the utility of each arm (see {@link LogisticMultiClassifier#computeUtilities(double[][], double[])})
+     */
+    void completeDecision(FishState state, double[][] input, double[] utilities) {
+
+        //arms whose tile is missing or land get zero probability
+        final List<SeaTile> tiles = this.input.getLastExtraction();
+        int validArms = 0;
+        for (int arm = 0; arm < utilities.length; arm++) {
+            final SeaTile tile = tiles.get(arm);
+            if (tile == null || tile.isLand()) {
+                utilities[arm] = Double.NEGATIVE_INFINITY;
+                maskedArms++;
+            } else
+                validArms++;
         }
+        if (validArms == 0) {
+            failedDecisions++;
+            return;
+        }
+
+        final double uniform = decisionStreams == null ?
+            SoftmaxSampler.burlapUniform() :
+            decisionStreams.stream(fisher.getID(), state, DecisionStreams.LOGIT_ARM).nextDouble();
+        final int armChosen = classifier.sample(utilities, uniform);
         if (log != null)
             log.recordChoice(
                 armChosen,
@@ -226,7 +443,7 @@ public class LogitDestinationStrategy implements DestinationStrategy {
                 state.getDayOfTheYear()
             );
 
-        delegate.setFavoriteSpot(destination);
+        delegate.setFavoriteSpot(tiles.get(armChosen));
 
 
     }
@@ -240,6 +457,27 @@ public class LogitDestinationStrategy implements DestinationStrategy {
         delegate.turnOff(fisher);
     }
 
+    /**
+     * after turning off: forget the fisher, the log and the decision counters and start from a blank memory, so
+     * that this can be started again as if new. The coefficients, covariates and tile index are kept.
+     *
+     * @param model the model
+     * @return false if the strategy still sits in the scheduler queue (it will decide for its old fisher)
+     */
+    @Override
+    public boolean reset(FishState model) {
+        if (decisionPending)
+            return false;
+        started = false;
+        fisher = null;
+        this.model = null;
+        log = null;
+        failedDecisions = 0;
+        maskedArms = 0;
+        memory = new DiscretizedLocationMemory(discretization);
+        return true;
+    }
+
     /**
      * decides where to go.
      *
@@ -252,6 +490,9 @@ public class LogitDestinationStrategy implements DestinationStrategy {
     public SeaTile chooseDestination(
         Fisher fisher, MersenneTwisterFast random, FishState model, Action currentAction
     ) {
+        //if the fleet hasn't taken its decisions yet, do it now rather than go somewhere stale
+        if (decisionPending)
+            scheduler.flush(model);
         return delegate.chooseDestination(fisher, random, model, currentAction);
     }
 
@@ -288,6 +529,15 @@ public class LogitDestinationStrategy implements DestinationStrategy {
         return classifier;
     }
 
+    /**
+     * Getter for property 'coefficients'.
+     *
+     * @return Value for property 'coefficients'.
+     */
+    public LogitCoefficients getCoefficients() {
+        return coefficients;
+    }
+
     /**
      * Getter for property 'delegate'.
      *
@@ -325,6 +575,33 @@ public class LogitDestinationStrategy implements DestinationStrategy {
         return input;
     }
 
+    /**
+     * Getter for property 'tileIndex'.
+     *
+     * @return Value for property 'tileIndex'.
+     */
+    public ValidTileIndex getTileIndex() {
+        return tileIndex;
+    }
+
+    /**
+     * Getter for property 'failedDecisions'.
+     *
+     * @return Value for property 'failedDecisions'.
+     */
+    public long getFailedDecisions() {
+        return failedDecisions;
+    }
+
+    /**
+     * Getter for property 'maskedArms'.
+     *
+     * @return Value for property 'maskedArms'.
+     */
+    public long getMaskedArms() {
+        return maskedArms;
+    }
+
     /**
      * Getter for property 'log'.
      *
@@ -342,4 +619,82 @@ public class LogitDestinationStrategy implements DestinationStrategy {
     public void setLog(LogisticLog log) {
         this.log = log;
     }
+
+    /**
+     * Getter for property 'scheduler'.
+     *
+     * @return Value for property 'scheduler'.
+     */
+    public LogitAdaptationScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Setter for property 'scheduler'. Set it to null to go back to deciding on the spot
+     *
+     * @param scheduler Value to set for property 'scheduler'.
+     */
+    public void setScheduler(LogitAdaptationScheduler scheduler) {
+        Preconditions.checkState(!decisionPending, "Can't change scheduler while a decision is pending");
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Getter for property 'decisionStreams'.
+     *
+     * @return Value for property 'decisionStreams'.
+     */
+    public DecisionStreams getDecisionStreams() {
+        return decisionStreams;
+    }
+
+    /**
+     * Setter for property 'decisionStreams'. Set it to null to go back to the shared randomizers
+     *
+     * @param decisionStreams Value to set for property 'decisionStreams'.
+     */
+    public void setDecisionStreams(DecisionStreams decisionStreams) {
+        this.decisionStreams = decisionStreams;
+    }
+
+    /**
+     * Getter for property 'decisionPending'.
+     *
+     * @return Value for property 'decisionPending'.
+     */
+    public boolean isDecisionPending() {
+        return decisionPending;
+    }
+
+    /**
+     * draw arms from the home port's alias table (static distance) plus habit rather than from the full logit.
+     * Only for the barebones model, where every arm has the same habit and distance betas; decisions the tables
+     * can't take (negative habit utility, a log to record, a group off limits) fall back to the full logit
+     *
+     * @param aliasTables    the fleet's tables, or null to go back to the full logit
+     * @param habitCovariate the habit covariate
+     * @param habitBeta      its coefficient
+     * @param distanceBeta   the coefficient of the distance covariate
+     */
+    public void setAliasTables(
+        PortAliasTables aliasTables, ObservationExtractor habitCovariate, double habitBeta, double distanceBeta
+    ) {
+        this.aliasTables = aliasTables;
+        this.habitCovariate = habitCovariate;
+        this.habitBeta = habitBeta;
+        this.distanceBeta = distanceBeta;
+    }
+
+    /**
+     * Getter for property 'aliasTables'.
+     *
+     * @return Value for property 'aliasTables'.
+     */
+    public PortAliasTables getAliasTables() {
+        return aliasTables;
+    }
+
+    double[] getUtilities() {
+        return utilities;
+    }
 }
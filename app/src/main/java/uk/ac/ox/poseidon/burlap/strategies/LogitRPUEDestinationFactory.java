@@ -46,6 +46,8 @@ public class LogitRPUEDestinationFactory implements AlgorithmFactory<LogitDestin
      */
     private final Locker<String, MapDiscretization> discretizationLocker = new Locker<>();
 
+    private final Locker<String, SimulatedTripCache> simulationLocker = new Locker<>();
+
 
     private AlgorithmFactory<? extends MapDiscretizer> discretizer = new IdentityDiscretizerFactory();
 
@@ -53,7 +55,18 @@ public class LogitRPUEDestinationFactory implements AlgorithmFactory<LogitDestin
     private DoubleParameter profitBeta = new FixedDoubleParameter(1d);
     private boolean automaticallyAvoidMPA = true;
     private boolean automaticallyAvoidWastelands = true;
+    /**
+     * when true runs on an identical map reuse the discretization through DiscretizationCache
+     * (off by default, see DiscretizationCache for why)
+     */
+    private boolean cacheDiscretization = false;
     private DoubleParameter hoursOut = new FixedDoubleParameter(5 * 24d);
+    /**
+     * memory budget of the fleet-wide cache of simulated trips (see SimulatedTripCache); 0 or less (the default)
+     * simulates every time. Off by default: it only pays off when many fishers of a port have equivalent boats,
+     * gear and costs
+     */
+    private int simulatedTripCacheMegabytes = 0;
 
 
     /**
@@ -68,12 +81,9 @@ public class LogitRPUEDestinationFactory implements AlgorithmFactory<LogitDestin
         final MapDiscretization discretization = discretizationLocker.
             presentKey(
                 state.getUniqueID(),
-                () -> {
-                    final MapDiscretizer mapDiscretizer = discretizer.apply(state);
-                    final MapDiscretization toReturn = new MapDiscretization(mapDiscretizer);
-                    toReturn.discretize(state.getMap());
-                    return toReturn;
-                }
+                () -> cacheDiscretization ?
+                    DiscretizationCache.discretize(state, discretizer) :
+                    DiscretizationCache.compute(state, discretizer)
             );
 
 
@@ -90,6 +100,7 @@ public class LogitRPUEDestinationFactory implements AlgorithmFactory<LogitDestin
         //0: revenue
         //1: gas costs
         final ObservationExtractor[][] extractors = buildRPUEExtractors(
+            state,
             numberOfGroups,
             hoursOut.applyAsDouble(state.getRandom())
         );
@@ -113,9 +124,16 @@ public class LogitRPUEDestinationFactory implements AlgorithmFactory<LogitDestin
 
     }
 
-    private ObservationExtractor[][] buildRPUEExtractors(final int numberOfGroups, final double hoursOut) {
+    private ObservationExtractor[][] buildRPUEExtractors(
+        final FishState state, final int numberOfGroups, final double hoursOut
+    ) {
         final ObservationExtractor[] commonExtractor = new ObservationExtractor[1];
         commonExtractor[0] = new SimulatedHourlyProfitExtractor(hoursOut);
+        if (simulatedTripCacheMegabytes > 0)
+            commonExtractor[0] = simulationLocker.presentKey(
+                state.getUniqueID(),
+                () -> new SimulatedTripCache(simulatedTripCacheMegabytes * (1L << 20))
+            ).share("profits_" + hoursOut, commonExtractor[0]);
         final ObservationExtractor[][] extractors = new ObservationExtractor[numberOfGroups][];
         for (int i = 0; i < numberOfGroups; i++)
             extractors[i] = commonExtractor;
@@ -215,4 +233,40 @@ public class LogitRPUEDestinationFactory implements AlgorithmFactory<LogitDestin
     public void setHoursOut(final DoubleParameter hoursOut) {
         this.hoursOut = hoursOut;
     }
+
+    /**
+     * Getter for property 'simulatedTripCacheMegabytes'.
+     *
+     * @return Value for property 'simulatedTripCacheMegabytes'.
+     */
+    public int getSimulatedTripCacheMegabytes() {
+        return simulatedTripCacheMegabytes;
+    }
+
+    /**
+     * Setter for property 'simulatedTripCacheMegabytes'.
+     *
+     * @param simulatedTripCacheMegabytes Value to set for property 'simulatedTripCacheMegabytes'.
+     */
+    public void setSimulatedTripCacheMegabytes(final int simulatedTripCacheMegabytes) {
+        this.simulatedTripCacheMegabytes = simulatedTripCacheMegabytes;
+    }
+
+    /**
+     * Getter for property 'cacheDiscretization'.
+     *
+     * @return Value for property 'cacheDiscretization'.
+     */
+    public boolean isCacheDiscretization() {
+        return cacheDiscretization;
+    }
+
+    /**
+     * Setter for property 'cacheDiscretization'.
+     *
+     * @param cacheDiscretization Value to set for property 'cacheDiscretization'.
+     */
+    public void setCacheDiscretization(final boolean cacheDiscretization) {
+        this.cacheDiscretization = cacheDiscretization;
+    }
 }
@@ -42,7 +42,10 @@ public class LogitWithLaggedExtractorsDestinationStrategy extends LogitDestinati
     private final boolean fleetWide;
 
 
-    private final List<TripLaggedExtractor> extractorsToStart;
+    /**
+     * TripLaggedExtractors to start, or GroupLaggedAverages to feed with this fisher's trips
+     */
+    private final List<? extends ObservationExtractor> extractorsToStart;
 
 
     /**
@@ -65,10 +68,25 @@ public class LogitWithLaggedExtractorsDestinationStrategy extends LogitDestinati
         FavoriteDestinationStrategy delegate, MersenneTwisterFast random, boolean automaticallyAvoidMPA,
         boolean automaticallyAvoidWastelands,
 
-        boolean fleetWide, List<TripLaggedExtractor> extractorsToStart
+        boolean fleetWide, List<? extends ObservationExtractor> extractorsToStart
+    ) {
+        this(betas, covariates, rowNames, discretization, delegate, random, automaticallyAvoidMPA,
+            automaticallyAvoidWastelands, fleetWide, extractorsToStart,
+            new ValidTileIndex(discretization, automaticallyAvoidWastelands)
+        );
+    }
+
+    public LogitWithLaggedExtractorsDestinationStrategy(
+        double[][] betas, ObservationExtractor[][] covariates,
+        List<Integer> rowNames, MapDiscretization discretization,
+        FavoriteDestinationStrategy delegate, MersenneTwisterFast random, boolean automaticallyAvoidMPA,
+        boolean automaticallyAvoidWastelands,
+
+        boolean fleetWide, List<? extends ObservationExtractor> extractorsToStart,
+        ValidTileIndex tileIndex
     ) {
         super(betas, covariates, rowNames, discretization, delegate, random, automaticallyAvoidMPA,
-            automaticallyAvoidWastelands
+            automaticallyAvoidWastelands, tileIndex
         );
         this.fleetWide = fleetWide;
         this.extractorsToStart = extractorsToStart;
@@ -78,7 +96,13 @@ public class LogitWithLaggedExtractorsDestinationStrategy extends LogitDestinati
     @Override
     public void start(FishState model, Fisher fisher) {
         super.start(model, fisher);
-        for (TripLaggedExtractor extractor : extractorsToStart) {
+        for (ObservationExtractor toStart : extractorsToStart) {
+            if (toStart instanceof GroupLaggedAverage) {
+                //fleet-wide or not, it only needs to hear about this fisher's trips
+                ((GroupLaggedAverage) toStart).track(fisher, model);
+                continue;
+            }
+            final TripLaggedExtractor extractor = (TripLaggedExtractor) toStart;
             if (!fleetWide) {
                 Preconditions.checkArgument(
                     extractor.getFisherTracked() == null,
@@ -91,4 +115,27 @@ public class LogitWithLaggedExtractorsDestinationStrategy extends LogitDestinati
 
 
     }
+
+    @Override
+    public void turnOff(Fisher fisher) {
+        super.turnOff(fisher);
+        //the last fisher untracked (the only one, when not fleet-wide) stops the yearly roll-over
+        for (ObservationExtractor extractor : extractorsToStart)
+            if (extractor instanceof GroupLaggedAverage)
+                ((GroupLaggedAverage) extractor).untrack(fisher);
+    }
+
+    /**
+     * only strategies feeding on fleet-wide GroupLaggedAverages can be reused: TripLaggedExtractors are scheduled
+     * when started and can't be stopped, and a per-fisher average has already been turned off
+     */
+    @Override
+    public boolean reset(FishState model) {
+        if (!fleetWide)
+            return false;
+        for (ObservationExtractor extractor : extractorsToStart)
+            if (!(extractor instanceof GroupLaggedAverage))
+                return false;
+        return super.reset(model);
+    }
 }
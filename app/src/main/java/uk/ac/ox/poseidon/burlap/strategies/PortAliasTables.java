@@ -0,0 +1,231 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import com.google.common.base.Preconditions;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.ports.Port;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.oxfish.utility.bandit.BanditSwitch;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * One per model: for each home port, a Vose alias table over the static part of the barebones logit, that is
+ * exp(distance beta x distance from port). The distance of an arm is its average over the tiles a draw from the
+ * group could pick (see {@link ValidTileIndex}), so it depends only on the port and the table is built once per
+ * port and distance beta, then shared by the whole fleet.
+ * <p>
+ * The habit term is the only one that moves. Each decision adds it on top of the table as a mixture (see
+ * {@link #draw(Table, int[], double[], int, double)}): the table is drawn from with probability W/(W+E), where W is
+ * the table's total weight and E the extra weight habit gives the few arms the fisher has been to, so a decision
+ * costs one pass over the habit covariate and an O(1) draw rather than a tile draw, a distance and an exponential per
+ * arm. This is a different model from the default one (which reads the distance off a tile drawn at random inside
+ * each group), so it is opt-in.
+ * <p>
+ * Not thread-safe: decisions stay on the model thread.
+ */
+public class PortAliasTables {
+
+    private final ValidTileIndex tileIndex;
+
+    private final BanditSwitch switcher;
+
+    /**
+     * distance from the fisher's home port to a tile
+     */
+    private final ObservationExtractor distance;
+
+    /**
+     * keyed by home port and distance beta
+     */
+    private final HashMap<List<Object>, Table> tables = new HashMap<>();
+
+    /**
+     * @param tileIndex the valid tiles of each group
+     * @param switcher  arms to groups, as used by the strategies sharing these tables
+     * @param distance  the distance covariate
+     */
+    public PortAliasTables(
+        final ValidTileIndex tileIndex, final BanditSwitch switcher, final ObservationExtractor distance
+    ) {
+        this.tileIndex = tileIndex;
+        this.switcher = switcher;
+        this.distance = distance;
+    }
+
+    /**
+     * the table of the fisher's home port, built the first time anybody from that port asks
+     *
+     * @param fisher       the fisher deciding
+     * @param model        the model
+     * @param distanceBeta the coefficient of the distance covariate
+     * @return the table, or null if no arm has a tile to go to
+     */
+    public Table table(final Fisher fisher, final FishState model, final double distanceBeta) {
+        final List<Object> key = Arrays.asList(fisher.getHomePort(), distanceBeta);
+        if (!tables.containsKey(key))
+            tables.put(key, build(fisher, model, distanceBeta));
+        return tables.get(key);
+    }
+
+    private Table build(final Fisher fisher, final FishState model, final double distanceBeta) {
+        final double[] utilities = new double[switcher.getNumberOfArms()];
+        for (int arm = 0; arm < utilities.length; arm++) {
+            final SeaTile[] tiles = tileIndex.getCandidates(switcher.getGroup(arm));
+            if (tiles.length == 0) {
+                utilities[arm] = Double.NEGATIVE_INFINITY;
+                continue;
+            }
+            double sum = 0;
+            for (final SeaTile tile : tiles)
+                sum += distance.extract(tile, model.getHoursSinceStart(), fisher, model);
+            utilities[arm] = distanceBeta * sum / tiles.length;
+        }
+        return Table.of(utilities);
+    }
+
+    /**
+     * draw an arm from the table plus habit: arm a has probability proportional to
+     * weight(a) x exp(extra utility of a)
+     *
+     * @param table         the static table
+     * @param extraArms     the arms with a non-zero extra utility
+     * @param extra         their extra utility (must be positive)
+     * @param numberOfExtra how many of extraArms to use
+     * @param uniform       a uniform number in [0,1)
+     * @return the arm drawn
+     */
+    public static int draw(
+        final Table table, final int[] extraArms, final double[] extra, final int numberOfExtra, final double uniform
+    ) {
+        double extraWeight = 0;
+        for (int i = 0; i < numberOfExtra; i++)
+            extraWeight += table.weights[extraArms[i]] * Math.expm1(extra[i]);
+        final double scaled = uniform * (table.totalWeight + extraWeight);
+        if (scaled < table.totalWeight)
+            return table.sample(scaled / table.totalWeight);
+        double cumulative = table.totalWeight;
+        for (int i = 0; i < numberOfExtra; i++) {
+            cumulative += table.weights[extraArms[i]] * Math.expm1(extra[i]);
+            if (scaled < cumulative)
+                return extraArms[i];
+        }
+        //rounding: the last arm with any extra weight
+        for (int i = numberOfExtra - 1; i >= 0; i--)
+            if (table.weights[extraArms[i]] > 0)
+                return extraArms[i];
+        return table.sample(0);
+    }
+
+    public int getNumberOfTables() {
+        return tables.size();
+    }
+
+    /**
+     * Vose's alias method over fixed weights: O(arms) to build, O(1) to draw
+     */
+    public static final class Table {
+
+        /**
+         * exp(utility - max utility) of each arm
+         */
+        private final double[] weights;
+
+        private final double totalWeight;
+
+        private final double[] cutoff;
+
+        private final int[] alias;
+
+        private Table(final double[] weights, final double totalWeight) {
+            this.weights = weights;
+            this.totalWeight = totalWeight;
+            final int arms = weights.length;
+            cutoff = new double[arms];
+            alias = new int[arms];
+            final int[] small = new int[arms];
+            final int[] large = new int[arms];
+            int smallSize = 0;
+            int largeSize = 0;
+            for (int i = 0; i < arms; i++) {
+                cutoff[i] = weights[i] / totalWeight * arms;
+                alias[i] = i;
+                if (cutoff[i] < 1)
+                    small[smallSize++] = i;
+                else
+                    large[largeSize++] = i;
+            }
+            while (smallSize > 0 && largeSize > 0) {
+                final int less = small[--smallSize];
+                final int more = large[--largeSize];
+                alias[less] = more;
+                cutoff[more] = (cutoff[more] + cutoff[less]) - 1;
+                if (cutoff[more] < 1)
+                    small[smallSize++] = more;
+                else
+                    large[largeSize++] = more;
+            }
+            //whatever is left is 1 up to rounding errors
+            while (largeSize > 0)
+                cutoff[large[--largeSize]] = 1;
+            while (smallSize > 0) {
+                final int leftover = small[--smallSize];
+                //an arm without weight must never be drawn even if rounding left it here
+                cutoff[leftover] = weights[leftover] > 0 ? 1 : 0;
+            }
+        }
+
+        /**
+         * @param utilities utility of each arm (negative infinity means never draw it)
+         * @return the table, or null if no arm can be drawn
+         */
+        public static Table of(final double[] utilities) {
+            double max = Double.NEGATIVE_INFINITY;
+            for (final double utility : utilities)
+                max = Math.max(max, utility);
+            if (max == Double.NEGATIVE_INFINITY)
+                return null;
+            Preconditions.checkArgument(max < Double.POSITIVE_INFINITY, "Infinite utility");
+            final double[] weights = new double[utilities.length];
+            double total = 0;
+            for (int i = 0; i < utilities.length; i++) {
+                weights[i] = Math.exp(utilities[i] - max);
+                total += weights[i];
+            }
+            return new Table(weights, total);
+        }
+
+        /**
+         * @param uniform a uniform number in [0,1); its integer part (times the arms) picks the column, the rest the coin
+         * @return the arm drawn
+         */
+        public int sample(final double uniform) {
+            final double scaled = uniform * cutoff.length;
+            final int column = Math.min((int) scaled, cutoff.length - 1);
+            return scaled - column < cutoff[column] ? column : alias[column];
+        }
+    }
+}
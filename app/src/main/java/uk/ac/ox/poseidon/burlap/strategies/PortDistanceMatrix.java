@@ -0,0 +1,236 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.vividsolutions.jts.geom.Envelope;
+import uk.ac.ox.oxfish.geography.NauticalMap;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.ports.Port;
+import uk.ac.ox.oxfish.model.FishState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Distance from every port to every tile of the map, computed once per map (with {@link NauticalMap#distance}, so
+ * the numbers are the ones PortDistanceExtractor would compute) and looked up by index afterwards.
+ * <p>
+ * Matrices are keyed on a hash of what the distances depend on: map content, envelope and cell size, the class of
+ * the Distance, port locations and file format version. Distances with the same class but different parameters are
+ * told apart by a few probe distances (corner to corner) that go into the key as well.
+ * Within a JVM, runs on the same map share the matrix on the heap. Only when the system property
+ * {@value #DIRECTORY_PROPERTY} is set is it also written to a file in that directory and memory-mapped from there,
+ * so that runs in other JVMs skip the computation and share the pages; nothing cleans that directory up.
+ */
+public class PortDistanceMatrix {
+
+    public static final String DIRECTORY_PROPERTY = "port.distance.cache.dir";
+
+    private static final int MAGIC = 0x50444D31; // "PDM1"
+
+    /**
+     * bump whenever the file layout (or what goes into the key) changes
+     */
+    static final int VERSION = 3;
+
+    /**
+     * magic, version, ports, width, height
+     */
+    private static final int HEADER_BYTES = 5 * Integer.BYTES;
+
+    /**
+     * matrices by content, shared across runs of this JVM
+     */
+    private static final Cache<String, DoubleBuffer> MATRICES = CacheBuilder.newBuilder()
+        .maximumSize(8)
+        .build();
+
+    /**
+     * one matrix per model, since ports are model objects
+     */
+    private static final Cache<String, PortDistanceMatrix> BY_MODEL = CacheBuilder.newBuilder()
+        .maximumSize(16)
+        .weakValues()
+        .build();
+
+    private final NauticalMap map;
+
+    private final IdentityHashMap<Port, Integer> rows;
+
+    /**
+     * row-major: port, then x * height + y
+     */
+    private final DoubleBuffer distances;
+
+    private final int tilesPerPort;
+
+    private final int height;
+
+    private PortDistanceMatrix(
+        NauticalMap map, IdentityHashMap<Port, Integer> rows, DoubleBuffer distances
+    ) {
+        this.map = map;
+        this.rows = rows;
+        this.distances = distances;
+        this.height = map.getHeight();
+        this.tilesPerPort = map.getWidth() * height;
+    }
+
+    /**
+     * the matrix for this model's map and ports
+     *
+     * @param state the model (already started, so that ports exist)
+     * @return the matrix, shared by every caller for the same model
+     */
+    public static PortDistanceMatrix of(FishState state) {
+        try {
+            return BY_MODEL.get(state.getUniqueID(), () -> build(state.getMap()));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to build the port distance matrix", e.getCause());
+        }
+    }
+
+    private static PortDistanceMatrix build(NauticalMap map) throws ExecutionException {
+        final List<Port> ports = map.getPorts();
+        final IdentityHashMap<Port, Integer> rows = new IdentityHashMap<>();
+        for (Port port : ports)
+            rows.put(port, rows.size());
+        //the tile hash covers the envelope; with the grid size that's the cell size too
+        final Envelope envelope = map.getRasterBathymetry().getMBR();
+        final StringBuilder key = new StringBuilder("v").append(VERSION).append(";")
+            .append(DiscretizationCache.hash(map)).append(";")
+            .append((envelope.getMaxX() - envelope.getMinX()) / map.getWidth()).append(",")
+            .append((envelope.getMaxY() - envelope.getMinY()) / map.getHeight()).append(";")
+            .append(map.getDistance() == null ? null : map.getDistance().getClass().getName());
+        //whatever parameters the distance has, they show in how far apart the corners are
+        final SeaTile origin = map.getSeaTile(0, 0);
+        key.append(";").append(map.distance(origin, map.getSeaTile(map.getWidth() - 1, map.getHeight() - 1)))
+            .append(",").append(map.distance(origin, map.getSeaTile(map.getWidth() - 1, 0)))
+            .append(",").append(map.distance(origin, map.getSeaTile(0, map.getHeight() - 1)));
+        for (Port port : ports)
+            key.append(";").append(port.getLocation().getGridX()).append(",").append(port.getLocation().getGridY());
+        final String hash = Hashing.murmur3_128().hashString(key, StandardCharsets.UTF_8).toString();
+        final DoubleBuffer distances = MATRICES.get(hash, () -> loadOrCompute(hash, map, ports));
+        return new PortDistanceMatrix(map, rows, distances.duplicate());
+    }
+
+    /**
+     * the whole file: header and distances, ready to be read
+     */
+    private static ByteBuffer compute(NauticalMap map, List<Port> ports) {
+        final int width = map.getWidth();
+        final int height = map.getHeight();
+        final ByteBuffer matrix = ByteBuffer.allocate(HEADER_BYTES + ports.size() * width * height * Double.BYTES);
+        matrix.putInt(MAGIC).putInt(VERSION).putInt(ports.size()).putInt(width).putInt(height);
+        for (Port port : ports)
+            for (int x = 0; x < width; x++)
+                for (int y = 0; y < height; y++)
+                    matrix.putDouble(map.distance(port.getLocation(), map.getSeaTile(x, y)));
+        matrix.flip();
+        matrix.position(HEADER_BYTES);
+        return matrix;
+    }
+
+    private static DoubleBuffer loadOrCompute(String hash, NauticalMap map, List<Port> ports) {
+        final int width = map.getWidth();
+        final int height = map.getHeight();
+        final long bytes = HEADER_BYTES + (long) ports.size() * width * height * Double.BYTES;
+        final String directory = System.getProperty(DIRECTORY_PROPERTY);
+        if (directory == null || directory.isEmpty())
+            return compute(map, ports).slice().asDoubleBuffer();
+        Path file = null;
+        try {
+            file = Paths.get(directory).resolve(hash + ".bin");
+            if (Files.exists(file) && Files.size(file) == bytes) {
+                final DoubleBuffer mapped = map(file, ports.size(), width, height);
+                if (mapped != null)
+                    return mapped;
+            }
+        } catch (IOException | InvalidPathException e) {
+            file = null;
+        }
+
+        final ByteBuffer matrix = compute(map, ports);
+
+        if (file != null) {
+            try {
+                Files.createDirectories(file.getParent());
+                //write somewhere else and move, so concurrent runs never map a half-written file
+                final Path temporary = Files.createTempFile(file.getParent(), hash, ".tmp");
+                final ByteBuffer whole = matrix.duplicate();
+                whole.position(0);
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    while (whole.hasRemaining())
+                        channel.write(whole);
+                }
+                try {
+                    Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+                } catch (AtomicMoveNotSupportedException e) {
+                    Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+                final DoubleBuffer mapped = map(file, ports.size(), width, height);
+                if (mapped != null)
+                    return mapped;
+            } catch (IOException e) {
+                //fine, keep it on the heap
+            }
+        }
+        return matrix.slice().asDoubleBuffer();
+    }
+
+    /**
+     * @return the distances in the file, or null if its header doesn't match
+     */
+    private static DoubleBuffer map(Path file, int ports, int width, int height) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION || mapped.getInt() != ports ||
+                mapped.getInt() != width || mapped.getInt() != height)
+                return null;
+            return mapped.slice().asDoubleBuffer();
+        }
+    }
+
+    /**
+     * distance between a port and a tile; ports that weren't on the map when the matrix was built are computed
+     * on the spot
+     */
+    public double distance(Port port, SeaTile tile) {
+        final Integer row = rows.get(port);
+        if (row == null)
+            return map.distance(port.getLocation(), tile);
+        return distances.get(row * tilesPerPort + tile.getGridX() * height + tile.getGridY());
+    }
+
+    public int getNumberOfPorts() {
+        return rows.size();
+    }
+}
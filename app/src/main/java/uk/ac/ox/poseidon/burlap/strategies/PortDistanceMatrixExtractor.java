@@ -0,0 +1,52 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.model.FishState;
+
+/**
+ * Same covariate as PortDistanceExtractor (distance from the fisher's home port to the tile) read from a
+ * {@link PortDistanceMatrix} instead of computed.
+ */
+public class PortDistanceMatrixExtractor implements ScopedObservationExtractor {
+
+    private final PortDistanceMatrix matrix;
+
+    public PortDistanceMatrixExtractor(PortDistanceMatrix matrix) {
+        this.matrix = matrix;
+    }
+
+    @Override
+    public double extract(SeaTile tile, double timeOfObservation, Fisher agent, FishState model) {
+        return matrix.distance(agent.getHomePort(), tile);
+    }
+
+    @Override
+    public CovariateScope getScope() {
+        return CovariateScope.PORT_AND_TILE;
+    }
+
+    public PortDistanceMatrix getMatrix() {
+        return matrix;
+    }
+}
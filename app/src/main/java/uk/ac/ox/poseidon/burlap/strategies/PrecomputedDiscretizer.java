@@ -0,0 +1,69 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import uk.ac.ox.oxfish.geography.NauticalMap;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretizer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A discretizer that doesn't compute anything: it maps groups already computed (as grid coordinates) onto the tiles
+ * of the map it is given. Used by {@link DiscretizationCache} to rebuild a discretization for a new model whose map
+ * is identical to one seen before.
+ */
+public class PrecomputedDiscretizer implements MapDiscretizer {
+
+    /**
+     * for each group the index (x * height + y) of its tiles
+     */
+    private final int[][] groups;
+
+    private final int width;
+
+    private final int height;
+
+    public PrecomputedDiscretizer(final int[][] groups, final int width, final int height) {
+        this.groups = groups;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<SeaTile>[] discretize(final NauticalMap map) {
+        if (map.getWidth() != width || map.getHeight() != height)
+            throw new IllegalArgumentException("Precomputed groups are for a " + width + "x" + height + " map");
+        final List<SeaTile>[] toReturn = new List[groups.length];
+        for (int group = 0; group < groups.length; group++) {
+            toReturn[group] = new ArrayList<>(groups[group].length);
+            for (final int index : groups[group])
+                toReturn[group].add(map.getSeaTile(index / height, index % height));
+        }
+        return toReturn;
+    }
+
+    public int getNumberOfGroups() {
+        return groups.length;
+    }
+}
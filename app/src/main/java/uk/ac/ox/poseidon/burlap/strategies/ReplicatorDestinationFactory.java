@@ -21,7 +21,6 @@
 package uk.ac.ox.poseidon.burlap.strategies;
 
 
-import uk.ac.ox.oxfish.fisher.Fisher;
 import uk.ac.ox.oxfish.fisher.selfanalysis.CashFlowObjective;
 import uk.ac.ox.oxfish.fisher.strategies.destination.DestinationStrategy;
 import uk.ac.ox.oxfish.fisher.strategies.destination.ReplicatorDrivenDestinationStrategy;
@@ -44,6 +43,19 @@ public class ReplicatorDestinationFactory implements AlgorithmFactory<Replicator
     private final Locker<String, StrategyReplicator> replicator = new Locker<>();
     private List<AlgorithmFactory<? extends DestinationStrategy>> options = new LinkedList<>();
     private DoubleParameter inertia = new FixedDoubleParameter(.8);
+    /**
+     * fishers drawing the strategy they already use keep it rather than starting over with a new one; off by default
+     * since it changes the dynamics (a fisher keeps what its strategy learned)
+     */
+    private boolean reuseUnchangedStrategies = false;
+    /**
+     * keep abandoned (resettable) strategies around for the next fisher switching to them
+     */
+    private boolean poolStrategies = false;
+    /**
+     * when true replication draws come from per-fisher counter-based streams (see DecisionStreams)
+     */
+    private boolean decisionStreams = false;
 
     {
         options.add(new BanditDestinationFactory());
@@ -70,6 +82,10 @@ public class ReplicatorDestinationFactory implements AlgorithmFactory<Replicator
                         inertia.applyAsDouble(
                             state.getRandom())
                     );
+                    replicator1.setReuseUnchangedStrategies(reuseUnchangedStrategies);
+                    replicator1.setPoolStrategies(poolStrategies);
+                    if (decisionStreams)
+                        replicator1.setDecisionStreams(DecisionStreams.of(state));
 
                     state.registerStartable(replicator1);
 
@@ -79,15 +95,9 @@ public class ReplicatorDestinationFactory implements AlgorithmFactory<Replicator
                         state.getDailyDataSet().
                             registerGatherer(
                                 "Fishers using strategy " + strategy,
-                                (Gatherer<FishState>) state1 -> {
-                                    double count = 0;
-                                    for (final Fisher fisher : state1.getFishers()) {
-                                        if (((ReplicatorDrivenDestinationStrategy) fisher.getDestinationStrategy()).getStrategyIndex() == finalStrategy)
-                                            count++;
-                                    }
-                                    return count;
-
-                                }, Double.NaN
+                                (Gatherer<FishState>) state1 ->
+                                    (double) replicator1.getMembers(state1)[finalStrategy],
+                                Double.NaN
                             );
                         final int finalStrategy1 = strategy;
                         state.getDailyDataSet().
@@ -106,10 +116,7 @@ public class ReplicatorDestinationFactory implements AlgorithmFactory<Replicator
             );
 
         final int strategy = state.getRandom().nextInt(replicator.getOptions().size());
-        return new ReplicatorDrivenDestinationStrategy(
-            strategy,
-            replicator.getOptions().get(strategy).apply(state)
-        );
+        return replicator.buildStrategy(strategy, state);
 
     }
 
@@ -151,4 +158,58 @@ public class ReplicatorDestinationFactory implements AlgorithmFactory<Replicator
     public void setInertia(final DoubleParameter inertia) {
         this.inertia = inertia;
     }
+
+    /**
+     * Getter for property 'reuseUnchangedStrategies'.
+     *
+     * @return Value for property 'reuseUnchangedStrategies'.
+     */
+    public boolean isReuseUnchangedStrategies() {
+        return reuseUnchangedStrategies;
+    }
+
+    /**
+     * Setter for property 'reuseUnchangedStrategies'.
+     *
+     * @param reuseUnchangedStrategies Value to set for property 'reuseUnchangedStrategies'.
+     */
+    public void setReuseUnchangedStrategies(final boolean reuseUnchangedStrategies) {
+        this.reuseUnchangedStrategies = reuseUnchangedStrategies;
+    }
+
+    /**
+     * Getter for property 'poolStrategies'.
+     *
+     * @return Value for property 'poolStrategies'.
+     */
+    public boolean isPoolStrategies() {
+        return poolStrategies;
+    }
+
+    /**
+     * Setter for property 'poolStrategies'.
+     *
+     * @param poolStrategies Value to set for property 'poolStrategies'.
+     */
+    public void setPoolStrategies(final boolean poolStrategies) {
+        this.poolStrategies = poolStrategies;
+    }
+
+    /**
+     * Getter for property 'decisionStreams'.
+     *
+     * @return Value for property 'decisionStreams'.
+     */
+    public boolean isDecisionStreams() {
+        return decisionStreams;
+    }
+
+    /**
+     * Setter for property 'decisionStreams'.
+     *
+     * @param decisionStreams Value to set for property 'decisionStreams'.
+     */
+    public void setDecisionStreams(final boolean decisionStreams) {
+        this.decisionStreams = decisionStreams;
+    }
 }
@@ -0,0 +1,40 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import uk.ac.ox.oxfish.fisher.strategies.destination.DestinationStrategy;
+import uk.ac.ox.oxfish.model.FishState;
+
+/**
+ * A destination strategy that, once turned off, can be brought back to the state it was built in and started again
+ * (by the same fisher or another one), so that whoever keeps swapping strategies can pool them rather than building
+ * new ones.
+ */
+public interface ResettableDestinationStrategy extends DestinationStrategy {
+
+    /**
+     * forget the fisher this was started with and anything learned since
+     *
+     * @param model the model
+     * @return true if the strategy can now be started again; false if it has to be thrown away
+     */
+    boolean reset(FishState model);
+}
@@ -0,0 +1,36 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+
+/**
+ * An extractor that declares what its value depends on, so that it can be safely shared and cached
+ * by {@link CovariateCache}. Extractors that don't implement this are treated according to
+ * {@link CovariateScope#of(ObservationExtractor)}.
+ */
+public interface ScopedObservationExtractor extends ObservationExtractor {
+
+    /**
+     * @return what the value of this extractor depends on; return {@link CovariateScope#FISHER} if unsure
+     */
+    CovariateScope getScope();
+}
@@ -7,6 +7,7 @@ import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.PortDistanceExtracto
 import uk.ac.ox.oxfish.fisher.log.LogisticLog;
 import uk.ac.ox.oxfish.fisher.log.LogisticLogs;
 import uk.ac.ox.oxfish.fisher.log.TripLaggedExtractor;
+import uk.ac.ox.oxfish.fisher.log.TripRecord;
 import uk.ac.ox.oxfish.fisher.strategies.destination.FavoriteDestinationStrategy;
 import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
 import uk.ac.ox.oxfish.geography.discretization.MapDiscretizer;
@@ -22,6 +23,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.ToDoubleFunction;
 
 /**
  * creates a simple RUM a la Abbot and Wilen (2011) and cognates; with revenue, distance, habit and CPUE as covariates
@@ -37,8 +39,10 @@ public class SimpleRUMDestinationFactory implements AlgorithmFactory<LogitWithLa
     /**
      *
      */
-    private final Locker<String, List<TripLaggedExtractor>> fleetWideLocker = new Locker<>();
+    private final Locker<String, List<ObservationExtractor>> fleetWideLocker = new Locker<>();
     private final Locker<String, LogisticLogs> logLocker = new Locker<>();
+    private final Locker<String, CovariateCache> covariateLocker = new Locker<>();
+    private final Locker<String, ValidTileIndex> tileIndexLocker = new Locker<>();
     protected AlgorithmFactory<? extends MapDiscretizer> discretizer =
         new SquaresMapDiscretizerFactory();
     private DoubleParameter intercept = new FixedDoubleParameter(1);
@@ -57,6 +61,25 @@ public class SimpleRUMDestinationFactory implements AlgorithmFactory<LogitWithLa
 
 
     private boolean logToFile = false;
+    /**
+     * when true intercept and distance are cached and shared by the fleet
+     * (off by default: the scopes of POSEIDON's extractors in CovariateScope are assumed, not verified)
+     */
+    private boolean cacheCovariates = false;
+    /**
+     * when true revenue and CPUE lags are running per-group averages updated at the end of each trip
+     * ({@link GroupLaggedAverage}) rather than TripLaggedExtractors
+     */
+    private boolean incrementalLaggedCovariates = false;
+    /**
+     * when true the distance covariate is read from a precomputed ports x tiles matrix (see PortDistanceMatrix)
+     */
+    private boolean distanceMatrix = false;
+    /**
+     * when true runs on an identical map reuse the discretization through DiscretizationCache
+     * (off by default, see DiscretizationCache for why)
+     */
+    private boolean cacheDiscretization = false;
     private int COUNTER = 0;
 
     {
@@ -76,13 +99,9 @@ public class SimpleRUMDestinationFactory implements AlgorithmFactory<LogitWithLa
 
         //create the discretization
         final MapDiscretization discretization = discretizationLocker.presentKey(
-            state.getUniqueID(), () -> {
-                final MapDiscretizer mapDiscretizer = discretizer.apply(state);
-                final MapDiscretization toReturn = new MapDiscretization(mapDiscretizer);
-                toReturn.discretize(state.getMap());
-                return toReturn;
-
-            }
+            state.getUniqueID(), () -> cacheDiscretization ?
+                DiscretizationCache.discretize(state, discretizer) :
+                DiscretizationCache.compute(state, discretizer)
         );
 
 
@@ -96,7 +115,7 @@ public class SimpleRUMDestinationFactory implements AlgorithmFactory<LogitWithLa
         final double[][] betas = buildBetas(state, areas);
 
         //create observers
-        final Pair<ObservationExtractor[][], List<TripLaggedExtractor>> extractorPair =
+        final Pair<ObservationExtractor[][], List<ObservationExtractor>> extractorPair =
             buildExtractors(state, discretization, areas, betas);
         final ObservationExtractor[][] extractors = extractorPair.getFirst();
 
@@ -110,8 +129,13 @@ public class SimpleRUMDestinationFactory implements AlgorithmFactory<LogitWithLa
                 automaticallyAvoidMPA,
                 automaticallyAvoidWastelands,
                 fleetWide,
-                extractorPair.getSecond()
-
+                extractorPair.getSecond(),
+                tileIndexLocker.presentKey(
+                    state.getUniqueID(), () -> {
+                        LogitDestinationStrategy.registerFailedDecisionsGatherer(state);
+                        return new ValidTileIndex(discretization, automaticallyAvoidWastelands);
+                    }
+                )
             );
 
         if (logToFile) {
@@ -172,21 +196,28 @@ public class SimpleRUMDestinationFactory implements AlgorithmFactory<LogitWithLa
     }
 
 
-    protected Pair<ObservationExtractor[][], List<TripLaggedExtractor>> buildExtractors(
+    protected Pair<ObservationExtractor[][], List<ObservationExtractor>> buildExtractors(
         final FishState state, final MapDiscretization discretization, final int areas, final double[][] betas
     ) {
         //get the extractors
         final ObservationExtractor[][] extractors = new ObservationExtractor[betas.length][];
         final ObservationExtractor[] commonExtractor = new ObservationExtractor[4 + betaCPUE.size()];
         commonExtractor[0] = new InterceptExtractor(1);
-        commonExtractor[1] = new PortDistanceExtractor();
+        commonExtractor[1] = distanceMatrix ?
+            new PortDistanceMatrixExtractor(PortDistanceMatrix.of(state)) :
+            new PortDistanceExtractor();
+        if (cacheCovariates) {
+            final CovariateCache cache = covariateLocker.presentKey(state.getUniqueID(), CovariateCache::new);
+            commonExtractor[0] = cache.share("intercept", "1", commonExtractor[0]);
+            commonExtractor[1] = cache.share("distance", commonExtractor[1]);
+        }
         commonExtractor[2] = new PeriodHabitContinuousExtractor(
             discretization,
             365
         );
-        final List<TripLaggedExtractor> otherExtractors = getTripLaggedExtractors(discretization, state);
+        final List<ObservationExtractor> otherExtractors = getTripLaggedExtractors(discretization, state);
         int i = 3;
-        for (final TripLaggedExtractor laggedExtractor : otherExtractors) {
+        for (final ObservationExtractor laggedExtractor : otherExtractors) {
             commonExtractor[i] = laggedExtractor;
             i++;
         }
@@ -199,7 +230,7 @@ public class SimpleRUMDestinationFactory implements AlgorithmFactory<LogitWithLa
     }
 
 
-    private List<TripLaggedExtractor> getTripLaggedExtractors(
+    private List<ObservationExtractor> getTripLaggedExtractors(
         final MapDiscretization discretization,
         final FishState state
     ) {
@@ -213,31 +244,28 @@ public class SimpleRUMDestinationFactory implements AlgorithmFactory<LogitWithLa
 
     }
 
-    private List<TripLaggedExtractor> buildTripLaggedExtractors(
+    private List<ObservationExtractor> buildTripLaggedExtractors(
         final MapDiscretization discretization,
         final FishState state
     ) {
         //the first is always the revenue
-        final List<TripLaggedExtractor> extractors = new LinkedList<>();
+        final List<ToDoubleFunction<TripRecord>> observations = new LinkedList<>();
         //earnings/hr
-        extractors.add(
-            new TripLaggedExtractor(
-                tripRecord -> tripRecord.getEarnings() / tripRecord.getDurationInHours()
-                ,
-                discretization
-            )
-        );
+        observations.add(tripRecord -> tripRecord.getEarnings() / tripRecord.getDurationInHours());
         for (final Map.Entry<String, DoubleParameter> cpueBeta : betaCPUE.entrySet()) {
-            extractors.add(
-                new TripLaggedExtractor(
-                    tripRecord -> tripRecord.getTotalCPUE()[
-                        state.getBiology().getSpecie(cpueBeta.getKey()).getIndex()]
-                    ,
-                    discretization
-                )
+            observations.add(
+                tripRecord -> tripRecord.getTotalCPUE()[
+                    state.getBiology().getSpecie(cpueBeta.getKey()).getIndex()]
             );
         }
 
+        final List<ObservationExtractor> extractors = new LinkedList<>();
+        for (final ToDoubleFunction<TripRecord> observation : observations)
+            extractors.add(
+                incrementalLaggedCovariates ?
+                    new GroupLaggedAverage(observation, discretization) :
+                    new TripLaggedExtractor(observation::applyAsDouble, discretization)
+            );
         return extractors;
 
 
@@ -315,4 +343,46 @@ public class SimpleRUMDestinationFactory implements AlgorithmFactory<LogitWithLa
     public void setLogToFile(final boolean logToFile) {
         this.logToFile = logToFile;
     }
+
+    public boolean isCacheCovariates() {
+        return cacheCovariates;
+    }
+
+    public void setCacheCovariates(final boolean cacheCovariates) {
+        this.cacheCovariates = cacheCovariates;
+    }
+
+    public boolean isIncrementalLaggedCovariates() {
+        return incrementalLaggedCovariates;
+    }
+
+    public void setIncrementalLaggedCovariates(final boolean incrementalLaggedCovariates) {
+        this.incrementalLaggedCovariates = incrementalLaggedCovariates;
+    }
+
+    public boolean isDistanceMatrix() {
+        return distanceMatrix;
+    }
+
+    public void setDistanceMatrix(final boolean distanceMatrix) {
+        this.distanceMatrix = distanceMatrix;
+    }
+
+    /**
+     * Getter for property 'cacheDiscretization'.
+     *
+     * @return Value for property 'cacheDiscretization'.
+     */
+    public boolean isCacheDiscretization() {
+        return cacheDiscretization;
+    }
+
+    /**
+     * Setter for property 'cacheDiscretization'.
+     *
+     * @param cacheDiscretization Value to set for property 'cacheDiscretization'.
+     */
+    public void setCacheDiscretization(final boolean cacheDiscretization) {
+        this.cacheDiscretization = cacheDiscretization;
+    }
 }
@@ -0,0 +1,303 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import com.google.common.base.Preconditions;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.equipment.Boat;
+import uk.ac.ox.oxfish.fisher.equipment.gear.Gear;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+import uk.ac.ox.oxfish.fisher.selfanalysis.profit.Cost;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.ports.Port;
+import uk.ac.ox.oxfish.model.FishState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+
+/**
+ * One per model: remembers the results of simulated trips (SimulatedHourlyCost/Revenue/ProfitExtractor) for the
+ * rest of the day, so that fishers of the same class asking about the same tile get the answer without simulating
+ * again. Fishers are of the same class when they share home port and hold size, have an equivalent gear
+ * ({@link Gear#isSame(Gear)}), boats with the same speed, engine efficiency and tank, and additional trip costs of
+ * the same classes with the same parameters. Costs don't expose their parameters, so they are read off
+ * {@link Cost#expectedAdditionalCosts} for an hour out, an hour of effort and a km travelled; that is exact for
+ * the usual linear costs.
+ * <p>
+ * Results are kept in a primitive open-addressing table keyed by (extractor, class, tile) and dropped when the day
+ * changes. The table never grows past its memory budget: once full, new results are computed but not stored.
+ * Not thread-safe: extraction stays on the model thread.
+ */
+public class SimulatedTripCache {
+
+    /**
+     * a long key and a double value per entry, at a load factor of about 1/2
+     */
+    private static final int BYTES_PER_ENTRY = 2 * (Long.BYTES + Double.BYTES);
+
+    private static final long EMPTY = -1;
+
+    private final long maxEntries;
+
+    private long[] keys = new long[0];
+
+    private double[] values = new double[0];
+
+    private int entries = 0;
+
+    private int day = Integer.MIN_VALUE;
+
+    private final LinkedHashMap<String, ObservationExtractor> shared = new LinkedHashMap<>();
+
+    /**
+     * last class assigned to each fisher, with what it was based on
+     */
+    private final IdentityHashMap<Fisher, FisherClass> classified = new IdentityHashMap<>();
+
+    private final ArrayList<FisherClass> classes = new ArrayList<>();
+
+    private long hits = 0;
+
+    private long misses = 0;
+
+    private long rejected = 0;
+
+    /**
+     * @param memoryBudgetInBytes how much memory the stored results can take at most
+     */
+    public SimulatedTripCache(long memoryBudgetInBytes) {
+        Preconditions.checkArgument(memoryBudgetInBytes > 0);
+        this.maxEntries = memoryBudgetInBytes / BYTES_PER_ENTRY;
+    }
+
+    /**
+     * the cached version of a trip-simulating extractor. The first extractor registered under a name is the one
+     * that gets evaluated; later ones are assumed to simulate the same thing (so put max hours out in the name)
+     *
+     * @param name      what the extractor computes
+     * @param simulator the extractor simulating trips
+     * @return the cached extractor, shared by everybody asking for this name
+     */
+    public ObservationExtractor share(String name, ObservationExtractor simulator) {
+        return shared.computeIfAbsent(name, key -> {
+            Preconditions.checkState(shared.size() < 256, "Too many extractors for one cache");
+            final int id = shared.size();
+            return (tile, timeOfObservation, agent, model) ->
+                get(id, simulator, tile, timeOfObservation, agent, model);
+        });
+    }
+
+    private double get(
+        int extractor, ObservationExtractor simulator,
+        SeaTile tile, double timeOfObservation, Fisher agent, FishState model
+    ) {
+        if (model.getDay() != day) {
+            day = model.getDay();
+            if (entries > 0) {
+                Arrays.fill(keys, EMPTY);
+                entries = 0;
+            }
+        }
+        final long key = ((long) extractor << 56) | ((long) classOf(agent) << 32) |
+            (tile.getGridX() * model.getMap().getHeight() + tile.getGridY());
+
+        final int mask = keys.length - 1;
+        int slot = -1;
+        if (keys.length > 0) {
+            slot = slot(key, mask);
+            while (keys[slot] != EMPTY) {
+                if (keys[slot] == key) {
+                    hits++;
+                    return values[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+        misses++;
+        final double value = simulator.extract(tile, timeOfObservation, agent, model);
+        if (entries + 1 > maxEntries) {
+            rejected++;
+            return value;
+        }
+        if ((entries + 1) * 2 > keys.length) {
+            grow();
+            slot = slot(key, keys.length - 1);
+            while (keys[slot] != EMPTY)
+                slot = (slot + 1) & (keys.length - 1);
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        entries++;
+        return value;
+    }
+
+    private static int slot(long key, int mask) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void grow() {
+        final long[] oldKeys = keys;
+        final double[] oldValues = values;
+        keys = new long[Math.max(16, oldKeys.length * 2)];
+        values = new double[keys.length];
+        Arrays.fill(keys, EMPTY);
+        final int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != EMPTY) {
+                int slot = slot(oldKeys[i], mask);
+                while (keys[slot] != EMPTY)
+                    slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+    }
+
+    /**
+     * the class of this fisher, reassigned if its port, boat, gear or costs changed since the last time
+     */
+    private int classOf(Fisher fisher) {
+        final FisherClass last = classified.get(fisher);
+        if (last != null && last.stillDescribes(fisher))
+            return last.id;
+        final FisherClass current = new FisherClass(fisher, -1);
+        for (FisherClass known : classes)
+            if (known.sameAs(current)) {
+                classified.put(fisher, new FisherClass(fisher, known.id));
+                return known.id;
+            }
+        Preconditions.checkState(classes.size() < 1 << 24, "Too many fisher classes");
+        final FisherClass created = new FisherClass(fisher, classes.size());
+        classes.add(created);
+        classified.put(fisher, created);
+        return created.id;
+    }
+
+    /**
+     * Getter for property 'hits'.
+     *
+     * @return Value for property 'hits'.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Getter for property 'misses'.
+     *
+     * @return Value for property 'misses'.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * how many results were not stored because the budget was used up
+     *
+     * @return Value for property 'rejected'.
+     */
+    public long getRejected() {
+        return rejected;
+    }
+
+    public double getHitRate() {
+        return hits + misses == 0 ? Double.NaN : hits / (double) (hits + misses);
+    }
+
+    public int getNumberOfFisherClasses() {
+        return classes.size();
+    }
+
+    private static class FisherClass {
+
+        private final int id;
+        private final Port port;
+        private final Gear gear;
+        private final double hold;
+        private final double speed;
+        private final double efficiency;
+        private final double tank;
+        /**
+         * the cost objects themselves, to tell quickly that a fisher didn't change
+         */
+        private final Cost[] costs;
+        private final Class<?>[] costTypes;
+        /**
+         * per cost: expected additional costs of an hour out, an hour of effort and a km travelled
+         */
+        private final double[] costProbes;
+
+        private FisherClass(Fisher fisher, int id) {
+            this.id = id;
+            this.port = fisher.getHomePort();
+            this.gear = fisher.getGear();
+            this.hold = fisher.getMaximumHold();
+            final Boat boat = fisher.getBoat();
+            this.speed = boat.getSpeedInKph();
+            this.efficiency = boat.getEngine().getEfficiencyLitersPerKm();
+            this.tank = boat.getFuelCapacityInLiters();
+            this.costs = fisher.getAdditionalTripCosts().toArray(new Cost[0]);
+            this.costTypes = new Class<?>[costs.length];
+            this.costProbes = new double[costs.length * 3];
+            for (int i = 0; i < costs.length; i++) {
+                costTypes[i] = costs[i].getClass();
+                costProbes[i * 3] = costs[i].expectedAdditionalCosts(fisher, 1, 0, 0);
+                costProbes[i * 3 + 1] = costs[i].expectedAdditionalCosts(fisher, 0, 1, 0);
+                costProbes[i * 3 + 2] = costs[i].expectedAdditionalCosts(fisher, 0, 0, 1);
+            }
+        }
+
+        /**
+         * true if nothing this class was built from changed: same gear and cost objects, same port, hold and boat
+         * numbers
+         */
+        private boolean stillDescribes(Fisher fisher) {
+            if (gear != fisher.getGear() || port != fisher.getHomePort() || hold != fisher.getMaximumHold())
+                return false;
+            final Boat boat = fisher.getBoat();
+            if (speed != boat.getSpeedInKph() || tank != boat.getFuelCapacityInLiters() ||
+                efficiency != boat.getEngine().getEfficiencyLitersPerKm())
+                return false;
+            final Collection<Cost> current = fisher.getAdditionalTripCosts();
+            if (costs.length != current.size())
+                return false;
+            int i = 0;
+            for (Cost cost : current)
+                if (costs[i++] != cost)
+                    return false;
+            return true;
+        }
+
+        private boolean sameAs(FisherClass other) {
+            return port == other.port &&
+                hold == other.hold &&
+                speed == other.speed &&
+                efficiency == other.efficiency &&
+                tank == other.tank &&
+                Arrays.equals(costTypes, other.costTypes) &&
+                Arrays.equals(costProbes, other.costProbes) &&
+                (gear == other.gear || gear.isSame(other.gear));
+        }
+    }
+}
@@ -20,7 +20,6 @@
 
 package uk.ac.ox.poseidon.burlap.strategies;
 
-import burlap.datastructures.BoltzmannDistribution;
 import ec.util.MersenneTwisterFast;
 import uk.ac.ox.oxfish.utility.bandit.BanditAlgorithm;
 import uk.ac.ox.oxfish.utility.bandit.BanditAverage;
@@ -33,11 +32,28 @@ import java.util.function.Function;
  */
 public class SoftmaxBanditAlgorithm implements BanditAlgorithm {
 
+    /**
+     * scratch engines for the static draws, one per thread so that the static helpers stay allocation-free
+     */
+    private static final ThreadLocal<SoftmaxSampler> SAMPLERS = ThreadLocal.withInitial(SoftmaxSampler::new);
+    private static final ThreadLocal<double[][]> PREFERENCES = ThreadLocal.withInitial(() -> new double[1][0]);
+
     private final BanditAverage averages;
 
+    private final SoftmaxSampler sampler = new SoftmaxSampler();
+
+    private final double[] preferences;
+
 
     private double temperature;
     private double decay;
+    /**
+     * when not null arms are drawn from this algorithm's own streams (keyed by streamId and the number of choices
+     * made so far) rather than BURLAP's shared randomizer
+     */
+    private DecisionStreams decisionStreams;
+    private long streamId;
+    private long choices = 0;
 
     public SoftmaxBanditAlgorithm(
         BanditAverage averages,
@@ -47,6 +63,7 @@ public class SoftmaxBanditAlgorithm implements BanditAlgorithm {
         this.averages = averages;
         this.temperature = temp;
         this.decay = decay;
+        this.preferences = new double[averages.getNumberOfArms()];
 
     }
 
@@ -84,36 +101,116 @@ public class SoftmaxBanditAlgorithm implements BanditAlgorithm {
         double temperature
     ) {
 
-        double[] preferences = new double[numberOfArms];
-        for (int i = 0; i < preferences.length; i++) {
+        double[] preferences = preferenceBuffer(numberOfArms);
+        for (int i = 0; i < numberOfArms; i++)
             preferences[i] = expectedReturnOfArm.apply(i);
+
+        return drawFromSoftmax(random, preferences, numberOfArms, temperature);
+
+    }
+
+    /**
+     * like {@link #drawFromSoftmax(MersenneTwisterFast, int, Function)} but with the uniform number given
+     * (say, from a {@link DecisionStreams.Stream}) rather than drawn from BURLAP's shared randomizer
+     *
+     * @param uniform             a uniform number in [0,1)
+     * @param numberOfArms        the number of arms to choose from
+     * @param expectedReturnOfArm a function returning the expected return associated with a particular arm
+     * @return the index of the arm to pick
+     */
+    public static Integer drawFromSoftmax(
+        double uniform,
+        int numberOfArms,
+        Function<Integer, Double> expectedReturnOfArm
+    ) {
+        double[] preferences = preferenceBuffer(numberOfArms);
+        for (int i = 0; i < numberOfArms; i++)
+            preferences[i] = expectedReturnOfArm.apply(i);
+        return drawFromSoftmax(uniform, preferences, numberOfArms, 1d);
+    }
+
+    /**
+     * primitive version of the softmax draw: no boxing and no allocation.
+     * Non-finite preferences are treated as 0 (non-sampled areas) and overwritten in the array.
+     *
+     * @param random       randomizer (kept for symmetry; the uniform is drawn exactly as BURLAP's BoltzmannDistribution does)
+     * @param preferences  the expected return of each arm
+     * @param numberOfArms how many arms (the array may be longer)
+     * @param temperature  a number that can add stochasticity to the draw
+     * @return the index of the arm to pick
+     */
+    public static int drawFromSoftmax(
+        MersenneTwisterFast random,
+        double[] preferences,
+        int numberOfArms,
+        double temperature
+    ) {
+        return drawFromSoftmax(SoftmaxSampler.burlapUniform(), preferences, numberOfArms, temperature);
+
+    }
+
+    /**
+     * primitive softmax draw with the uniform number given.
+     * Non-finite preferences are treated as 0 (non-sampled areas) and overwritten in the array.
+     *
+     * @param uniform      a uniform number in [0,1)
+     * @param preferences  the expected return of each arm
+     * @param numberOfArms how many arms (the array may be longer)
+     * @param temperature  a number that can add stochasticity to the draw
+     * @return the index of the arm to pick
+     */
+    public static int drawFromSoftmax(
+        double uniform,
+        double[] preferences,
+        int numberOfArms,
+        double temperature
+    ) {
+        for (int i = 0; i < numberOfArms; i++)
             if (!Double.isFinite(preferences[i]))
                 preferences[i] = 0; //non-sampled areas default preference is 0
-        }
-        BoltzmannDistribution distribution = new BoltzmannDistribution(preferences, temperature);
 
-        return distribution.sample();
+        return SAMPLERS.get().sample(preferences, numberOfArms, temperature, uniform);
 
     }
 
     public static double[] getProbabilities(
         int numberOfArms, Function<Integer, Double> expectedReturnOfArm, double temperature
     ) {
-        double[] preferences = new double[numberOfArms];
-        for (int i = 0; i < preferences.length; i++)
+        double[] preferences = preferenceBuffer(numberOfArms);
+        for (int i = 0; i < numberOfArms; i++)
             preferences[i] = expectedReturnOfArm.apply(i);
-        BoltzmannDistribution distribution = new BoltzmannDistribution(preferences, temperature);
+        double[] probabilities = new double[numberOfArms];
+        System.arraycopy(
+            SAMPLERS.get().computeProbabilities(preferences, numberOfArms, temperature),
+            0, probabilities, 0, numberOfArms
+        );
+        return probabilities;
+    }
 
-        return distribution.getProbabilities();
+    /**
+     * per-thread preference scratch space of at least the given size
+     */
+    private static double[] preferenceBuffer(int numberOfArms) {
+        double[][] holder = PREFERENCES.get();
+        if (holder[0].length < numberOfArms)
+            holder[0] = new double[numberOfArms];
+        return holder[0];
     }
 
     @Override
     public int chooseArm(MersenneTwisterFast random) {
 
 
-        return drawFromSoftmax(random, averages.getNumberOfArms(),
-            averages::getAverage, temperature
-        );
+        for (int i = 0; i < preferences.length; i++) {
+            preferences[i] = averages.getAverage(i);
+            if (!Double.isFinite(preferences[i]))
+                preferences[i] = 0; //non-sampled areas default preference is 0
+        }
+        final double uniform = decisionStreams == null ?
+            SoftmaxSampler.burlapUniform() :
+            decisionStreams.uniform(streamId, choices, DecisionStreams.BANDIT, 0);
+        choices++;
+        return sampler.sample(preferences, preferences.length, temperature, uniform);
 
 
     }
@@ -134,4 +231,15 @@ public class SoftmaxBanditAlgorithm implements BanditAlgorithm {
     public int getNumberOfObservations(int arm) {
         return averages.getNumberOfObservations(arm);
     }
+
+    /**
+     * draw arms from counter-based streams from now on
+     *
+     * @param decisionStreams the streams (null to go back to the shared randomizer)
+     * @param streamId        stable id of this algorithm among those sharing the streams (the fisher's, usually)
+     */
+    public void setDecisionStreams(DecisionStreams decisionStreams, long streamId) {
+        this.decisionStreams = decisionStreams;
+        this.streamId = streamId;
+    }
 }
@@ -22,11 +22,14 @@ package uk.ac.ox.poseidon.burlap.strategies;
 
 import uk.ac.ox.oxfish.model.FishState;
 import uk.ac.ox.oxfish.utility.AlgorithmFactory;
+import uk.ac.ox.oxfish.utility.Locker;
 import uk.ac.ox.oxfish.utility.bandit.BanditAverage;
 import uk.ac.ox.oxfish.utility.bandit.factory.BanditSupplier;
 import uk.ac.ox.oxfish.utility.parameters.DoubleParameter;
 import uk.ac.ox.oxfish.utility.parameters.FixedDoubleParameter;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Created by carrknight on 11/11/16.
  */
@@ -38,6 +41,18 @@ public class SoftmaxBanditFactory implements
 
     private DoubleParameter temperatureDecay = new FixedDoubleParameter(.98d);
 
+    /**
+     * when true each algorithm draws from its own counter-based stream, numbered in the order the algorithms are
+     * built in the model (see DecisionStreams)
+     */
+    private boolean decisionStreams = false;
+
+    /**
+     * how many algorithms were given a stream in this model so far; kept across suppliers since each fisher
+     * usually gets its own
+     */
+    private final Locker<String, AtomicLong> builtLocker = new Locker<>();
+
 
     /**
      * Applies this function to the given argument.
@@ -47,14 +62,19 @@ public class SoftmaxBanditFactory implements
      */
     @Override
     public BanditSupplier apply(FishState state) {
+        final DecisionStreams streams = decisionStreams ? DecisionStreams.of(state) : null;
+        final AtomicLong built = builtLocker.presentKey(state.getUniqueID(), AtomicLong::new);
         return new BanditSupplier() {
             @Override
             public SoftmaxBanditAlgorithm apply(BanditAverage banditAverage) {
-                return new SoftmaxBanditAlgorithm(
+                final SoftmaxBanditAlgorithm algorithm = new SoftmaxBanditAlgorithm(
                     banditAverage,
                     initialTemperature.applyAsDouble(state.getRandom()),
                     temperatureDecay.applyAsDouble(state.getRandom())
                 );
+                if (streams != null)
+                    algorithm.setDecisionStreams(streams, built.getAndIncrement());
+                return algorithm;
             }
         };
     }
@@ -94,4 +114,22 @@ public class SoftmaxBanditFactory implements
     public void setTemperatureDecay(DoubleParameter temperatureDecay) {
         this.temperatureDecay = temperatureDecay;
     }
+
+    /**
+     * Getter for property 'decisionStreams'.
+     *
+     * @return Value for property 'decisionStreams'.
+     */
+    public boolean isDecisionStreams() {
+        return decisionStreams;
+    }
+
+    /**
+     * Setter for property 'decisionStreams'.
+     *
+     * @param decisionStreams Value to set for property 'decisionStreams'.
+     */
+    public void setDecisionStreams(boolean decisionStreams) {
+        this.decisionStreams = decisionStreams;
+    }
 }
@@ -0,0 +1,130 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import burlap.debugtools.RandomFactory;
+
+/**
+ * Primitive softmax engine: turns an array of preferences into probabilities (numerically stable log-sum-exp)
+ * and draws an index from them. The probability buffer is kept between calls so that the hot path doesn't allocate.
+ * <p>
+ * The arithmetic mirrors BURLAP's BoltzmannDistribution step by step, so given the same uniform number it
+ * picks the same arm. Not thread-safe: keep one per strategy (or per thread).
+ */
+public class SoftmaxSampler {
+
+
+    /**
+     * scratch space, grows when needed and is never shrunk
+     */
+    private double[] probabilities = new double[0];
+
+    /**
+     * the uniform number BoltzmannDistribution would have used to sample;
+     * use this to keep draws identical to the old BURLAP path
+     *
+     * @return a uniform number in [0,1)
+     */
+    public static double burlapUniform() {
+        return RandomFactory.getMapped(0).nextDouble();
+    }
+
+    /**
+     * log(sum(exp(x))) computed by factoring out the maximum so that nothing overflows
+     *
+     * @param values the values
+     * @param length only the first length values are used
+     * @return the log-sum-exp, or -infinity if length is 0
+     */
+    public static double logSumExp(double[] values, int length) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < length; i++)
+            max = Math.max(max, values[i]);
+        if (max == Double.NEGATIVE_INFINITY)
+            return max;
+        double sum = 0;
+        for (int i = 0; i < length; i++)
+            sum += Math.exp(values[i] - max);
+        return max + Math.log(sum);
+    }
+
+    /**
+     * inverse-CDF draw: returns the first index whose cumulative probability exceeds the uniform
+     *
+     * @param probabilities the probabilities (should sum to 1)
+     * @param numberOfArms  only the first numberOfArms probabilities are used
+     * @param uniform       a uniform number in [0,1)
+     * @return the index drawn
+     */
+    public static int drawFromProbabilities(double[] probabilities, int numberOfArms, double uniform) {
+        double cumulative = 0;
+        for (int i = 0; i < numberOfArms; i++) {
+            cumulative += probabilities[i];
+            if (uniform < cumulative)
+                return i;
+        }
+        throw new IllegalStateException("Error in sample; softmax distribution did not sum to 1");
+    }
+
+    /**
+     * compute softmax probabilities of the first numberOfArms preferences
+     *
+     * @param preferences  the preference of each arm (left untouched)
+     * @param numberOfArms how many preferences to use
+     * @param temperature  higher temperature, flatter probabilities
+     * @return the probabilities; this is the internal buffer, valid until the next call and possibly longer than numberOfArms
+     */
+    public double[] computeProbabilities(double[] preferences, int numberOfArms, double temperature) {
+        if (probabilities.length < numberOfArms)
+            probabilities = new double[numberOfArms];
+
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numberOfArms; i++) {
+            probabilities[i] = preferences[i] / temperature;
+            max = Math.max(max, probabilities[i]);
+        }
+        double sum = 0;
+        for (int i = 0; i < numberOfArms; i++)
+            sum += Math.exp(probabilities[i] - max);
+        final double logSum = Math.log(sum);
+        for (int i = 0; i < numberOfArms; i++)
+            probabilities[i] = Math.exp(probabilities[i] - max - logSum);
+
+        return probabilities;
+    }
+
+    /**
+     * compute the softmax and draw from it
+     *
+     * @param preferences  the preference of each arm
+     * @param numberOfArms how many preferences to use
+     * @param temperature  higher temperature, flatter probabilities
+     * @param uniform      a uniform number in [0,1)
+     * @return the arm drawn
+     */
+    public int sample(double[] preferences, int numberOfArms, double temperature, double uniform) {
+        return drawFromProbabilities(
+            computeProbabilities(preferences, numberOfArms, temperature),
+            numberOfArms,
+            uniform
+        );
+    }
+}
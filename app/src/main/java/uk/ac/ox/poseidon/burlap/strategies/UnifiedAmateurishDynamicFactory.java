@@ -25,6 +25,7 @@ import uk.ac.ox.oxfish.fisher.log.TripRecord;
 import uk.ac.ox.oxfish.geography.SeaTile;
 import uk.ac.ox.oxfish.model.FishState;
 import uk.ac.ox.oxfish.model.FishStateDailyTimeSeries;
+import uk.ac.ox.oxfish.model.Startable;
 import uk.ac.ox.oxfish.model.data.Gatherer;
 import uk.ac.ox.oxfish.model.data.collectors.DataColumn;
 import uk.ac.ox.oxfish.utility.AlgorithmFactory;
@@ -33,6 +34,7 @@ import uk.ac.ox.oxfish.utility.adaptation.Sensor;
 import uk.ac.ox.oxfish.utility.parameters.DoubleParameter;
 import uk.ac.ox.oxfish.utility.parameters.FixedDoubleParameter;
 
+import java.lang.ref.WeakReference;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Set;
@@ -47,11 +49,24 @@ public class UnifiedAmateurishDynamicFactory implements AlgorithmFactory<Amateur
 
 
     private static final UnifiedAmateurishDynamicFactory instance = new UnifiedAmateurishDynamicFactory();
+    /**
+     * the strategy of each run: removed when the run is turned off (see {@link RunRegistration}), the weak keys only
+     * catch models that are dropped without ever finishing. Guarded by the factory since runs in a sweep can share the JVM.
+     */
     private final WeakHashMap<FishState, AmateurishDynamicStrategy> instances = new WeakHashMap<>();
     private DoubleParameter discountRate = new FixedDoubleParameter(0);
     private DoubleParameter noiseRate = new FixedDoubleParameter(.02);
     private DoubleParameter learningRate = new FixedDoubleParameter(.00025);
     private DoubleParameter explorationSize = new FixedDoubleParameter(5);
+    /**
+     * when true departure decisions draw from per-fisher counter-based streams (see DecisionStreams)
+     */
+    private boolean decisionStreams = false;
+    /**
+     * when positive the shared program learns in averaged minibatches of this size (and at the end of each day)
+     * rather than at every decision
+     */
+    private int minibatchSize = 0;
 
     private UnifiedAmateurishDynamicFactory() {
     }
@@ -83,10 +98,12 @@ public class UnifiedAmateurishDynamicFactory implements AlgorithmFactory<Amateur
      * @return the function result
      */
     @Override
-    public AmateurishDynamicStrategy apply(final FishState state) {
+    public synchronized AmateurishDynamicStrategy apply(final FishState state) {
 
         AmateurishDynamicStrategy strategy = instances.get(state);
         if (strategy == null) {
+            //the sensors must not keep the model alive, or the weak keys would never let go of it
+            final WeakReference<FishState> stateReference = new WeakReference<>(state);
             strategy = new AmateurishDynamicStrategy(
                 learningRate.applyAsDouble(state.getRandom()),
                 noiseRate.applyAsDouble(state.getRandom()),
@@ -118,7 +135,10 @@ public class UnifiedAmateurishDynamicFactory implements AlgorithmFactory<Amateur
                     @Override
                     public Double scan(final Fisher fisher) {
 
-                        final double average = state.getLatestDailyObservation(
+                        final FishState model = stateReference.get();
+                        if (model == null)
+                            return 0d;
+                        final double average = model.getLatestDailyObservation(
                             FishStateDailyTimeSeries.AVERAGE_LAST_TRIP_HOURLY_PROFITS);
                         //get last profits (to compare)
                         final double lastProfits = fisher.getLastFinishedTrip() == null ? Double.NaN : fisher.getLastFinishedTrip()
@@ -189,7 +209,11 @@ public class UnifiedAmateurishDynamicFactory implements AlgorithmFactory<Amateur
                 }
 
             );
+            if (decisionStreams)
+                strategy.setDecisionStreams(DecisionStreams.of(state));
+            strategy.setMinibatchSize(minibatchSize);
             instances.put(state, strategy);
+            state.registerStartable(new RunRegistration(state));
 
             final Set<String> columns = strategy.getActionsTaken().getValidCounters();
             final AmateurishDynamicStrategy finalStrategy = strategy;
@@ -219,6 +243,15 @@ public class UnifiedAmateurishDynamicFactory implements AlgorithmFactory<Amateur
 
     }
 
+    /**
+     * Getter for the number of runs whose strategy is still registered.
+     *
+     * @return Value for the number of runs whose strategy is still registered.
+     */
+    public synchronized int getRegisteredRuns() {
+        return instances.size();
+    }
+
     /**
      * Getter for property 'noiseRate'.
      *
@@ -290,4 +323,67 @@ public class UnifiedAmateurishDynamicFactory implements AlgorithmFactory<Amateur
     public void setDiscountRate(final DoubleParameter discountRate) {
         this.discountRate = discountRate;
     }
+
+    /**
+     * Getter for property 'decisionStreams'.
+     *
+     * @return Value for property 'decisionStreams'.
+     */
+    public boolean isDecisionStreams() {
+        return decisionStreams;
+    }
+
+    /**
+     * Setter for property 'decisionStreams'.
+     *
+     * @param decisionStreams Value to set for property 'decisionStreams'.
+     */
+    public void setDecisionStreams(final boolean decisionStreams) {
+        this.decisionStreams = decisionStreams;
+    }
+
+    /**
+     * Getter for property 'minibatchSize'.
+     *
+     * @return Value for property 'minibatchSize'.
+     */
+    public int getMinibatchSize() {
+        return minibatchSize;
+    }
+
+    /**
+     * Setter for property 'minibatchSize'.
+     *
+     * @param minibatchSize Value to set for property 'minibatchSize'.
+     */
+    public void setMinibatchSize(final int minibatchSize) {
+        this.minibatchSize = minibatchSize;
+    }
+
+    /**
+     * registered with the model when its strategy is built: once the run is over the strategy (with its counter
+     * and explorer) is dropped from the singleton, so long sweeps don't keep every past run in the heap
+     */
+    private static class RunRegistration implements Startable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FishState state;
+
+        private RunRegistration(final FishState state) {
+            this.state = state;
+        }
+
+        @Override
+        public void start(final FishState model) {
+        }
+
+        @Override
+        public void turnOff() {
+            final UnifiedAmateurishDynamicFactory factory = getInstance();
+            synchronized (factory) {
+                factory.instances.remove(state);
+            }
+        }
+    }
 }
@@ -0,0 +1,191 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap.strategies;
+
+import ec.util.MersenneTwisterFast;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
+import uk.ac.ox.oxfish.model.FishState;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * For each group of a discretization, the sea tiles a fisher could be sent to. Land (and, if asked, wastelands) is
+ * filtered out once at construction, so that a draw never lands on them.
+ * <p>
+ * Where the fisher is allowed to fish is still up to its regulations, checked on the tile drawn. Tiles are redrawn
+ * up to {@link #MAX_ATTEMPTS} times (as FishStateUtilities.getValidSeatileFromGroup does); if all of those fail
+ * the group is scanned and the tile is drawn from the allowed ones, so the tile picked is always uniform over the
+ * tiles the fisher may fish in. Can be shared by all the strategies using the same discretization.
+ */
+public class ValidTileIndex {
+
+    /**
+     * draws before falling back to listing the allowed tiles
+     */
+    public static final int MAX_ATTEMPTS = 50;
+
+    private final MapDiscretization discretization;
+
+    private final boolean avoidWastelands;
+
+    /**
+     * per group: all the tiles that are neither land nor (optionally) wastelands
+     */
+    private final SeaTile[][] candidates;
+
+    /**
+     * scratch space for the fallback: the allowed tiles of the group being sampled
+     */
+    private SeaTile[] allowed = new SeaTile[0];
+
+    private long regulationFallbacks = 0;
+
+    public ValidTileIndex(final MapDiscretization discretization, final boolean avoidWastelands) {
+        this.discretization = discretization;
+        this.avoidWastelands = avoidWastelands;
+        final int groups = discretization.getNumberOfGroups();
+        candidates = new SeaTile[groups][];
+        final ArrayList<SeaTile> valid = new ArrayList<>();
+        for (int group = 0; group < groups; group++) {
+            valid.clear();
+            final List<SeaTile> tiles = discretization.getGroup(group);
+            if (tiles != null)
+                for (final SeaTile tile : tiles)
+                    if (!tile.isLand() && (!avoidWastelands || tile.isFishingEvenPossibleHere()))
+                        valid.add(tile);
+            candidates[group] = valid.toArray(new SeaTile[valid.size()]);
+        }
+    }
+
+    /**
+     * pick a tile from the group
+     *
+     * @param group     the group index
+     * @param random    randomizer
+     * @param avoidMPA  when true, only tiles the fisher is allowed to fish in are returned
+     * @param fisher    the fisher going there (can be null if avoidMPA is false)
+     * @param model     the model
+     * @return a tile, or null if the group has none the fisher can go to
+     */
+    public SeaTile sample(
+        final int group, final MersenneTwisterFast random,
+        final boolean avoidMPA, final Fisher fisher, final FishState model
+    ) {
+        return sample(group, random::nextInt, avoidMPA, fisher, model);
+    }
+
+    /**
+     * pick a tile from the group, drawing from a decision stream rather than a shared randomizer
+     *
+     * @param group    the group index
+     * @param stream   the stream of this decision
+     * @param avoidMPA when true, only tiles the fisher is allowed to fish in are returned
+     * @param fisher   the fisher going there (can be null if avoidMPA is false)
+     * @param model    the model
+     * @return a tile, or null if the group has none the fisher can go to
+     */
+    public SeaTile sample(
+        final int group, final DecisionStreams.Stream stream,
+        final boolean avoidMPA, final Fisher fisher, final FishState model
+    ) {
+        return sample(group, stream::nextInt, avoidMPA, fisher, model);
+    }
+
+    /**
+     * @param draw given n, a uniform integer in [0,n)
+     */
+    private SeaTile sample(
+        final int group, final IntUnaryOperator draw,
+        final boolean avoidMPA, final Fisher fisher, final FishState model
+    ) {
+        final SeaTile[] pool = candidates[group];
+        if (pool.length == 0)
+            return null;
+        if (!avoidMPA || fisher == null)
+            return pool[draw.applyAsInt(pool.length)];
+
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            final SeaTile tile = pool[draw.applyAsInt(pool.length)];
+            if (fisher.isAllowedToFishHere(tile, model))
+                return tile;
+        }
+
+        //most of the group is off limits: draw from the tiles that aren't
+        regulationFallbacks++;
+        if (allowed.length < pool.length)
+            allowed = new SeaTile[pool.length];
+        int size = 0;
+        for (final SeaTile tile : pool)
+            if (fisher.isAllowedToFishHere(tile, model))
+                allowed[size++] = tile;
+        final SeaTile tile = size == 0 ? null : allowed[draw.applyAsInt(size)];
+        Arrays.fill(allowed, 0, size, null);
+        return tile;
+    }
+
+    /**
+     * @param group the group index
+     * @return true if the group has at least one tile that isn't land or (when avoiding them) wasteland
+     */
+    public boolean hasCandidates(final int group) {
+        return candidates[group].length > 0;
+    }
+
+    /**
+     * @param group the group index
+     * @return the tiles a draw from this group picks from (not a copy: don't modify it)
+     */
+    SeaTile[] getCandidates(final int group) {
+        return candidates[group];
+    }
+
+    /**
+     * Getter for property 'discretization'.
+     *
+     * @return Value for property 'discretization'.
+     */
+    public MapDiscretization getDiscretization() {
+        return discretization;
+    }
+
+    /**
+     * Getter for property 'avoidWastelands'.
+     *
+     * @return Value for property 'avoidWastelands'.
+     */
+    public boolean isAvoidWastelands() {
+        return avoidWastelands;
+    }
+
+    /**
+     * Getter for property 'regulationFallbacks'.
+     *
+     * @return Value for property 'regulationFallbacks'.
+     */
+    public long getRegulationFallbacks() {
+        return regulationFallbacks;
+    }
+}
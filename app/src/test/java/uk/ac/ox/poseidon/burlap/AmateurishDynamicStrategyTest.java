@@ -0,0 +1,278 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import ec.util.MersenneTwisterFast;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import sim.engine.Steppable;
+import sim.engine.Stoppable;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.log.TripRecord;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.oxfish.model.StepOrder;
+import uk.ac.ox.oxfish.utility.adaptation.Sensor;
+import uk.ac.ox.oxfish.utility.dynapro.AmateurishApproximateDynamicProgram;
+import uk.ac.ox.poseidon.burlap.strategies.AmateurishDynamicStrategy;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AmateurishDynamicStrategyTest {
+
+    private static final int EXPLOIT = 1;
+
+    private static final int STAY_HOME = 3;
+
+    private static final double LEARNING_RATE = .1;
+
+    private static final double DISCOUNT_RATE = .9;
+
+    /**
+     * always takes the "random" action it is told to, so that decisions can be scripted
+     */
+    private static class ScriptedRandom extends MersenneTwisterFast {
+
+        private int action;
+
+        private ScriptedRandom() {
+            super(0);
+        }
+
+        @Override
+        public boolean nextBoolean(double probability) {
+            return true;
+        }
+
+        @Override
+        public int nextInt(int n) {
+            return action;
+        }
+    }
+
+    /**
+     * the learning rule as it was when the strategy kept its memory in HashMaps keyed by fisher. When batched the
+     * updates wait for {@link #flush()}: as long as no action gets two samples in a batch, applying them one after
+     * the other is the same as the minibatch step
+     */
+    private static class HashMapReference {
+
+        private final AmateurishApproximateDynamicProgram program =
+            new AmateurishApproximateDynamicProgram(4, 2, LEARNING_RATE);
+        private final HashMap<Fisher, double[]> previousFeatures = new HashMap<>();
+        private final HashMap<Fisher, Integer> previousActions = new HashMap<>();
+        private final boolean batched;
+        private final List<Runnable> pending = new ArrayList<>();
+
+        private HashMapReference(boolean batched) {
+            this.batched = batched;
+        }
+
+        private boolean decide(Fisher fisher, double[] features, int action) {
+            final double currentValue = program.judgeAction(action, features);
+            final double[] oldFeatures = previousFeatures.get(fisher);
+            if (oldFeatures != null) {
+                final int previousAction = previousActions.get(fisher);
+                final double reward = previousAction == STAY_HOME ? 0 :
+                    fisher.getLastFinishedTrip().getProfitPerHour(true);
+                final double observation = reward + DISCOUNT_RATE * currentValue;
+                if (batched)
+                    pending.add(() -> program.updateAction(previousAction, observation, oldFeatures));
+                else
+                    program.updateAction(previousAction, observation, oldFeatures);
+            }
+            previousFeatures.put(fisher, features);
+            previousActions.put(fisher, action);
+            return action != STAY_HOME;
+        }
+
+        private void flush() {
+            pending.forEach(Runnable::run);
+            pending.clear();
+        }
+    }
+
+    static Fisher fisher(int id, double profitPerHour) {
+        final Fisher fisher = mock(Fisher.class);
+        when(fisher.getID()).thenReturn(id);
+        final TripRecord trip = mock(TripRecord.class);
+        when(trip.getProfitPerHour(true)).thenReturn(profitPerHour);
+        when(fisher.getLastFinishedTrip()).thenReturn(trip);
+        return fisher;
+    }
+
+    /**
+     * an intercept and a feature that changes at every decision
+     */
+    @SuppressWarnings("unchecked")
+    static AmateurishDynamicStrategy strategy(FishState state, MersenneTwisterFast random, int[] clock) {
+        final Sensor<Fisher, Double> intercept = fisher -> 1d;
+        final Sensor<Fisher, Double> time = fisher -> fisher.getID() + clock[0] / 10d;
+        return new AmateurishDynamicStrategy(
+            LEARNING_RATE, 1, state.getMap(), random, 5, DISCOUNT_RATE, intercept, time);
+    }
+
+    private static void assertSameParameters(HashMapReference reference, AmateurishDynamicStrategy strategy) {
+        final double[][] expected = reference.program.getLinearParameters();
+        for (int action = 0; action < expected.length; action++)
+            assertArrayEquals(expected[action], strategy.getLinearParameters()[action], 1e-10);
+    }
+
+    /**
+     * one decision, by the strategy and the reference, checking they agree
+     */
+    private static void decide(
+        AmateurishDynamicStrategy strategy, HashMapReference reference,
+        Fisher fisher, int action, FishState state, ScriptedRandom random, int[] clock
+    ) {
+        clock[0]++;
+        random.action = action;
+        final double[] features = {1, fisher.getID() + clock[0] / 10d};
+        assertEquals(
+            reference.decide(fisher, features, action),
+            strategy.shouldFisherLeavePort(fisher, state, random)
+        );
+        assertSameParameters(reference, strategy);
+    }
+
+    @Test
+    public void slotsDecideLikeTheHashMaps() throws Exception {
+        replay(0);
+    }
+
+    @Test
+    public void batchOfOneIsTheProgramUpdate() throws Exception {
+        replay(1);
+    }
+
+    private static void replay(int minibatchSize) {
+
+        final FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        final ScriptedRandom random = new ScriptedRandom();
+        final int[] clock = {0};
+        final AmateurishDynamicStrategy strategy = strategy(state, random, clock);
+        strategy.setMinibatchSize(minibatchSize);
+        final HashMapReference reference = new HashMapReference(false);
+
+        final Fisher first = fisher(0, 3);
+        final Fisher second = fisher(1, -2);
+        final Fisher third = fisher(2, 5);
+        strategy.start(state, first);
+        strategy.start(state, second);
+
+        //who decides, in order; -1 turns the first fisher off, -2 starts the third, -3 restarts the first
+        final int[] script = {0, 1, 0, 1, 1, -1, -2, 2, 1, 2, -3, 0, 2, 1, 0, 0};
+        final Fisher[] fishers = {first, second, third};
+        for (final int step : script) {
+            if (step == -1)
+                strategy.turnOff(first);
+            else if (step == -2)
+                //takes the slot the first fisher gave back, but none of its memory
+                strategy.start(state, third);
+            else if (step == -3)
+                strategy.start(state, first);
+            else
+                decide(strategy, reference, fishers[step], (clock[0] + 1) % 3 == 0 ? STAY_HOME : EXPLOIT,
+                    state, random, clock);
+        }
+    }
+
+    @Test
+    public void minibatchIsAppliedAtTheEndOfTheDay() throws Exception {
+
+        final FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        final Stoppable stoppable = mock(Stoppable.class);
+        when(state.scheduleEveryDay(any(), eq(StepOrder.AFTER_DATA))).thenReturn(stoppable);
+        final ScriptedRandom random = new ScriptedRandom();
+        final int[] clock = {0};
+        final AmateurishDynamicStrategy strategy = strategy(state, random, clock);
+        strategy.setMinibatchSize(100);
+        final HashMapReference reference = new HashMapReference(true);
+
+        final Fisher first = fisher(0, 3);
+        final Fisher second = fisher(1, -2);
+        strategy.start(state, first);
+        strategy.start(state, second);
+        final ArgumentCaptor<Steppable> endOfDay = ArgumentCaptor.forClass(Steppable.class);
+        verify(state).scheduleEveryDay(endOfDay.capture(), eq(StepOrder.AFTER_DATA));
+
+        //each day both fishers learn from their previous decision, one action each
+        decide(strategy, reference, first, EXPLOIT, state, random, clock);
+        decide(strategy, reference, second, STAY_HOME, state, random, clock);
+        for (int day = 0; day < 2; day++) {
+            decide(strategy, reference, first, day == 0 ? STAY_HOME : EXPLOIT, state, random, clock);
+            decide(strategy, reference, second, day == 0 ? EXPLOIT : STAY_HOME, state, random, clock);
+            //nothing learned until the day is over
+            assertEquals(2, reference.pending.size());
+            endOfDay.getValue().step(state);
+            reference.flush();
+            assertSameParameters(reference, strategy);
+        }
+        assertTrue(strategy.getLinearParameters()[EXPLOIT][0] != 0);
+        assertTrue(strategy.getLinearParameters()[STAY_HOME][0] != 0);
+    }
+
+    @Test
+    public void lastFisherOutAppliesTheMinibatch() throws Exception {
+
+        final FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        final Stoppable stoppable = mock(Stoppable.class);
+        when(state.scheduleEveryDay(any(), eq(StepOrder.AFTER_DATA))).thenReturn(stoppable);
+        final ScriptedRandom random = new ScriptedRandom();
+        final int[] clock = {0};
+        final AmateurishDynamicStrategy strategy = strategy(state, random, clock);
+        strategy.setMinibatchSize(100);
+        final HashMapReference reference = new HashMapReference(true);
+
+        final Fisher first = fisher(0, 3);
+        final Fisher second = fisher(1, -2);
+        strategy.start(state, first);
+        strategy.start(state, second);
+        decide(strategy, reference, first, EXPLOIT, state, random, clock);
+        decide(strategy, reference, second, STAY_HOME, state, random, clock);
+        decide(strategy, reference, first, STAY_HOME, state, random, clock);
+        decide(strategy, reference, second, EXPLOIT, state, random, clock);
+        assertEquals(2, reference.pending.size());
+
+        //somebody is still out: keep waiting for the end of the day
+        strategy.turnOff(first);
+        assertSameParameters(reference, strategy);
+        verify(stoppable, never()).stop();
+
+        //the last one out flushes and stops the daily step
+        strategy.turnOff(second);
+        reference.flush();
+        assertSameParameters(reference, strategy);
+        assertTrue(strategy.getLinearParameters()[EXPLOIT][0] != 0);
+        verify(stoppable).stop();
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.poseidon.burlap.logbook.AsyncLogbookSink;
+import uk.ac.ox.poseidon.burlap.logbook.SpooledLogisticLogs;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class AsyncLogbookSinkTest {
+
+
+    @Test
+    public void asyncWriterKeepsOrderAndLosesNothing() throws Exception {
+
+        final String[] names = {"x", "intercept"};
+        final SpooledLogisticLogs direct = new SpooledLogisticLogs(names, 1 << 12);
+        final SpooledLogisticLogs behindRing = new SpooledLogisticLogs(names, 1 << 12);
+        //tiny ring: the simulation thread will have to wait for the writer
+        final AsyncLogbookSink async = new AsyncLogbookSink(behindRing, 3);
+        assertEquals(4, async.getCapacity());
+        behindRing.setFeeder(async);
+
+        final double[][] x = new double[3][2];
+        for (int trip = 0; trip < 5000; trip++) {
+            for (int option = 0; option < x.length; option++) {
+                x[option][0] = trip + option;
+                x[option][1] = 1;
+            }
+            direct.record(trip % 7, trip / 7, trip / 365, trip % 365, trip % 3, x);
+            //the ring copies the input, so reusing the array is fine
+            async.record(trip % 7, trip / 7, trip / 365, trip % 365, trip % 3, x);
+        }
+
+        //reading drains the writer first
+        assertEquals(direct.composeFileContents(), behindRing.composeFileContents());
+        assertEquals(5000, behindRing.getRecords());
+        async.close();
+        direct.close();
+        behindRing.close();
+    }
+
+    @Test
+    public void theEndOfTheSimulationStopsTheWriter() throws Exception {
+
+        final SpooledLogisticLogs logs = new SpooledLogisticLogs(new String[]{"x"}, 1 << 12);
+        final AsyncLogbookSink async = new AsyncLogbookSink(logs, 2);
+        logs.setFeeder(async);
+        for (int trip = 0; trip < 10; trip++)
+            async.record(0, trip, 0, trip, 0, new double[][]{{trip}});
+
+        //nobody turns the logbook off: the end of the run alone drains it and stops the thread
+        logs.reactToEndOfSimulation(mock(FishState.class));
+        assertEquals(10, logs.getRecords());
+        try {
+            async.record(0, 10, 0, 10, 0, new double[][]{{10}});
+            fail("the writer should be closed");
+        } catch (IllegalStateException e) {
+            //expected
+        }
+        logs.close();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.poseidon.burlap.logbook.ColumnarLogbookReader;
+import uk.ac.ox.poseidon.burlap.logbook.ColumnarLogbookWriter;
+import uk.ac.ox.poseidon.burlap.logbook.SpooledLogisticLogs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class ColumnarLogbookWriterTest {
+
+
+    @Test
+    public void columnarRoundTripsToTheSameCsv() throws Exception {
+
+        final String[] names = {"x", "intercept"};
+        final SpooledLogisticLogs spooled = new SpooledLogisticLogs(names, 1 << 16);
+        final ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        //small blocks so that the dictionary and the deltas cross block boundaries
+        final ColumnarLogbookWriter columnar = new ColumnarLogbookWriter(binary, names, 3);
+
+        for (int trip = 0; trip < 20; trip++) {
+            //ids are not small, years roll over so days go back to 0
+            final int id = 1000 + trip % 3;
+            final double[][] x = new double[1 + trip % 4][];
+            for (int option = 0; option < x.length; option++)
+                x[option] = new double[]{trip * 0.1 - option, 1};
+            spooled.record(id, trip / 3, trip / 7, (trip * 50) % 365, trip % x.length, x);
+            columnar.record(id, trip / 3, trip / 7, (trip * 50) % 365, trip % x.length, x);
+        }
+        columnar.close();
+        assertEquals(20, columnar.getChoices());
+
+        final StringWriter csv = new StringWriter();
+        ColumnarLogbookReader.toCsv(new ByteArrayInputStream(binary.toByteArray()), csv);
+        assertEquals(spooled.composeFileContents(), csv.toString());
+        spooled.close();
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.poseidon.burlap.logbook.ColumnarLogbookReader;
+import uk.ac.ox.poseidon.burlap.logbook.ColumnarLogisticLogs;
+import uk.ac.ox.poseidon.burlap.logbook.StreamingLogisticLog;
+
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class ColumnarLogisticLogsTest {
+
+
+    @Test
+    public void refusesChoicesOnceClosed() throws Exception {
+
+        final Path binary = Files.createTempFile("logbook", ".bin");
+        try {
+            final ColumnarLogisticLogs logs = new ColumnarLogisticLogs(new String[]{"x"}, binary, 4);
+            final StreamingLogisticLog log = logs.newLog(0);
+            for (int trip = 0; trip < 10; trip++) {
+                log.recordInput(new double[][]{{trip}, {-trip}});
+                log.recordChoice(trip % 2, 0, trip);
+            }
+            final String manifest = logs.composeFileContents();
+            assertTrue(manifest.contains("choices,10"));
+            final long size = Files.size(binary);
+
+            //a straggler must not reopen (and truncate) the finished file
+            log.recordInput(new double[][]{{100}, {100}});
+            try {
+                log.recordChoice(0, 1, 0);
+                fail("recorded into a closed logbook");
+            } catch (IllegalStateException e) {
+                //expected
+            }
+            assertEquals(10, logs.getChoices());
+            assertEquals(size, Files.size(binary));
+            final StringWriter csv = new StringWriter();
+            try (InputStream input = Files.newInputStream(binary)) {
+                ColumnarLogbookReader.toCsv(input, csv);
+            }
+            assertEquals(1 + 10 * 2, csv.toString().split("\n").length);
+        } finally {
+            Files.deleteIfExists(binary);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import ec.util.MersenneTwisterFast;
+import org.junit.Test;
+import uk.ac.ox.poseidon.burlap.logbook.ColumnarLogisticLogs;
+import uk.ac.ox.poseidon.burlap.logbook.SpooledLogisticLogs;
+import uk.ac.ox.poseidon.burlap.logbook.StreamingLogisticLog;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConditionalLogitEstimatorTest {
+
+
+    @Test
+    public void recoversBetasFromLogbook() throws Exception {
+
+        //simulate a logbook the way LogisticLogs writes it
+        final double[] trueBetas = {1.5, -.8};
+        final MersenneTwisterFast random = new MersenneTwisterFast(0);
+        final StringBuilder logbook = new StringBuilder("id,episode,year,day,option,choice,intercept,x,y\n");
+        final double[][] options = new double[5][2];
+        final double[] probabilities = new double[5];
+        for (int episode = 0; episode < 3000; episode++) {
+            double sum = 0;
+            for (int option = 0; option < 5; option++) {
+                options[option][0] = random.nextGaussian();
+                options[option][1] = random.nextGaussian();
+                probabilities[option] = Math.exp(trueBetas[0] * options[option][0] + trueBetas[1] * options[option][1]);
+                sum += probabilities[option];
+            }
+            double draw = random.nextDouble() * sum;
+            int chosen = 0;
+            while (draw > probabilities[chosen]) {
+                draw -= probabilities[chosen];
+                chosen++;
+            }
+            for (int option = 0; option < 5; option++)
+                logbook.append(episode % 7).append(",").append(episode).append(",0,1,").append(option).append(",")
+                    .append(option == chosen ? "yes" : "no").append(",1.0,")
+                    .append(options[option][0]).append(",").append(options[option][1]).append("\n");
+        }
+        //last choice never made
+        logbook.append("0,3000,0,2,0,no,1.0,0.0,0.0\n");
+
+        final ConditionalLogitData data = ConditionalLogitData.fromLogisticLogs(logbook.toString());
+        assertEquals(3000, data.getNumberOfSituations());
+
+        final ConditionalLogitEstimator.Fit fit = new ConditionalLogitEstimator().estimate(data);
+        assertTrue(fit.isConverged());
+        //the intercept isn't identified
+        assertTrue(Double.isNaN(fit.getBetas()[0]));
+        assertEquals(1.5, fit.getBetas()[1], 3 * fit.getStandardErrors()[1]);
+        assertEquals(-.8, fit.getBetas()[2], 3 * fit.getStandardErrors()[2]);
+        assertTrue(fit.getStandardErrors()[1] > 0 && fit.getStandardErrors()[1] < .1);
+    }
+
+    /**
+     * a few fishers choosing among 3 options for a while; the last input of each fisher is left without a choice
+     */
+    private static void fillLogbook(StreamingLogisticLog[] logs) {
+        final MersenneTwisterFast random = new MersenneTwisterFast(0);
+        for (int day = 0; day < 50; day++)
+            for (final StreamingLogisticLog log : logs) {
+                final double[][] input = new double[3][2];
+                for (final double[] row : input) {
+                    row[0] = 1;
+                    row[1] = random.nextGaussian();
+                }
+                log.recordInput(input);
+                if (day < 49)
+                    log.recordChoice(random.nextInt(3), 0, day);
+            }
+    }
+
+    private static void assertSameData(ConditionalLogitData expected, ConditionalLogitData actual) {
+        assertArrayEquals(expected.getCovariateNames(), actual.getCovariateNames());
+        assertArrayEquals(expected.getSituationStarts(), actual.getSituationStarts());
+        assertArrayEquals(expected.getChosenRows(), actual.getChosenRows());
+        assertEquals(expected.getRows().length, actual.getRows().length);
+        for (int i = 0; i < expected.getRows().length; i++)
+            assertArrayEquals(expected.getRows()[i], actual.getRows()[i], 0);
+    }
+
+    @Test
+    public void readsStreamedAndBinaryLogbooksWithoutCsv() throws Exception {
+
+        final String[] names = {"intercept", "x"};
+        final SpooledLogisticLogs spooled = new SpooledLogisticLogs(names, 256);
+        fillLogbook(new StreamingLogisticLog[]{spooled.newLog(0), spooled.newLog(1), spooled.newLog(2)});
+        final ConditionalLogitData direct = ConditionalLogitData.fromLogbook(spooled);
+        assertEquals(3 * 49, direct.getNumberOfSituations());
+        assertTrue(spooled.getSpilledBytes() > 0);
+        assertSameData(ConditionalLogitData.fromLogisticLogs(spooled.composeFileContents()), direct);
+        spooled.close();
+
+        final Path binary = Files.createTempFile("logbook", ".bin");
+        try {
+            final ColumnarLogisticLogs columnar = new ColumnarLogisticLogs(names, binary, 16);
+            fillLogbook(new StreamingLogisticLog[]{columnar.newLog(0), columnar.newLog(1), columnar.newLog(2)});
+            assertSameData(direct, ConditionalLogitData.fromLogbook(columnar));
+        } finally {
+            Files.deleteIfExists(binary);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import ec.util.MersenneTwisterFast;
+import org.junit.Test;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.poseidon.burlap.logbook.CounterfactualCovariateService;
+import uk.ac.ox.poseidon.burlap.strategies.CovariateScope;
+import uk.ac.ox.poseidon.burlap.strategies.ScopedObservationExtractor;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class CounterfactualCovariateServiceTest {
+
+    private static SeaTile tile(boolean land, boolean wasteland) {
+        final SeaTile tile = mock(SeaTile.class);
+        when(tile.isLand()).thenReturn(land);
+        when(tile.isFishingEvenPossibleHere()).thenReturn(!land && !wasteland);
+        return tile;
+    }
+
+    private static Fisher fisherBanning(Set<SeaTile> banned) {
+        final Fisher fisher = mock(Fisher.class);
+        when(fisher.isAllowedToFishHere(any(), any())).thenAnswer(
+            invocation -> !banned.contains(invocation.getArguments()[0]));
+        return fisher;
+    }
+
+    @Test
+    public void counterfactualsAreOnlyWhereFishersCanGo() throws Exception {
+
+        //group 0: two land tiles, two wastelands, two tiles in an MPA and two good ones; group 1: land and good
+        final SeaTile good0 = tile(false, false);
+        final SeaTile good1 = tile(false, false);
+        final SeaTile mpa0 = tile(false, false);
+        final SeaTile mpa1 = tile(false, false);
+        final SeaTile good2 = tile(false, false);
+        final List<SeaTile> group0 = Arrays.asList(
+            tile(true, false), tile(true, false), tile(false, true), tile(false, true), mpa0, mpa1, good0, good1);
+        final List<SeaTile> group1 = Arrays.asList(tile(true, false), good2);
+        final MapDiscretization discretization = mock(MapDiscretization.class);
+        when(discretization.getNumberOfGroups()).thenReturn(2);
+        when(discretization.isValid(anyInt())).thenReturn(true);
+        when(discretization.getGroup(0)).thenReturn(group0);
+        when(discretization.getGroup(1)).thenReturn(group1);
+
+        final List<SeaTile> seen = new ArrayList<>();
+        final ObservationExtractor recorder = (tile, time, fisher, model) -> {
+            seen.add(tile);
+            return 1;
+        };
+        final CounterfactualCovariateService service = new CounterfactualCovariateService(
+            discretization, new ObservationExtractor[]{recorder}, new MersenneTwisterFast(0));
+
+        final FishState model = mock(FishState.class);
+        final int[] day = {0};
+        when(model.getDay()).thenAnswer(invocation -> day[0]);
+
+        final Fisher fisher = fisherBanning(new HashSet<>(Arrays.asList(mpa0, mpa1)));
+        //this one is also kept out of good0
+        final Fisher stricter = fisherBanning(new HashSet<>(Arrays.asList(mpa0, mpa1, good0)));
+
+        final Set<SeaTile> stricterSaw = new HashSet<>();
+        for (day[0] = 0; day[0] < 300; day[0]++) {
+            assertEquals(2, service.getInput(fisher, model).length);
+            final int before = seen.size();
+            assertEquals(2, service.getInput(stricter, model).length);
+            stricterSaw.addAll(seen.subList(before, seen.size()));
+        }
+        final Set<SeaTile> all = new HashSet<>(seen);
+        assertEquals(new HashSet<>(Arrays.asList(good0, good1, good2)), all);
+        assertEquals(new HashSet<>(Arrays.asList(good1, good2)), stricterSaw);
+    }
+
+    @Test
+    public void fleetTilesDontDependOnWhoAsksFirst() throws Exception {
+
+        final SeaTile mpa = tile(false, false);
+        final SeaTile open = tile(false, false);
+        final MapDiscretization discretization = mock(MapDiscretization.class);
+        when(discretization.getNumberOfGroups()).thenReturn(1);
+        when(discretization.isValid(anyInt())).thenReturn(true);
+        when(discretization.getGroup(0)).thenReturn(Arrays.asList(mpa, open));
+
+        final FishState model = mock(FishState.class);
+        final int[] day = {0};
+        when(model.getDay()).thenAnswer(invocation -> day[0]);
+        final Fisher free = fisherBanning(Collections.emptySet());
+        final Fisher banned = fisherBanning(Collections.singleton(mpa));
+
+        //a fleet-wide covariate, recording the representative tile of each day
+        final List<List<SeaTile>> representatives = new ArrayList<>();
+        for (final Fisher first : new Fisher[]{free, banned}) {
+            final List<SeaTile> seen = new ArrayList<>();
+            final ScopedObservationExtractor habitat = new ScopedObservationExtractor() {
+                @Override
+                public CovariateScope getScope() {
+                    return CovariateScope.TILE;
+                }
+
+                @Override
+                public double extract(SeaTile tile, double timeOfObservation, Fisher agent, FishState model) {
+                    seen.add(tile);
+                    return tile == mpa ? 1 : 0;
+                }
+            };
+            final CounterfactualCovariateService service = new CounterfactualCovariateService(
+                discretization, new ObservationExtractor[]{habitat}, new MersenneTwisterFast(0));
+            for (day[0] = 0; day[0] < 100; day[0]++) {
+                service.getInput(first, model);
+                service.getInput(first == free ? banned : free, model);
+            }
+            representatives.add(seen);
+        }
+        //the same draws whether the banned fisher refreshes or not, and the MPA is among them
+        assertEquals(representatives.get(0), representatives.get(1));
+        assertTrue(representatives.get(0).contains(mpa));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.InterceptExtractor;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.PeriodHabitBooleanExtractor;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.PortDistanceExtractor;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.ports.Port;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.poseidon.burlap.strategies.CachedObservationExtractor;
+import uk.ac.ox.poseidon.burlap.strategies.CovariateCache;
+import uk.ac.ox.poseidon.burlap.strategies.CovariateScope;
+import uk.ac.ox.poseidon.burlap.strategies.ScopedObservationExtractor;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CovariateCacheTest {
+
+
+    @Test
+    public void computesOncePerPortTileAndDay() throws Exception {
+
+        final FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        final SeaTile tile = state.getMap().getSeaTile(2, 3);
+
+        final Port home = mock(Port.class);
+        final Port elsewhere = mock(Port.class);
+        final Fisher one = mock(Fisher.class);
+        final Fisher two = mock(Fisher.class);
+        final Fisher three = mock(Fisher.class);
+        when(one.getHomePort()).thenReturn(home);
+        when(two.getHomePort()).thenReturn(home);
+        when(three.getHomePort()).thenReturn(elsewhere);
+
+        final int[] calls = new int[1];
+        final ScopedObservationExtractor counting = new ScopedObservationExtractor() {
+            @Override
+            public CovariateScope getScope() {
+                return CovariateScope.PORT_AND_TILE;
+            }
+
+            @Override
+            public double extract(
+                final SeaTile tile, final double timeOfObservation, final Fisher agent, final FishState model
+            ) {
+                calls[0]++;
+                return agent.getHomePort() == home ? 1 : 2;
+            }
+        };
+        final CachedObservationExtractor cached = new CachedObservationExtractor(counting);
+
+        when(state.getDay()).thenReturn(0);
+        assertEquals(1, cached.extract(tile, 0, one, state), .0001);
+        assertEquals(1, cached.extract(tile, 0, two, state), .0001);
+        assertEquals(1, calls[0]);
+        //another port is another row
+        assertEquals(2, cached.extract(tile, 0, three, state), .0001);
+        assertEquals(2, calls[0]);
+        //distance doesn't change with the day
+        when(state.getDay()).thenReturn(1);
+        assertEquals(1, cached.extract(tile, 0, one, state), .0001);
+        assertEquals(2, calls[0]);
+        assertEquals(2, cached.getHits());
+        assertEquals(2, cached.getMisses());
+    }
+
+    @Test
+    public void dayScopedValuesExpire() throws Exception {
+
+        final FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        final SeaTile tile = state.getMap().getSeaTile(0, 0);
+        final Fisher fisher = mock(Fisher.class);
+
+        final int[] calls = new int[1];
+        final ObservationExtractor counting = (tile1, timeOfObservation, agent, model) -> {
+            calls[0]++;
+            return model.getDay();
+        };
+        final CachedObservationExtractor cached =
+            new CachedObservationExtractor(counting, CovariateScope.TILE_AND_DAY);
+
+        when(state.getDay()).thenReturn(3);
+        assertEquals(3, cached.extract(tile, 0, fisher, state), .0001);
+        assertEquals(3, cached.extract(tile, 0, fisher, state), .0001);
+        assertEquals(1, calls[0]);
+        when(state.getDay()).thenReturn(4);
+        assertEquals(4, cached.extract(tile, 0, fisher, state), .0001);
+        assertEquals(2, calls[0]);
+    }
+
+    @Test
+    public void sharesOnlyWhatDoesNotDependOnTheFisher() throws Exception {
+
+        final CovariateCache cache = new CovariateCache();
+        final ObservationExtractor distance = cache.share("distance", new PortDistanceExtractor());
+        assertTrue(distance instanceof CachedObservationExtractor);
+        assertSame(distance, cache.share("distance", new PortDistanceExtractor()));
+
+        final ObservationExtractor habit = mock(PeriodHabitBooleanExtractor.class);
+        assertSame(habit, cache.share("habit", habit));
+        assertEquals(1, cache.getNumberOfSharedCovariates());
+    }
+
+    @Test
+    public void sameNameDifferentParametersAreNotShared() throws Exception {
+
+        final FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        final SeaTile tile = state.getMap().getSeaTile(0, 0);
+        final Fisher fisher = mock(Fisher.class);
+
+        final CovariateCache cache = new CovariateCache();
+        final ObservationExtractor one = cache.share("intercept", "1", new InterceptExtractor(1d));
+        final ObservationExtractor two = cache.share("intercept", "2", new InterceptExtractor(2d));
+        assertNotSame(one, two);
+        assertSame(one, cache.share("intercept", "1", new InterceptExtractor(1d)));
+        assertEquals(2, cache.getNumberOfSharedCovariates());
+
+        assertEquals(1, one.extract(tile, 0, fisher, state), .0001);
+        assertEquals(2, two.extract(tile, 0, fisher, state), .0001);
+        //and neither poisoned the other
+        assertEquals(1, one.extract(tile, 0, fisher, state), .0001);
+    }
+}
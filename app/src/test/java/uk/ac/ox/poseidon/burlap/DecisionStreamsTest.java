@@ -0,0 +1,67 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.poseidon.burlap.strategies.DecisionStreams;
+
+import static org.junit.Assert.*;
+
+public class DecisionStreamsTest {
+
+
+    @Test
+    public void sameKeySameNumbersWhateverTheOrder() throws Exception {
+
+        final DecisionStreams streams = new DecisionStreams(123);
+        final double[] forward = new double[100];
+        for (int fisher = 0; fisher < 100; fisher++)
+            forward[fisher] = streams.stream(fisher, 7, DecisionStreams.LOGIT_ARM).nextDouble();
+        //ask in reverse, interleaving other purposes: nothing changes
+        for (int fisher = 99; fisher >= 0; fisher--) {
+            streams.stream(fisher, 7, DecisionStreams.LOGIT_TILE).nextInt(10);
+            assertEquals(forward[fisher], streams.stream(fisher, 7, DecisionStreams.LOGIT_ARM).nextDouble(), 0);
+            assertEquals(forward[fisher], streams.uniform(fisher, 7, DecisionStreams.LOGIT_ARM, 0), 0);
+        }
+        //another seed, another step, another purpose: other numbers
+        assertNotEquals(forward[0], new DecisionStreams(124).stream(0, 7, DecisionStreams.LOGIT_ARM).nextDouble(), 0);
+        assertNotEquals(forward[0], streams.stream(0, 8, DecisionStreams.LOGIT_ARM).nextDouble(), 0);
+        assertNotEquals(forward[0], streams.stream(0, 7, DecisionStreams.LOGIT_TILE).nextDouble(), 0);
+    }
+
+    @Test
+    public void numbersLookUniform() throws Exception {
+
+        final DecisionStreams streams = new DecisionStreams(0);
+        final int[] buckets = new int[10];
+        double sum = 0;
+        for (int fisher = 0; fisher < 10000; fisher++) {
+            final DecisionStreams.Stream stream = streams.stream(fisher, 0, DecisionStreams.REPLICATION);
+            final double uniform = stream.nextDouble();
+            assertTrue(uniform >= 0 && uniform < 1);
+            sum += uniform;
+            buckets[stream.nextInt(10)]++;
+        }
+        assertEquals(.5, sum / 10000, .01);
+        for (int bucket : buckets)
+            assertEquals(1000, bucket, 100);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Test;
+import sim.field.geo.GeomGridField;
+import sim.field.geo.GeomVectorField;
+import sim.field.grid.ObjectGrid2D;
+import uk.ac.ox.oxfish.geography.EquirectangularDistance;
+import uk.ac.ox.oxfish.geography.NauticalMap;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
+import uk.ac.ox.oxfish.geography.discretization.SquaresMapDiscretizer;
+import uk.ac.ox.oxfish.geography.habitat.TileHabitat;
+import uk.ac.ox.oxfish.geography.pathfinding.StraightLinePathfinder;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.poseidon.burlap.strategies.DiscretizationCache;
+
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+public class DiscretizationCacheTest {
+
+    /**
+     * a 4x4 sea map over the given envelope
+     */
+    private static FishState model(Envelope envelope) {
+        final ObjectGrid2D grid2D = new ObjectGrid2D(4, 4);
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 4; j++)
+                grid2D.field[i][j] = new SeaTile(i, j, -100, new TileHabitat(0d));
+        final GeomGridField rasterBathymetry = new GeomGridField(grid2D);
+        rasterBathymetry.setMBR(envelope);
+        final NauticalMap map = new NauticalMap(rasterBathymetry, new GeomVectorField(),
+            new EquirectangularDistance(0.0, 1), new StraightLinePathfinder()
+        );
+        final FishState model = mock(FishState.class, RETURNS_DEEP_STUBS);
+        when(model.getMap()).thenReturn(map);
+        return model;
+    }
+
+    @Test
+    public void sameTilesDifferentEnvelopeIsNotShared() throws Exception {
+
+        DiscretizationCache.clear();
+        final int[] computed = {0};
+        final String parameters = "squares " + System.nanoTime();
+
+        final FishState first = model(new Envelope(0, 1, 0, 1));
+        final Supplier<MapDiscretization> compute = () -> {
+            computed[0]++;
+            final MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+            discretization.discretize(first.getMap());
+            return discretization;
+        };
+        DiscretizationCache.discretize(first, parameters, compute);
+        assertEquals(1, computed[0]);
+
+        //an identical map from another run is rebuilt from the cache, on its own tiles
+        final FishState again = model(new Envelope(0, 1, 0, 1));
+        final MapDiscretization cached = DiscretizationCache.discretize(again, parameters, compute);
+        assertEquals(1, computed[0]);
+        assertEquals(2, cached.getNumberOfGroups());
+        for (final SeaTile tile : cached.getGroup(0))
+            assertSame(again.getMap().getSeaTile(tile.getGridX(), tile.getGridY()), tile);
+
+        //same tiles, somewhere else (or with bigger cells): coordinates differ, so does the key
+        DiscretizationCache.discretize(model(new Envelope(10, 11, 0, 1)), parameters, compute);
+        assertEquals(2, computed[0]);
+        DiscretizationCache.discretize(model(new Envelope(0, 4, 0, 4)), parameters, compute);
+        assertEquals(3, computed[0]);
+        DiscretizationCache.discretize(model(new Envelope(0, 4, 0, 4)), parameters, compute);
+        assertEquals(3, computed[0]);
+        DiscretizationCache.clear();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.poseidon.burlap.logbook.GroupHistogram;
+import uk.ac.ox.poseidon.burlap.logbook.GroupHistogrammer;
+import uk.ac.ox.poseidon.burlap.logbook.HistogramAggregator;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GroupHistogramTest {
+
+
+    @Test
+    public void growsWithoutLosingCounts() throws Exception {
+
+        //starts with room for a handful of cells
+        final GroupHistogram histogram = new GroupHistogram(4);
+        for (int year = -2; year < 8; year++)
+            for (int group = 0; group < 100; group++)
+                histogram.add(year, group, year + 3 + group);
+        //adding again to cells that moved around while growing
+        for (int group = 0; group < 100; group++)
+            histogram.add(-2, group);
+
+        assertEquals(1000, histogram.getCells());
+        long total = 0;
+        for (int year = -2; year < 8; year++)
+            for (int group = 0; group < 100; group++) {
+                final int expected = year + 3 + group + (year == -2 ? 1 : 0);
+                assertEquals(expected, histogram.get(year, group));
+                total += expected;
+            }
+        assertEquals(total, histogram.getTotal());
+        assertEquals(0, histogram.get(8, 0));
+        assertEquals(0, histogram.get(0, 100));
+    }
+
+    @Test
+    public void mergesAndVisitsInOrder() throws Exception {
+
+        final GroupHistogram first = new GroupHistogram(4);
+        first.add(1, 5);
+        first.add(0, 7, 3);
+        final GroupHistogram second = new GroupHistogram(4);
+        for (int group = 0; group < 20; group++)
+            second.add(1, group);
+
+        first.merge(second);
+        assertEquals(21, first.getCells());
+        assertEquals(2, first.get(1, 5));
+        assertEquals(3, first.get(0, 7));
+        assertEquals(1, first.get(1, 19));
+        assertEquals(24, first.getTotal());
+        //the merged one is untouched
+        assertEquals(20, second.getCells());
+        assertEquals(1, second.get(1, 5));
+
+        final List<String> visited = new ArrayList<>();
+        first.forEach((year, group, count) -> visited.add(year + "," + group + "," + count));
+        assertEquals("0,7,3", visited.get(0));
+        assertEquals("1,0,1", visited.get(1));
+        assertEquals("1,5,2", visited.get(6));
+        assertEquals("1,19,1", visited.get(20));
+    }
+
+    @Test
+    public void runsAreWrittenAndAggregated() throws Exception {
+
+        final GroupHistogram run = new GroupHistogram();
+        run.add(0, 1);
+        run.add(0, 1);
+        run.add(2, 0);
+        //each run writes its own table
+        final GroupHistogrammer histogrammer = new GroupHistogrammer(null, null, run);
+        assertEquals("year,group,trips\n0,1,2\n2,0,1\n", histogrammer.composeFileContents());
+
+        final String name = "test " + System.nanoTime();
+        HistogramAggregator.named(name).merge(run);
+        HistogramAggregator.named(name).merge(run);
+        final StringWriter table = new StringWriter();
+        HistogramAggregator.named(name).writeTable(table);
+        assertEquals("year,group,trips,runs\n0,1,4,2\n2,0,2,2\n", table.toString());
+
+        assertNotNull(HistogramAggregator.remove(name));
+        assertEquals(0, HistogramAggregator.named(name).getRuns());
+        HistogramAggregator.remove(name);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import ec.util.MersenneTwisterFast;
+import org.junit.Test;
+import sim.engine.Stoppable;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.log.TripLaggedExtractor;
+import uk.ac.ox.oxfish.fisher.log.TripRecord;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
+import uk.ac.ox.oxfish.geography.discretization.SquaresMapDiscretizer;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.poseidon.burlap.strategies.GroupLaggedAverage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class GroupLaggedAverageTest {
+
+
+    @Test
+    public void sameAveragesAsTripLaggedExtractor() throws Exception {
+
+        final FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        final MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+        discretization.discretize(state.getMap());
+
+        final GroupLaggedAverage incremental = new GroupLaggedAverage(
+            record -> record.getEarnings() / record.getDurationInHours(), discretization);
+        final TripLaggedExtractor fromHistory = new TripLaggedExtractor(
+            record -> record.getEarnings() / record.getDurationInHours(), discretization);
+
+        //a year of trips all over the map
+        final Fisher fisher = mock(Fisher.class, RETURNS_DEEP_STUBS);
+        final MersenneTwisterFast random = new MersenneTwisterFast(0);
+        final List<TripRecord> trips = new ArrayList<>();
+        for (int trip = 0; trip < 200; trip++) {
+            final TripRecord record = mock(TripRecord.class);
+            final SeaTile tile = state.getMap().getSeaTile(random.nextInt(4), random.nextInt(4));
+            when(record.getMostFishedTileInTrip()).thenReturn(tile);
+            when(record.getEarnings()).thenReturn(random.nextDouble() * 1000);
+            when(record.getDurationInHours()).thenReturn(1 + random.nextDouble() * 48);
+            trips.add(record);
+        }
+        when(fisher.getFinishedTrips()).thenReturn(trips);
+
+        incremental.track(fisher, state);
+        for (final TripRecord record : trips)
+            incremental.reactToFinishedTrip(record, fisher);
+        fromHistory.setFisherTracked(fisher);
+        fromHistory.start(state);
+
+        //new year
+        incremental.step(state);
+        fromHistory.step(state);
+
+        for (int x = 0; x < 4; x++)
+            for (int y = 0; y < 4; y++) {
+                final SeaTile tile = state.getMap().getSeaTile(x, y);
+                assertEquals(
+                    fromHistory.extract(tile, 0, fisher, state),
+                    incremental.extract(tile, 0, fisher, state),
+                    1e-9
+                );
+            }
+    }
+
+    @Test
+    public void lastFisherOutStopsTheRollOver() throws Exception {
+
+        final FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        final MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+        discretization.discretize(state.getMap());
+        final Stoppable stoppable = mock(Stoppable.class);
+        when(state.scheduleEveryYear(any(), any())).thenReturn(stoppable);
+
+        final GroupLaggedAverage fleetWide = new GroupLaggedAverage(TripRecord::getEarnings, discretization);
+        final Fisher first = mock(Fisher.class);
+        final Fisher second = mock(Fisher.class);
+        fleetWide.track(first, state);
+        fleetWide.track(second, state);
+        verify(state, times(1)).scheduleEveryYear(any(), any());
+
+        fleetWide.untrack(first);
+        verify(stoppable, never()).stop();
+        fleetWide.untrack(second);
+        verify(stoppable, times(1)).stop();
+        verify(second).removeTripListener(fleetWide);
+
+        //tracking again starts it again
+        fleetWide.track(first, state);
+        verify(state, times(2)).scheduleEveryYear(any(), any());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.oxfish.model.FishState;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LogisticLogbookInitializerTest {
+
+
+    @Test
+    public void sameSeedSameFishers() throws Exception {
+
+        assertTrue(LogisticLogbookInitializer.isSampled(1, 3, 1));
+        int sampled = 0;
+        for (int id = 0; id < 1000; id++)
+            if (LogisticLogbookInitializer.isSampled(42, id, .2)) {
+                assertTrue(LogisticLogbookInitializer.isSampled(42, id, .2));
+                sampled++;
+            }
+        assertEquals(200, sampled, 40);
+    }
+
+    @Test
+    public void sampleFollowsTheModelSeedUnlessSet() throws Exception {
+
+        final FishState first = mock(FishState.class);
+        when(first.seed()).thenReturn(1L);
+        final FishState second = mock(FishState.class);
+        when(second.seed()).thenReturn(2L);
+
+        final LogisticLogbookInitializer initializer = new LogisticLogbookInitializer(
+            null, null, new String[0], 0);
+        assertNull(initializer.getSamplingSeed());
+        assertEquals(1L, initializer.samplingSeed(first));
+        assertEquals(2L, initializer.samplingSeed(second));
+        //two runs of a sweep don't log the same fishers
+        int same = 0;
+        for (int id = 0; id < 1000; id++)
+            if (LogisticLogbookInitializer.isSampled(initializer.samplingSeed(first), id, .2) ==
+                LogisticLogbookInitializer.isSampled(initializer.samplingSeed(second), id, .2))
+                same++;
+        assertTrue(same < 1000);
+
+        //a fixed seed ignores the model's
+        initializer.setSamplingSeed(42L);
+        assertEquals(42L, initializer.samplingSeed(first));
+        assertEquals(42L, initializer.samplingSeed(second));
+    }
+}
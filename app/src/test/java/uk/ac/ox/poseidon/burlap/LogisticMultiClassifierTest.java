@@ -20,6 +20,8 @@
 
 package uk.ac.ox.poseidon.burlap;
 
+import burlap.datastructures.BoltzmannDistribution;
+import burlap.debugtools.RandomFactory;
 import ec.util.MersenneTwisterFast;
 import org.junit.Test;
 
@@ -73,4 +75,86 @@ public class LogisticMultiClassifierTest {
         assertTrue(chosen1 < 800);
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void sameDrawsAsBoltzmann() throws Exception {
+
+        double[][] beta = new double[5][];
+        for (int i = 0; i < beta.length; i++)
+            beta[i] = new double[]{i * .3, -i * .1};
+        double[][] input = new double[5][];
+        for (int i = 0; i < input.length; i++)
+            input[i] = new double[]{1, i};
+        //one arm is broken, it gets the invalid penalty
+        input[3][1] = Double.NaN;
+
+        LogisticMultiClassifier logit = new LogisticMultiClassifier(beta);
+        double[] utilities = new double[5];
+        logit.computeUtilities(input, utilities);
+        assertEquals(LogisticMultiClassifier.INVALID_PENALTY, utilities[3], .0001);
+
+        //the primitive path must draw exactly what the old BoltzmannDistribution drew
+        RandomFactory.seedMapped(0, 123);
+        int[] expected = new int[1000];
+        for (int i = 0; i < expected.length; i++)
+            expected[i] = new BoltzmannDistribution(utilities, 1d).sample();
+        RandomFactory.seedMapped(0, 123);
+        MersenneTwisterFast random = new MersenneTwisterFast();
+        for (int i = 0; i < expected.length; i++)
+            assertEquals(expected[i], logit.choose(input, random));
+
+        input[3][1] = 3;
+        logit.computeUtilities(input, utilities);
+        double[] probabilities = new BoltzmannDistribution(utilities, 1d).getProbabilities();
+        for (int arm = 0; arm < 5; arm++)
+            assertEquals(probabilities[arm], logit.getProbability(arm, input), 1e-12);
+    }
+
+    @Test
+    public void allProbabilitiesAndLikelihood() throws Exception {
+
+        double[][] beta = new double[3][];
+        for (int i = 0; i < beta.length; i++)
+            beta[i] = new double[]{i * .5, 1};
+        double[][] input = new double[3][];
+        for (int i = 0; i < input.length; i++)
+            input[i] = new double[]{1, -i};
+        LogisticMultiClassifier logit = new LogisticMultiClassifier(beta);
+
+        double[] probabilities = logit.getProbabilities(input, new double[3]);
+        double sum = 0;
+        for (int arm = 0; arm < 3; arm++) {
+            assertEquals(logit.getProbability(arm, input), probabilities[arm], 1e-12);
+            sum += probabilities[arm];
+        }
+        assertEquals(1, sum, 1e-12);
+
+        LogLikelihoodAccumulator likelihood = new LogLikelihoodAccumulator(logit);
+        likelihood.accept(input, 0);
+        likelihood.accept(input, 2);
+        assertEquals(2, likelihood.getObservations());
+        assertEquals(Math.log(probabilities[0]) + Math.log(probabilities[2]), likelihood.getLogLikelihood(), 1e-12);
+    }
+
+    @Test
+    public void negativeInfinityArmsAreNeverDrawn() throws Exception {
+
+        double[][] beta = new double[4][];
+        for (int i = 0; i < beta.length; i++)
+            beta[i] = new double[]{1};
+        LogisticMultiClassifier logit = new LogisticMultiClassifier(beta);
+
+        //arms 0 and 2 are masked; the others share the probability
+        double[] utilities = {Double.NEGATIVE_INFINITY, 5, Double.NEGATIVE_INFINITY, 5};
+        MersenneTwisterFast random = new MersenneTwisterFast(0);
+        int[] counts = new int[4];
+        for (int i = 0; i < 10000; i++)
+            counts[logit.sample(utilities, random.nextDouble())]++;
+        assertEquals(0, counts[0]);
+        assertEquals(0, counts[2]);
+        assertEquals(5000, counts[1], 250);
+        //even at the edges of the uniform
+        assertEquals(1, logit.sample(utilities, 0));
+        assertEquals(3, logit.sample(utilities, Math.nextDown(1d)));
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import burlap.debugtools.RandomFactory;
+import com.google.common.collect.Lists;
+import ec.util.MersenneTwisterFast;
+import org.junit.Test;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.GridXExtractor;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+import uk.ac.ox.oxfish.fisher.strategies.destination.FavoriteDestinationStrategy;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
+import uk.ac.ox.oxfish.geography.discretization.SquaresMapDiscretizer;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.poseidon.burlap.strategies.LogitAdaptationScheduler;
+import uk.ac.ox.poseidon.burlap.strategies.LogitDestinationStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LogitAdaptationSchedulerTest {
+
+    private static LogitDestinationStrategy[] strategies(
+        FishState state, MapDiscretization discretization, MersenneTwisterFast random, int fleetSize
+    ) {
+        double[][] beta = new double[2][];
+        beta[0] = new double[]{1};
+        beta[1] = new double[]{1};
+        ObservationExtractor[][] extractors = new ObservationExtractor[2][];
+        extractors[0] = new ObservationExtractor[]{new GridXExtractor()};
+        extractors[1] = extractors[0];
+
+        LogitDestinationStrategy[] strategies = new LogitDestinationStrategy[fleetSize];
+        for (int i = 0; i < fleetSize; i++)
+            strategies[i] = new LogitDestinationStrategy(
+                beta, extractors,
+                Lists.newArrayList(0, 1),
+                discretization,
+                new FavoriteDestinationStrategy(state.getMap().getSeaTile(3, 3)),
+                random,
+                false, false
+            );
+        return strategies;
+    }
+
+    private static Fisher[] fishers(int fleetSize) {
+        Fisher[] fishers = new Fisher[fleetSize];
+        for (int i = 0; i < fleetSize; i++) {
+            //deep stubs so the delegate can navigate without a real fisher
+            fishers[i] = mock(Fisher.class, RETURNS_DEEP_STUBS);
+            when(fishers[i].isAllowedAtSea()).thenReturn(true);
+            when(fishers[i].getID()).thenReturn(i);
+        }
+        return fishers;
+    }
+
+    /**
+     * lets a small fleet decide for a few days and returns every target picked (as grid coordinates), in order
+     *
+     * @param scheduler null to decide on the spot
+     */
+    private static List<String> decide(LogitAdaptationScheduler scheduler) {
+        RandomFactory.seedMapped(0, 42);
+        MersenneTwisterFast random = new MersenneTwisterFast(42);
+        FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+        discretization.discretize(state.getMap());
+
+        LogitDestinationStrategy[] strategies = strategies(state, discretization, random, 50);
+        Fisher[] fishers = fishers(50);
+        for (LogitDestinationStrategy strategy : strategies)
+            strategy.setScheduler(scheduler);
+
+        List<String> targets = new ArrayList<>();
+        for (int day = 0; day < 20; day++) {
+            for (int i = 0; i < strategies.length; i++)
+                strategies[i].getAdaptation().adapt(fishers[i], state, random);
+            if (scheduler != null)
+                scheduler.flush(state);
+            for (LogitDestinationStrategy strategy : strategies)
+                targets.add(strategy.getCurrentTarget().getGridX() + "," + strategy.getCurrentTarget().getGridY());
+        }
+        return targets;
+    }
+
+    @Test
+    public void decisionsWaitForTheFlush() throws Exception {
+
+        MersenneTwisterFast random = new MersenneTwisterFast();
+        FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+        discretization.discretize(state.getMap());
+        LogitDestinationStrategy[] strategies = strategies(state, discretization, random, 10);
+        Fisher[] fishers = fishers(10);
+
+        LogitAdaptationScheduler scheduler = new LogitAdaptationScheduler(false);
+        for (LogitDestinationStrategy strategy : strategies)
+            strategy.setScheduler(scheduler);
+
+        final SeaTile original = state.getMap().getSeaTile(3, 3);
+        for (int i = 0; i < strategies.length; i++) {
+            strategies[i].getAdaptation().adapt(fishers[i], state, random);
+            //asking twice doesn't queue twice
+            strategies[i].getAdaptation().adapt(fishers[i], state, random);
+        }
+        assertEquals(10, scheduler.getPendingDecisions());
+        for (LogitDestinationStrategy strategy : strategies) {
+            assertTrue(strategy.isDecisionPending());
+            assertSame(original, strategy.getCurrentTarget());
+        }
+
+        scheduler.flush(state);
+        assertEquals(0, scheduler.getPendingDecisions());
+        assertEquals(10, scheduler.getDecisionsTaken());
+        assertEquals(1, scheduler.getBatches());
+        for (LogitDestinationStrategy strategy : strategies)
+            assertFalse(strategy.isDecisionPending());
+
+        //an empty queue is not a batch
+        scheduler.flush(state);
+        assertEquals(1, scheduler.getBatches());
+    }
+
+    @Test
+    public void destinationRequestFlushesEarly() throws Exception {
+
+        MersenneTwisterFast random = new MersenneTwisterFast();
+        FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+        discretization.discretize(state.getMap());
+        LogitDestinationStrategy[] strategies = strategies(state, discretization, random, 3);
+        Fisher[] fishers = fishers(3);
+
+        LogitAdaptationScheduler scheduler = new LogitAdaptationScheduler(false);
+        for (int i = 0; i < strategies.length; i++) {
+            strategies[i].setScheduler(scheduler);
+            strategies[i].getAdaptation().adapt(fishers[i], state, random);
+        }
+        assertEquals(3, scheduler.getPendingDecisions());
+
+        //one fisher needs to know where to go before dawn: the whole queue decides
+        strategies[1].chooseDestination(fishers[1], random, state, null);
+        assertEquals(0, scheduler.getPendingDecisions());
+        assertEquals(3, scheduler.getDecisionsTaken());
+        for (LogitDestinationStrategy strategy : strategies)
+            assertFalse(strategy.isDecisionPending());
+    }
+
+    @Test
+    public void batchedAndParallelScoringDecideAsOnTheSpot() throws Exception {
+
+        //tiles and arms are drawn from two different randomizers, each in fisher order,
+        //so batching the decisions (and splitting the scoring across threads) changes nothing
+        List<String> onTheSpot = decide(null);
+        List<String> batched = decide(new LogitAdaptationScheduler(false));
+        List<String> parallel = decide(new LogitAdaptationScheduler(true));
+
+        assertEquals(onTheSpot, batched);
+        assertEquals(onTheSpot, parallel);
+    }
+}
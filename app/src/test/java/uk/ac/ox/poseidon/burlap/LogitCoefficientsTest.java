@@ -0,0 +1,70 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.poseidon.burlap.strategies.LogitCoefficients;
+
+import static org.junit.Assert.*;
+
+public class LogitCoefficientsTest {
+
+    @Test
+    public void sameNumbersSameBlock() throws Exception {
+
+        final double[][] betas = {{1, 2}, {3, 4}, {1, 2}};
+        final LogitCoefficients first = LogitCoefficients.of(betas);
+        final LogitCoefficients second = LogitCoefficients.of(new double[][]{{1, 2}, {3, 4}, {1, 2}});
+        assertSame(first, second);
+        //the repeated row is stored once
+        assertEquals(3, first.getNumberOfRows());
+        assertEquals(2, first.getNumberOfDistinctRows());
+
+        assertNotSame(first, LogitCoefficients.of(new double[][]{{1, 2}, {3, 5}, {1, 2}}));
+
+        //the input isn't kept
+        betas[0][0] = 100;
+        assertEquals(1, first.getRows()[0][0], 0);
+        assertSame(first, LogitCoefficients.of(new double[][]{{1, 2}, {3, 4}, {1, 2}}));
+    }
+
+    @Test
+    public void sharedRowsCantBeChangedFromOutside() throws Exception {
+
+        final LogitCoefficients coefficients = LogitCoefficients.of(new double[][]{{.5, 1}, {.5, 1}});
+        final double[][] rows = coefficients.getRows();
+        rows[0][0] = 100;
+        rows[1] = new double[]{7, 7};
+        assertArrayEquals(new double[]{.5, 1}, coefficients.getRows()[0], 0);
+        assertArrayEquals(new double[]{.5, 1}, coefficients.getRows()[1], 0);
+        assertSame(coefficients, LogitCoefficients.of(new double[][]{{.5, 1}, {.5, 1}}));
+
+        //two classifiers reading the same betas
+        final double[][] input = {{1, 1}, {1, 0}};
+        final LogisticMultiClassifier one = new LogisticMultiClassifier(new double[][]{{.5, 1}, {.5, 1}});
+        final LogisticMultiClassifier two = new LogisticMultiClassifier(new double[][]{{.5, 1}, {.5, 1}});
+        final double before = two.getProbability(0, input);
+        one.getBetas()[0][1] = -100;
+        assertEquals(1, one.getBetas()[0][1], 0);
+        assertEquals(before, one.getProbability(0, input), 0);
+        assertEquals(before, two.getProbability(0, input), 0);
+    }
+}
@@ -25,6 +25,7 @@ import com.vividsolutions.jts.geom.Envelope;
 import ec.util.MersenneTwisterFast;
 import org.jfree.util.Log;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import sim.field.geo.GeomGridField;
 import sim.field.geo.GeomVectorField;
 import sim.field.grid.ObjectGrid2D;
@@ -34,6 +35,8 @@ import uk.ac.ox.oxfish.fisher.Fisher;
 import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.GridXExtractor;
 import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.InterceptExtractor;
 import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+import uk.ac.ox.oxfish.fisher.log.DiscretizedLocationMemory;
+import uk.ac.ox.oxfish.fisher.log.LogisticLog;
 import uk.ac.ox.oxfish.fisher.strategies.destination.FavoriteDestinationStrategy;
 import uk.ac.ox.oxfish.geography.EquirectangularDistance;
 import uk.ac.ox.oxfish.geography.NauticalMap;
@@ -43,9 +46,15 @@ import uk.ac.ox.oxfish.geography.discretization.SquaresMapDiscretizer;
 import uk.ac.ox.oxfish.geography.habitat.TileHabitat;
 import uk.ac.ox.oxfish.geography.pathfinding.StraightLinePathfinder;
 import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.poseidon.burlap.strategies.LogitAdaptationScheduler;
+import uk.ac.ox.poseidon.burlap.strategies.LogitCoefficients;
 import uk.ac.ox.poseidon.burlap.strategies.LogitDestinationStrategy;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -328,4 +337,163 @@ public class LogitDestinationStrategyTest {
         assertTrue(counter > 50);
         assertTrue(counter < 200);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void armsWithoutValidTilesAreMasked() throws Exception {
+
+        MersenneTwisterFast random = new MersenneTwisterFast();
+
+        FishState state = generateSimple4x4Map();
+        MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+        discretization.discretize(state.getMap());
+        //group 0 is far more attractive, but nothing can be fished there
+        for (SeaTile tile : discretization.getGroup(0))
+            tile.setBiology(new EmptyLocalBiology());
+        for (SeaTile tile : discretization.getGroup(1))
+            tile.setBiology(new ConstantLocalBiology(100));
+
+        double[][] beta = new double[2][];
+        beta[0] = new double[]{10};
+        beta[1] = new double[]{0};
+        ObservationExtractor[][] extractors = new ObservationExtractor[2][];
+        extractors[0] = new ObservationExtractor[]{
+            new InterceptExtractor(1d)
+        };
+        extractors[1] = extractors[0];
+
+        LogitDestinationStrategy strategy = new LogitDestinationStrategy(
+            beta, extractors,
+            Lists.newArrayList(0, 1),
+            discretization,
+            new FavoriteDestinationStrategy(state.getMap().getSeaTile(0, 0)),
+            random,
+            false, true
+        );
+
+        for (int i = 0; i < 100; i++) {
+            Fisher fisher = mock(Fisher.class);
+            when(fisher.isAllowedAtSea()).thenReturn(true);
+            strategy.adapt(state, random, fisher);
+            //a single draw, and never the masked arm however good it looks
+            assertTrue(strategy.getCurrentTarget().getGridX() > 1);
+        }
+        assertEquals(100, strategy.getMaskedArms());
+        assertEquals(0, strategy.getFailedDecisions());
+    }
+
+    @Test
+    public void decisionFailsWhenNoArmHasAValidTile() throws Exception {
+
+        MersenneTwisterFast random = new MersenneTwisterFast();
+
+        FishState state = generateSimple4x4Map();
+        MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+        discretization.discretize(state.getMap());
+        for (int group = 0; group < 2; group++)
+            for (SeaTile tile : discretization.getGroup(group))
+                tile.setBiology(new EmptyLocalBiology());
+
+        double[][] beta = new double[2][];
+        beta[0] = new double[]{1};
+        beta[1] = new double[]{0};
+        ObservationExtractor[][] extractors = new ObservationExtractor[2][];
+        extractors[0] = new ObservationExtractor[]{
+            new InterceptExtractor(1d)
+        };
+        extractors[1] = extractors[0];
+
+        final SeaTile original = state.getMap().getSeaTile(3, 3);
+        LogitDestinationStrategy strategy = new LogitDestinationStrategy(
+            beta, extractors,
+            Lists.newArrayList(0, 1),
+            discretization,
+            new FavoriteDestinationStrategy(original),
+            random,
+            false, true
+        );
+
+        for (int i = 0; i < 10; i++) {
+            Fisher fisher = mock(Fisher.class);
+            when(fisher.isAllowedAtSea()).thenReturn(true);
+            strategy.adapt(state, random, fisher);
+        }
+        //nothing to choose from: the fisher keeps going where it was going
+        assertSame(original, strategy.getCurrentTarget());
+        assertEquals(10, strategy.getFailedDecisions());
+        assertEquals(20, strategy.getMaskedArms());
+    }
+
+    @Test
+    public void resetForgetsTheFisherButKeepsTheCoefficients() throws Exception {
+
+        MersenneTwisterFast random = new MersenneTwisterFast();
+
+        FishState state = generateSimple4x4Map();
+        MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+        discretization.discretize(state.getMap());
+        //every decision fails, so there is something to count
+        for (int group = 0; group < 2; group++)
+            for (SeaTile tile : discretization.getGroup(group))
+                tile.setBiology(new EmptyLocalBiology());
+
+        double[][] beta = new double[2][];
+        beta[0] = new double[]{1};
+        beta[1] = new double[]{0};
+        ObservationExtractor[][] extractors = new ObservationExtractor[2][];
+        extractors[0] = new ObservationExtractor[]{
+            new InterceptExtractor(1d)
+        };
+        extractors[1] = extractors[0];
+
+        LogitDestinationStrategy strategy = new LogitDestinationStrategy(
+            beta, extractors,
+            Lists.newArrayList(0, 1),
+            discretization,
+            new FavoriteDestinationStrategy(state.getMap().getSeaTile(3, 3)),
+            random,
+            false, true
+        );
+        final LogisticLog log = mock(LogisticLog.class);
+        strategy.setLog(log);
+
+        Fisher first = mock(Fisher.class);
+        when(first.isAllowedAtSea()).thenReturn(true);
+        when(first.grabRandomizer()).thenReturn(random);
+        strategy.start(state, first);
+        assertTrue(strategy.isStarted());
+        assertEquals(1, strategy.getFailedDecisions());
+        strategy.turnOff(first);
+        verify(first).removePerTripAdaptation(strategy.getAdaptation());
+
+        final LogitCoefficients coefficients = strategy.getCoefficients();
+        assertTrue(strategy.reset(state));
+        assertFalse(strategy.isStarted());
+        assertNull(strategy.getLog());
+        assertEquals(0, strategy.getFailedDecisions());
+        assertEquals(0, strategy.getMaskedArms());
+        assertSame(coefficients, strategy.getCoefficients());
+
+        //a second fisher can start it, with a memory of its own
+        Fisher second = mock(Fisher.class);
+        when(second.isAllowedAtSea()).thenReturn(true);
+        when(second.grabRandomizer()).thenReturn(random);
+        strategy.start(state, second);
+        assertTrue(strategy.isStarted());
+        assertEquals(1, strategy.getFailedDecisions());
+        ArgumentCaptor<DiscretizedLocationMemory> firstMemory = ArgumentCaptor.forClass(DiscretizedLocationMemory.class);
+        ArgumentCaptor<DiscretizedLocationMemory> secondMemory = ArgumentCaptor.forClass(DiscretizedLocationMemory.class);
+        verify(first).setDiscretizedLocationMemory(firstMemory.capture());
+        verify(second).setDiscretizedLocationMemory(secondMemory.capture());
+        assertNotSame(firstMemory.getValue(), secondMemory.getValue());
+
+        //a strategy still waiting for its batched decision can't be reused until it has decided
+        LogitAdaptationScheduler scheduler = new LogitAdaptationScheduler(false);
+        strategy.setScheduler(scheduler);
+        strategy.getAdaptation().adapt(second, state, random);
+        assertTrue(strategy.isDecisionPending());
+        strategy.turnOff(second);
+        assertFalse(strategy.reset(state));
+        scheduler.flush(state);
+        assertTrue(strategy.reset(state));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.poseidon.burlap.strategies.PortAliasTables;
+
+import java.util.function.DoubleToIntFunction;
+
+import static org.junit.Assert.*;
+
+public class PortAliasTablesTest {
+
+    private static final int DRAWS = 100000;
+
+    /**
+     * frequency of each arm over a grid of uniforms (so the test doesn't depend on a seed)
+     */
+    private static double[] frequencies(final int arms, final DoubleToIntFunction draw) {
+        final double[] frequencies = new double[arms];
+        for (int i = 0; i < DRAWS; i++)
+            frequencies[draw.applyAsInt((i + .5) / DRAWS)] += 1d / DRAWS;
+        return frequencies;
+    }
+
+    private static double[] softmax(final double[] utilities) {
+        final double[] probabilities = new double[utilities.length];
+        double total = 0;
+        for (int i = 0; i < utilities.length; i++) {
+            probabilities[i] = Math.exp(utilities[i]);
+            total += probabilities[i];
+        }
+        for (int i = 0; i < utilities.length; i++)
+            probabilities[i] /= total;
+        return probabilities;
+    }
+
+    @Test
+    public void tableDrawsTheSoftmax() throws Exception {
+
+        final double[] utilities = {-1, 0, 2, -3, .5};
+        final PortAliasTables.Table table = PortAliasTables.Table.of(utilities);
+        assertArrayEquals(softmax(utilities), frequencies(utilities.length, table::sample), .001);
+    }
+
+    @Test
+    public void armsWithoutTilesAreNeverDrawn() throws Exception {
+
+        final double[] utilities = {1, Double.NEGATIVE_INFINITY, 1};
+        final PortAliasTables.Table table = PortAliasTables.Table.of(utilities);
+        final double[] frequencies = frequencies(utilities.length, table::sample);
+        assertEquals(0, frequencies[1], 0);
+        assertEquals(.5, frequencies[0], .001);
+
+        assertNull(PortAliasTables.Table.of(new double[]{Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY}));
+    }
+
+    @Test
+    public void habitOnTopOfTheTableIsTheFullSoftmax() throws Exception {
+
+        //static distance utilities, and habit on arms 0 and 3
+        final double[] distance = {-1, -.2, -2, -.5};
+        final int[] habitArms = {0, 3, -1};
+        final double[] habit = {2.5, 1, 0};
+        final PortAliasTables.Table table = PortAliasTables.Table.of(distance);
+
+        final double[] full = distance.clone();
+        full[0] += 2.5;
+        full[3] += 1;
+        assertArrayEquals(
+            softmax(full),
+            frequencies(distance.length, uniform -> PortAliasTables.draw(table, habitArms, habit, 2, uniform)),
+            .001
+        );
+        //without habit it's just the table
+        assertArrayEquals(
+            softmax(distance),
+            frequencies(distance.length, uniform -> PortAliasTables.draw(table, habitArms, habit, 0, uniform)),
+            .001
+        );
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import com.vividsolutions.jts.geom.Envelope;
+import org.junit.Test;
+import sim.field.geo.GeomGridField;
+import sim.field.geo.GeomVectorField;
+import sim.field.grid.ObjectGrid2D;
+import uk.ac.ox.oxfish.geography.EquirectangularDistance;
+import uk.ac.ox.oxfish.geography.NauticalMap;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.habitat.TileHabitat;
+import uk.ac.ox.oxfish.geography.pathfinding.StraightLinePathfinder;
+import uk.ac.ox.oxfish.geography.ports.Port;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.poseidon.burlap.strategies.PortDistanceMatrix;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class PortDistanceMatrixTest {
+
+    /**
+     * a 4x4 sea map over the envelope, with one port in a corner and one in the middle
+     */
+    private static FishState model(Envelope envelope, double cellSizeInKm) {
+        final ObjectGrid2D grid2D = new ObjectGrid2D(4, 4);
+        for (int i = 0; i < 4; i++)
+            for (int j = 0; j < 4; j++)
+                grid2D.field[i][j] = new SeaTile(i, j, -100, new TileHabitat(0d));
+        final GeomGridField rasterBathymetry = new GeomGridField(grid2D);
+        rasterBathymetry.setMBR(envelope);
+        final NauticalMap map = spy(new NauticalMap(rasterBathymetry, new GeomVectorField(),
+            new EquirectangularDistance(0.0, cellSizeInKm), new StraightLinePathfinder()
+        ));
+        final Port corner = mock(Port.class);
+        when(corner.getLocation()).thenReturn(map.getSeaTile(0, 0));
+        final Port middle = mock(Port.class);
+        when(middle.getLocation()).thenReturn(map.getSeaTile(2, 1));
+        doReturn(Arrays.asList(corner, middle)).when(map).getPorts();
+
+        final FishState model = mock(FishState.class, RETURNS_DEEP_STUBS);
+        when(model.getMap()).thenReturn(map);
+        when(model.getUniqueID()).thenReturn("model " + System.nanoTime());
+        return model;
+    }
+
+    private static void assertSameAsTheMap(FishState model) {
+        final PortDistanceMatrix matrix = PortDistanceMatrix.of(model);
+        final NauticalMap map = model.getMap();
+        assertEquals(2, matrix.getNumberOfPorts());
+        for (final Port port : map.getPorts())
+            for (int x = 0; x < 4; x++)
+                for (int y = 0; y < 4; y++)
+                    assertEquals(
+                        map.distance(port.getLocation(), map.getSeaTile(x, y)),
+                        matrix.distance(port, map.getSeaTile(x, y)),
+                        0
+                    );
+    }
+
+    private static long files(Path directory) throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".bin")).count();
+        }
+    }
+
+    @Test
+    public void sameDistancesAsTheMapOneFilePerCellSize() throws Exception {
+
+        final Path directory = Files.createTempDirectory("port-distances");
+        final String old = System.getProperty(PortDistanceMatrix.DIRECTORY_PROPERTY);
+        System.setProperty(PortDistanceMatrix.DIRECTORY_PROPERTY, directory.toString());
+        try {
+            assertSameAsTheMap(model(new Envelope(0, 1, 0, 1), 1));
+            assertEquals(1, files(directory));
+            //another run on the same map reads the same file
+            assertSameAsTheMap(model(new Envelope(0, 1, 0, 1), 1));
+            assertEquals(1, files(directory));
+
+            //same tiles, bigger cells: by envelope or by the distance's own cell size
+            assertSameAsTheMap(model(new Envelope(0, 2, 0, 2), 1));
+            assertEquals(2, files(directory));
+            assertSameAsTheMap(model(new Envelope(0, 1, 0, 1), 2));
+            assertEquals(3, files(directory));
+        } finally {
+            if (old == null)
+                System.clearProperty(PortDistanceMatrix.DIRECTORY_PROPERTY);
+            else
+                System.setProperty(PortDistanceMatrix.DIRECTORY_PROPERTY, old);
+            try (Stream<Path> files = Files.list(directory)) {
+                files.forEach(file -> file.toFile().delete());
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.poseidon.burlap.logbook.ReservoirLogbookSink;
+import uk.ac.ox.poseidon.burlap.logbook.SpooledLogisticLogs;
+
+import static org.junit.Assert.*;
+
+public class ReservoirLogbookSinkTest {
+
+
+    @Test
+    public void reservoirKeepsAFixedSampleInOrder() throws Exception {
+
+        final String[] names = {"x"};
+        final double[][] x = new double[2][1];
+        final int[] sampledTrips = new int[100];
+        final long[] lastTrip = {-1};
+        for (int seed = 0; seed < 100; seed++) {
+            final SpooledLogisticLogs logs = new SpooledLogisticLogs(names, 1 << 12);
+            final ReservoirLogbookSink reservoir = new ReservoirLogbookSink(logs, 10, seed);
+            logs.setFeeder(reservoir);
+            for (int trip = 0; trip < 100; trip++) {
+                x[0][0] = trip;
+                reservoir.record(trip % 5, trip, 0, trip, 0, x);
+            }
+            assertEquals(100, reservoir.getSeen());
+            lastTrip[0] = -1;
+            logs.readAll((id, episode, year, day, chosen, input) -> {
+                assertTrue(episode > lastTrip[0]);
+                assertEquals(episode, input[0][0], 0);
+                lastTrip[0] = episode;
+                sampledTrips[episode]++;
+            });
+            assertEquals(10, logs.getRecords());
+            logs.close();
+        }
+        //every trip ought to be kept about 10% of the time; early trips are not favoured
+        int early = 0;
+        for (int trip = 0; trip < 100; trip++) {
+            assertTrue(sampledTrips[trip] < 30);
+            if (trip < 10)
+                early += sampledTrips[trip];
+        }
+        assertTrue(early < 200);
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.equipment.Boat;
+import uk.ac.ox.oxfish.fisher.equipment.Engine;
+import uk.ac.ox.oxfish.fisher.equipment.gear.Gear;
+import uk.ac.ox.oxfish.fisher.heatmap.regression.extractors.ObservationExtractor;
+import uk.ac.ox.oxfish.fisher.selfanalysis.profit.Cost;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.ports.Port;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.poseidon.burlap.strategies.SimulatedTripCache;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SimulatedTripCacheTest {
+
+    private final Port port = mock(Port.class);
+
+    private final Gear gear = mock(Gear.class);
+
+    /**
+     * liters per km of the engine on each boat
+     */
+    private final Map<Boat, Double> efficiency = new IdentityHashMap<>();
+
+    private int simulations = 0;
+
+    /**
+     * a fake trip simulation: the cost grows with the distance, the engine's consumption and the other costs
+     */
+    private final ObservationExtractor simulator = (tile, timeOfObservation, agent, model) -> {
+        simulations++;
+        return tile.getGridX() * efficiency.get(agent.getBoat()) + 10 * agent.getAdditionalTripCosts().size();
+    };
+
+    private Boat boat(final double litersPerKm) {
+        final Boat boat = mock(Boat.class);
+        final Engine engine = mock(Engine.class);
+        when(engine.getEfficiencyLitersPerKm()).thenReturn(litersPerKm);
+        when(boat.getEngine()).thenReturn(engine);
+        when(boat.getSpeedInKph()).thenReturn(5d);
+        when(boat.getFuelCapacityInLiters()).thenReturn(100d);
+        efficiency.put(boat, litersPerKm);
+        return boat;
+    }
+
+    private Fisher fisher(final Boat boat, final LinkedList<Cost> costs) {
+        final Fisher fisher = mock(Fisher.class);
+        when(fisher.getHomePort()).thenReturn(port);
+        when(fisher.getGear()).thenReturn(gear);
+        when(fisher.getBoat()).thenReturn(boat);
+        when(fisher.getMaximumHold()).thenReturn(100d);
+        when(fisher.getAdditionalTripCosts()).thenReturn(costs);
+        return fisher;
+    }
+
+    private static Cost hourlyCost(final double perHour) {
+        final Cost cost = mock(Cost.class);
+        when(cost.expectedAdditionalCosts(any(), anyDouble(), anyDouble(), anyDouble())).thenAnswer(
+            invocation -> perHour * (double) invocation.getArgument(1));
+        return cost;
+    }
+
+    private static SeaTile tile(final int x, final int y) {
+        final SeaTile tile = mock(SeaTile.class);
+        when(tile.getGridX()).thenReturn(x);
+        when(tile.getGridY()).thenReturn(y);
+        return tile;
+    }
+
+    @Test
+    public void cachedValuesAreTheSimulatedOnes() throws Exception {
+
+        final FishState model = mock(FishState.class, RETURNS_DEEP_STUBS);
+        when(model.getDay()).thenReturn(0);
+        when(model.getMap().getHeight()).thenReturn(10);
+
+        final SimulatedTripCache cache = new SimulatedTripCache(1 << 20);
+        final ObservationExtractor cached = cache.share("costs", simulator);
+
+        final Boat shared = boat(2);
+        final LinkedList<Cost> costs = new LinkedList<>();
+        final Fisher first = fisher(shared, costs);
+        final Fisher second = fisher(shared, costs);
+        final SeaTile tile = tile(3, 4);
+
+        final double simulated = cached.extract(tile, 0, first, model);
+        assertEquals(simulator.extract(tile, 0, first, model), simulated, 0);
+        simulations = 0;
+        //same boat, same costs: served from the cache
+        assertEquals(simulated, cached.extract(tile, 0, second, model), 0);
+        assertEquals(simulator.extract(tile, 0, second, model), cached.extract(tile, 0, second, model), 0);
+        assertEquals(1, simulations);
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getNumberOfFisherClasses());
+
+        //a new day starts from scratch
+        when(model.getDay()).thenReturn(1);
+        simulations = 0;
+        cached.extract(tile, 0, first, model);
+        assertEquals(1, simulations);
+    }
+
+    @Test
+    public void differentEnginesOrCostsMiss() throws Exception {
+
+        final FishState model = mock(FishState.class, RETURNS_DEEP_STUBS);
+        when(model.getDay()).thenReturn(0);
+        when(model.getMap().getHeight()).thenReturn(10);
+
+        final SimulatedTripCache cache = new SimulatedTripCache(1 << 20);
+        final ObservationExtractor cached = cache.share("costs", simulator);
+        final SeaTile tile = tile(3, 4);
+
+        //same speed, same tank, same gear and port: only the engine differs
+        final LinkedList<Cost> costs = new LinkedList<>();
+        final Fisher frugal = fisher(boat(1), costs);
+        final Fisher thirsty = fisher(boat(5), costs);
+        assertEquals(3, cached.extract(tile, 0, frugal, model), 0);
+        assertEquals(15, cached.extract(tile, 0, thirsty, model), 0);
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        //same boat as the frugal one, but paying for something else
+        final LinkedList<Cost> moreCosts = new LinkedList<>();
+        moreCosts.add(mock(Cost.class));
+        final Fisher paying = fisher(frugal.getBoat(), moreCosts);
+        assertEquals(13, cached.extract(tile, 0, paying, model), 0);
+        assertEquals(0, cache.getHits());
+        assertEquals(3, cache.getNumberOfFisherClasses());
+
+        //and a fisher whose costs change mid-day is reclassified
+        costs.add(mock(Cost.class));
+        assertEquals(simulator.extract(tile, 0, frugal, model), cached.extract(tile, 0, frugal, model), 0);
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void equalBoatsAndCostsShareTheCache() throws Exception {
+
+        final FishState model = mock(FishState.class, RETURNS_DEEP_STUBS);
+        when(model.getDay()).thenReturn(0);
+        when(model.getMap().getHeight()).thenReturn(10);
+
+        final SimulatedTripCache cache = new SimulatedTripCache(1 << 20);
+        final ObservationExtractor cached = cache.share("costs", simulator);
+        final SeaTile tile = tile(3, 4);
+
+        //every fisher has its own boat and its own cost objects, but the numbers are the same
+        final LinkedList<Cost> firstCosts = new LinkedList<>();
+        firstCosts.add(hourlyCost(2));
+        final LinkedList<Cost> secondCosts = new LinkedList<>();
+        secondCosts.add(hourlyCost(2));
+        final Fisher first = fisher(boat(2), firstCosts);
+        final Fisher second = fisher(boat(2), secondCosts);
+
+        assertEquals(16, cached.extract(tile, 0, first, model), 0);
+        assertEquals(16, cached.extract(tile, 0, second, model), 0);
+        assertEquals(1, simulations);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getNumberOfFisherClasses());
+
+        //a pricier cost of the same kind is another class
+        final LinkedList<Cost> pricier = new LinkedList<>();
+        pricier.add(hourlyCost(3));
+        cached.extract(tile, 0, fisher(boat(2), pricier), model);
+        assertEquals(2, simulations);
+        assertEquals(2, cache.getNumberOfFisherClasses());
+    }
+}
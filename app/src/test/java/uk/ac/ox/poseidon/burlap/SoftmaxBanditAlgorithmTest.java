@@ -22,13 +22,21 @@ package uk.ac.ox.poseidon.burlap;
 
 import ec.util.MersenneTwisterFast;
 import org.junit.Test;
+import uk.ac.ox.oxfish.model.FishState;
 import uk.ac.ox.oxfish.model.data.ExponentialMovingAverage;
 import uk.ac.ox.oxfish.model.data.IterativeAverage;
 import uk.ac.ox.oxfish.model.data.MovingAverage;
 import uk.ac.ox.oxfish.utility.bandit.BanditAverage;
+import uk.ac.ox.oxfish.utility.bandit.factory.BanditSupplier;
 import uk.ac.ox.poseidon.burlap.strategies.SoftmaxBanditAlgorithm;
+import uk.ac.ox.poseidon.burlap.strategies.SoftmaxBanditFactory;
 
+import java.util.Arrays;
+
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * Created by carrknight on 11/10/16.
@@ -108,4 +116,29 @@ public class SoftmaxBanditAlgorithmTest {
         assertTrue(bandit.getNumberOfObservations(9) > 500);
     }
 
-}
\ No newline at end of file
+
+    @Test
+    public void eachFisherExploresOnItsOwnStream() throws Exception {
+
+        final FishState state = mock(FishState.class);
+        when(state.getUniqueID()).thenReturn("model");
+        when(state.seed()).thenReturn(123L);
+        when(state.getRandom()).thenReturn(new MersenneTwisterFast());
+        final SoftmaxBanditFactory factory = new SoftmaxBanditFactory();
+        factory.setDecisionStreams(true);
+
+        //each fisher gets its own supplier; with all arms equally good every pick is a coin toss
+        final int[][] picks = new int[2][100];
+        for (int fisher = 0; fisher < 2; fisher++) {
+            final BanditSupplier supplier = factory.apply(state);
+            final SoftmaxBanditAlgorithm bandit = (SoftmaxBanditAlgorithm) supplier.apply(
+                new BanditAverage(10, IterativeAverage::new));
+            //the same shared randomizer: only the streams can tell the two apart
+            final MersenneTwisterFast random = new MersenneTwisterFast(0);
+            for (int i = 0; i < 100; i++)
+                picks[fisher][i] = bandit.chooseArm(random);
+        }
+        assertFalse(Arrays.equals(picks[0], picks[1]));
+
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.poseidon.burlap.logbook.SpooledLogisticLogs;
+import uk.ac.ox.poseidon.burlap.logbook.StreamingLogisticLog;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class SpooledLogisticLogsTest {
+
+
+    @Test
+    public void spillsAndReadsBack() throws Exception {
+
+        //tiny buffer: a couple of choices and it has to spill
+        final SpooledLogisticLogs logs = new SpooledLogisticLogs(new String[]{"x", "intercept"}, 200);
+        final StreamingLogisticLog first = logs.newLog(0);
+        final StreamingLogisticLog second = logs.newLog(1);
+
+        for (int trip = 0; trip < 10; trip++) {
+            assertFalse(first.waitingForChoice());
+            first.recordInput(new double[][]{{trip, 1}, {-trip, 1}});
+            second.recordInput(new double[][]{{trip * 10, 1}, {0, 1}, {1, 1}});
+            assertTrue(first.waitingForChoice());
+            first.recordChoice(trip % 2, 0, trip);
+            second.recordChoice(2, 0, trip);
+        }
+        //an input never followed by a choice doesn't show up
+        first.recordInput(new double[][]{{100, 1}, {100, 1}});
+
+        assertEquals(20, logs.getRecords());
+        assertTrue(logs.getSpilledBytes() > 0);
+
+        final String csv = logs.composeFileContents();
+        final String[] lines = csv.split("\n");
+        assertEquals("id,episode,year,day,option,choice,x,intercept", lines[0]);
+        assertEquals(1 + 10 * 2 + 10 * 3, lines.length);
+        assertEquals("0,0,0,0,0,yes,0.0,1.0", lines[1]);
+        assertEquals("1,9,0,9,2,yes,1.0,1.0", lines[lines.length - 1]);
+
+        final ConditionalLogitData data = ConditionalLogitData.fromLogisticLogs(csv);
+        assertEquals(20, data.getNumberOfSituations());
+        logs.close();
+    }
+
+    @Test
+    public void streamsTheCsvToItsFile() throws Exception {
+
+        final SpooledLogisticLogs logs = new SpooledLogisticLogs(new String[]{"x", "intercept"}, 200);
+        final StreamingLogisticLog first = logs.newLog(0);
+        final StreamingLogisticLog second = logs.newLog(1);
+        for (int trip = 0; trip < 10; trip++) {
+            first.recordInput(new double[][]{{trip, 1}, {-trip, 1}});
+            second.recordInput(new double[][]{{trip * 10, 1}, {0, 1}, {1, 1}});
+            first.recordChoice(trip % 2, 0, trip);
+            second.recordChoice(2, 0, trip);
+        }
+        final String inMemory = logs.composeFileContents();
+
+        final Path csv = Files.createTempFile("logistic_long", ".csv");
+        try {
+            logs.setCsvFile(csv);
+            final String manifest = logs.composeFileContents();
+            assertTrue(manifest.contains("file," + csv.toAbsolutePath()));
+            assertTrue(manifest.contains("choices,20"));
+            assertEquals(inMemory, new String(Files.readAllBytes(csv), StandardCharsets.UTF_8));
+        } finally {
+            logs.close();
+            Files.deleteIfExists(csv);
+        }
+    }
+}
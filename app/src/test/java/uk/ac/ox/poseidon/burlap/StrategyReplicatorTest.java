@@ -24,6 +24,7 @@ import ec.util.MersenneTwisterFast;
 import org.junit.Test;
 import org.mockito.Mockito;
 import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.fisher.actions.Action;
 import uk.ac.ox.oxfish.fisher.equipment.Boat;
 import uk.ac.ox.oxfish.fisher.equipment.Hold;
 import uk.ac.ox.oxfish.fisher.equipment.gear.Gear;
@@ -36,17 +37,24 @@ import uk.ac.ox.oxfish.fisher.strategies.discarding.DiscardingStrategy;
 import uk.ac.ox.oxfish.fisher.strategies.fishing.FishingStrategy;
 import uk.ac.ox.oxfish.fisher.strategies.gear.GearStrategy;
 import uk.ac.ox.oxfish.fisher.strategies.weather.WeatherEmergencyStrategy;
+import uk.ac.ox.oxfish.geography.SeaTile;
 import uk.ac.ox.oxfish.geography.ports.Port;
 import uk.ac.ox.oxfish.model.FishState;
 import uk.ac.ox.oxfish.model.regs.Anarchy;
 import uk.ac.ox.oxfish.utility.AlgorithmFactory;
 import uk.ac.ox.oxfish.utility.fxcollections.ObservableList;
+import uk.ac.ox.poseidon.burlap.strategies.ResettableDestinationStrategy;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -123,7 +131,179 @@ public class StrategyReplicatorTest {
         //assertEquals(replicator.getLastObservedFitnesses()[0],10,.001);
         assertEquals(replicator.getLastObservedFitnesses()[1], 20, .001);
         assertTrue(strategy2Users > 90);
+        //the replicator kept count as fishers switched
+        assertEquals(strategy2Users, replicator.getMembers(state)[1]);
+        assertEquals(100 - strategy2Users, replicator.getMembers(state)[0]);
 
 
     }
-}
\ No newline at end of file
+
+
+    /**
+     * a strategy that does nothing but count how many times it was reset
+     */
+    private static class CountingStrategy implements ResettableDestinationStrategy {
+
+        private boolean resettable = true;
+        private int resets = 0;
+
+        @Override
+        public SeaTile chooseDestination(
+            Fisher fisher, MersenneTwisterFast random, FishState model, Action currentAction
+        ) {
+            return null;
+        }
+
+        @Override
+        public void start(FishState model, Fisher fisher) {
+
+        }
+
+        @Override
+        public void turnOff(Fisher fisher) {
+
+        }
+
+        @Override
+        public boolean reset(FishState model) {
+            resets++;
+            return resettable;
+        }
+    }
+
+    /**
+     * builds counting strategies and remembers them
+     */
+    private static class CountingFactory implements AlgorithmFactory<CountingStrategy> {
+
+        private final List<CountingStrategy> built = new ArrayList<>();
+
+        @Override
+        public CountingStrategy apply(FishState state) {
+            final CountingStrategy strategy = new CountingStrategy();
+            built.add(strategy);
+            return strategy;
+        }
+    }
+
+    private static FishState fleet(int size) {
+        FishState state = Mockito.mock(FishState.class);
+        ObservableList<Fisher> fishers = ObservableList.observableList(new ArrayList<Fisher>());
+        Mockito.when(state.getFishers()).thenReturn(fishers);
+        Mockito.when(state.getRandom()).thenReturn(new MersenneTwisterFast(0));
+        for (int i = 0; i < size; i++) {
+            Fisher f = new Fisher(
+                i,
+                Mockito.mock(Port.class),
+                state.getRandom(),
+                new Anarchy(),
+                Mockito.mock(DepartingStrategy.class),
+                Mockito.mock(DestinationStrategy.class),
+                Mockito.mock(FishingStrategy.class),
+                Mockito.mock(GearStrategy.class),
+                Mockito.mock(DiscardingStrategy.class),
+                Mockito.mock(WeatherEmergencyStrategy.class),
+                Mockito.mock(Boat.class),
+                Mockito.mock(Hold.class), Mockito.mock(Gear.class),
+                1
+            );
+            f.start(state);
+            fishers.add(f);
+        }
+        return state;
+    }
+
+    /**
+     * everybody using the winner is much better off (even when nobody uses it yet, as an empty option scores 0):
+     * with no inertia every fisher replicates it
+     */
+    private static ObjectiveFunction<Fisher> winnerTakesAll(int[] winner) {
+        return (observer, observed) ->
+            ((ReplicatorDrivenDestinationStrategy) observed.getDestinationStrategy()).getStrategyIndex() ==
+                winner[0] ? 100 : -100;
+    }
+
+    @Test
+    public void reusesUnchangedStrategiesOnlyWhenAsked() throws Exception {
+
+        for (boolean reuse : new boolean[]{false, true}) {
+            FishState state = fleet(50);
+            List<AlgorithmFactory<? extends DestinationStrategy>> options = new LinkedList<>();
+            options.add(new CountingFactory());
+            options.add(new CountingFactory());
+            StrategyReplicator replicator = new StrategyReplicator(options, winnerTakesAll(new int[]{1}), 0);
+            //off unless asked
+            assertFalse(replicator.isReuseUnchangedStrategies());
+            replicator.setReuseUnchangedStrategies(reuse);
+
+            //everybody already uses the winner
+            Map<Fisher, DestinationStrategy> before = new HashMap<>();
+            for (Fisher fisher : state.getFishers()) {
+                fisher.setDestinationStrategy(replicator.buildStrategy(1, state));
+                before.put(fisher, fisher.getDestinationStrategy());
+            }
+            assertEquals(50, replicator.getStrategiesBuilt());
+
+            replicator.step(state);
+            for (Fisher fisher : state.getFishers()) {
+                assertEquals(1, ((ReplicatorDrivenDestinationStrategy) fisher.getDestinationStrategy())
+                    .getStrategyIndex());
+                if (reuse)
+                    assertSame(before.get(fisher), fisher.getDestinationStrategy());
+                else
+                    assertNotSame(before.get(fisher), fisher.getDestinationStrategy());
+            }
+            assertEquals(reuse ? 50 : 100, replicator.getStrategiesBuilt());
+            assertEquals(50, replicator.getMembers(state)[1]);
+        }
+    }
+
+    @Test
+    public void pooledStrategiesAreResetAndHandedOut() throws Exception {
+
+        FishState state = fleet(50);
+        CountingFactory first = new CountingFactory();
+        CountingFactory second = new CountingFactory();
+        List<AlgorithmFactory<? extends DestinationStrategy>> options = new LinkedList<>();
+        options.add(first);
+        options.add(second);
+        int[] winner = {1};
+        StrategyReplicator replicator = new StrategyReplicator(options, winnerTakesAll(winner), 0);
+        assertFalse(replicator.isPoolStrategies());
+        replicator.setPoolStrategies(true);
+
+        for (Fisher fisher : state.getFishers())
+            fisher.setDestinationStrategy(replicator.buildStrategy(0, state));
+        assertEquals(50, first.built.size());
+
+        //everybody leaves the first option: its strategies are reset and kept
+        replicator.step(state);
+        assertEquals(50, second.built.size());
+        for (CountingStrategy strategy : first.built)
+            assertEquals(1, strategy.resets);
+        assertEquals(100, replicator.getStrategiesBuilt());
+        assertEquals(0, replicator.getStrategiesReused());
+
+        //and come back: nothing new is built
+        winner[0] = 0;
+        replicator.step(state);
+        assertEquals(50, first.built.size());
+        assertEquals(100, replicator.getStrategiesBuilt());
+        assertEquals(50, replicator.getStrategiesReused());
+        assertEquals(50, replicator.getMembers(state)[0]);
+
+        //strategies refusing the reset are thrown away: the next fishers switching to them get new ones
+        for (CountingStrategy strategy : first.built)
+            strategy.resettable = false;
+        winner[0] = 1;
+        replicator.step(state);
+        assertEquals(50, second.built.size());
+        assertEquals(100, replicator.getStrategiesReused());
+        winner[0] = 0;
+        replicator.step(state);
+        assertEquals(100, first.built.size());
+        for (CountingStrategy strategy : first.built.subList(0, 50))
+            assertEquals(2, strategy.resets);
+        assertEquals(150, replicator.getStrategiesBuilt());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import org.junit.Test;
+import uk.ac.ox.oxfish.geography.mapmakers.SimpleMapInitializerFactory;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.oxfish.model.scenario.PrototypeScenario;
+import uk.ac.ox.oxfish.utility.parameters.FixedDoubleParameter;
+import uk.ac.ox.poseidon.burlap.strategies.UnifiedAmateurishDynamicFactory;
+
+import static org.junit.Assert.assertEquals;
+
+public class UnifiedAmateurishDynamicFactoryTest {
+
+    private static FishState startRun(long seed) {
+        PrototypeScenario scenario = new PrototypeScenario();
+        scenario.setFishers(2);
+        scenario.setDestinationStrategy(UnifiedAmateurishDynamicFactory.getInstance());
+
+        SimpleMapInitializerFactory mapInitializer = new SimpleMapInitializerFactory();
+        mapInitializer.setHeight(new FixedDoubleParameter(5));
+        mapInitializer.setWidth(new FixedDoubleParameter(5));
+        mapInitializer.setMaxLandWidth(new FixedDoubleParameter(1d));
+        scenario.setMapInitializer(mapInitializer);
+
+        FishState state = new FishState(seed);
+        state.setScenario(scenario);
+        state.start();
+        for (int i = 0; i < 5; i++)
+            state.schedule.step(state);
+        return state;
+    }
+
+    @Test
+    public void finishedRunsAreDropped() throws Exception {
+
+        final UnifiedAmateurishDynamicFactory factory = UnifiedAmateurishDynamicFactory.getInstance();
+
+        //two runs sharing the singleton, one strategy each
+        final FishState first = startRun(1);
+        final FishState second = startRun(2);
+        assertEquals(2, factory.getRegisteredRuns());
+
+        first.finish();
+        assertEquals(1, factory.getRegisteredRuns());
+        second.finish();
+        assertEquals(0, factory.getRegisteredRuns());
+    }
+}
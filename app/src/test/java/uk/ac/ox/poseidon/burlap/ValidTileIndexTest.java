@@ -0,0 +1,127 @@
+/*
+ *     POSEIDON, an agent-based model of fisheries
+ *     Copyright (C) 2017  CoHESyS Lab cohesys.lab@gmail.com
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ */
+
+package uk.ac.ox.poseidon.burlap;
+
+import ec.util.MersenneTwisterFast;
+import org.junit.Test;
+import uk.ac.ox.oxfish.fisher.Fisher;
+import uk.ac.ox.oxfish.geography.SeaTile;
+import uk.ac.ox.oxfish.geography.discretization.MapDiscretization;
+import uk.ac.ox.oxfish.geography.discretization.SquaresMapDiscretizer;
+import uk.ac.ox.oxfish.model.FishState;
+import uk.ac.ox.poseidon.burlap.strategies.ValidTileIndex;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ValidTileIndexTest {
+
+    /**
+     * a fisher whose regulations ban whatever tile is in the set
+     */
+    private static Fisher fisherBanningTiles(final Set<SeaTile> banned) {
+        final Fisher fisher = mock(Fisher.class);
+        when(fisher.isAllowedToFishHere(any(), any())).thenAnswer(
+            invocation -> !banned.contains(invocation.getArguments()[0]));
+        return fisher;
+    }
+
+    @Test
+    public void uniformOverTheAllowedTiles() throws Exception {
+
+        final FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        final MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+        discretization.discretize(state.getMap());
+        final ValidTileIndex index = new ValidTileIndex(discretization, false);
+
+        //the two tiles at the top of group 0 are off limits: scanning forward from them would
+        //make the tiles right after them twice as likely
+        final Set<SeaTile> banned = new HashSet<>();
+        for (final SeaTile tile : discretization.getGroup(0))
+            if (tile.getGridY() == 0)
+                banned.add(tile);
+        assertEquals(2, banned.size());
+        final Fisher fisher = fisherBanningTiles(banned);
+
+        final MersenneTwisterFast random = new MersenneTwisterFast(0);
+        final Map<SeaTile, Integer> counts = new HashMap<>();
+        final int draws = 60000;
+        for (int i = 0; i < draws; i++)
+            counts.merge(index.sample(0, random, true, fisher, state), 1, Integer::sum);
+
+        assertEquals(6, counts.size());
+        for (final Map.Entry<SeaTile, Integer> count : counts.entrySet()) {
+            assertFalse(banned.contains(count.getKey()));
+            assertEquals(draws / 6d, count.getValue(), draws / 6d * .05);
+        }
+    }
+
+    @Test
+    public void followsRegulationsAsTheyChange() throws Exception {
+
+        final FishState state = LogitDestinationStrategyTest.generateSimple4x4Map();
+        final MapDiscretization discretization = new MapDiscretization(new SquaresMapDiscretizer(0, 1));
+        discretization.discretize(state.getMap());
+        final ValidTileIndex index = new ValidTileIndex(discretization, false);
+
+        final Set<SeaTile> banned = new HashSet<>();
+        final Fisher fisher = fisherBanningTiles(banned);
+        final MersenneTwisterFast random = new MersenneTwisterFast(0);
+
+        //an MPA appears over the first column
+        for (final SeaTile tile : discretization.getGroup(0))
+            if (tile.getGridX() == 0)
+                banned.add(tile);
+        for (int i = 0; i < 1000; i++)
+            assertEquals(1, index.sample(0, random, true, fisher, state).getGridX());
+        //but it only matters to those who respect it
+        boolean firstColumn = false;
+        for (int i = 0; i < 1000; i++)
+            firstColumn |= index.sample(0, random, false, fisher, state).getGridX() == 0;
+        assertTrue(firstColumn);
+
+        //now it covers the whole group but one tile: that's the only place to go
+        final SeaTile last = state.getMap().getSeaTile(1, 3);
+        banned.addAll(discretization.getGroup(0));
+        banned.remove(last);
+        for (int i = 0; i < 1000; i++)
+            assertSame(last, index.sample(0, random, true, fisher, state));
+
+        //and then the whole group
+        banned.add(last);
+        assertNull(index.sample(0, random, true, fisher, state));
+        assertTrue(index.getRegulationFallbacks() > 0);
+
+        //lifted
+        banned.clear();
+        firstColumn = false;
+        for (int i = 0; i < 1000; i++)
+            firstColumn |= index.sample(0, random, true, fisher, state).getGridX() == 0;
+        assertTrue(firstColumn);
+    }
+}